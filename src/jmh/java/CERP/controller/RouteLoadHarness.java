@@ -0,0 +1,182 @@
+package CERP.controller;
+
+import CERP.MainApp;
+import CERP.model.OdPair;
+import CERP.repository.SyntheticNetwork;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test of the route planning endpoints: replays an origin-destination workload over HTTP from a
+ * number of concurrent clients and prints throughput and p50/p90/p99 latency per endpoint.
+ * <p>
+ * Without {@code --url} the application is started in-process with the {@code synthetic} profile on a
+ * random port and the workload is drawn from the same {@link SyntheticNetwork}; any other
+ * {@code --name=value} argument is passed on to it, e.g. {@code --cerp.synthetic.side=100}. Options:
+ * <ul>
+ *     <li>{@code --url=http://host:port} to load a running server instead</li>
+ *     <li>{@code --workload=file} with one {@code startLat,startLon,endLat,endLon} pair per line</li>
+ *     <li>{@code --endpoints=fastest,cost-effective}, {@code --requests=2000}, {@code --warmup=200},
+ *     {@code --concurrency=8}, {@code --seed=7}</li>
+ * </ul>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec@load-test -Dload.args="--concurrency=16"}.
+ */
+public class RouteLoadHarness {
+    private static final Path REPORT = Path.of("target", "load-test.csv");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            String name = arg.startsWith("--") && arg.contains("=") ? arg.substring(2, arg.indexOf('=')) : "";
+            switch (name) {
+                case "url", "workload", "endpoints", "requests", "warmup", "concurrency", "seed" ->
+                        options.put(name, arg.substring(arg.indexOf('=') + 1));
+                default -> appArgs.add(arg);
+            }
+        }
+        int requests = Integer.parseInt(options.getOrDefault("requests", "2000"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "200"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "7"));
+        String[] endpoints = options.getOrDefault("endpoints", "fastest,cost-effective").split(",");
+
+        ConfigurableApplicationContext context = null;
+        String url = options.get("url");
+        List<OdPair> workload;
+        if (url == null) {
+            appArgs.add("--spring.profiles.active=synthetic");
+            appArgs.add("--server.port=0");
+            context = SpringApplication.run(MainApp.class, appArgs.toArray(new String[0]));
+            url = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            workload = options.containsKey("workload") ? readWorkload(Path.of(options.get("workload")))
+                    : context.getBean(SyntheticNetwork.class).odPairs(requests, seed);
+        } else if (options.containsKey("workload")) {
+            workload = readWorkload(Path.of(options.get("workload")));
+        } else {
+            throw new IllegalArgumentException("--workload is required with --url");
+        }
+
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newFixedThreadPool(concurrency)).build();
+        List<String> report = new ArrayList<>();
+        report.add("endpoint,requests,errors,seconds,per_second,p50_ms,p90_ms,p99_ms,max_ms");
+        try {
+            for (String endpoint : endpoints) {
+                URI uri = URI.create(url + "/api/route/" + endpoint.trim());
+                replay(client, uri, workload, Math.min(warmup, workload.size()), concurrency);
+                Result result = replay(client, uri, workload, Math.min(requests, workload.size()), concurrency);
+                String line = result.format(endpoint.trim());
+                System.out.println(line);
+                report.add(line);
+            }
+            Files.createDirectories(REPORT.getParent());
+            Files.write(REPORT, report);
+            System.out.println("written to " + REPORT);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            System.exit(0);
+        }
+    }
+
+    // sends the first count pairs of the workload from concurrent clients, each waiting for its response
+    private static Result replay(HttpClient client, URI uri, List<OdPair> workload, int count, int concurrency)
+            throws InterruptedException {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        for (int c = 0; c < concurrency; c++) {
+            clients.execute(() -> {
+                for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    OdPair pair = workload.get(i);
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(String.format(Locale.ROOT,
+                                    "{\"startLat\":\"%s\",\"startLon\":\"%s\",\"endLat\":\"%s\",\"endLon\":\"%s\"}",
+                                    pair.getStartLat(), pair.getStartLon(), pair.getEndLat(), pair.getEndLon())))
+                            .build();
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    latencies[i] = System.nanoTime() - sent;
+                }
+            });
+        }
+        clients.shutdown();
+        clients.awaitTermination(1, TimeUnit.HOURS);
+        return new Result(latencies, errors.get(), System.nanoTime() - start);
+    }
+
+    private static List<OdPair> readWorkload(Path file) throws IOException {
+        List<OdPair> pairs = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            pairs.add(new OdPair(Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim()),
+                    Double.parseDouble(fields[2].trim()), Double.parseDouble(fields[3].trim())));
+        }
+        return pairs;
+    }
+
+    private static final class Result {
+        final long[] latencies;
+        final int errors;
+        final long elapsedNanos;
+
+        Result(long[] latencies, int errors, long elapsedNanos) {
+            this.latencies = latencies.clone();
+            Arrays.sort(this.latencies);
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        String format(String endpoint) {
+            double seconds = elapsedNanos / 1e9;
+            return String.format(Locale.ROOT, "%s,%d,%d,%.2f,%.1f,%.2f,%.2f,%.2f,%.2f", endpoint, latencies.length,
+                    errors, seconds, latencies.length / seconds, percentile(0.50), percentile(0.90),
+                    percentile(0.99), percentile(1.0));
+        }
+
+        // nearest-rank percentile in milliseconds
+        double percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(p * latencies.length);
+            return latencies[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+}
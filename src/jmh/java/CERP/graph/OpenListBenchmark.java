@@ -0,0 +1,151 @@
+package CERP.graph;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The planner open list: Dijkstra on a random grid-like graph with the old {@code PriorityQueue<Node>}
+ * contains/remove pattern against {@link IndexedMinHeap}. Both searches sum the settled distances, which
+ * {@link #setUp} checks agree before anything is measured.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="OpenListBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenListBenchmark {
+    private static final int SOURCES = 16;
+
+    @Param("20000")
+    public int nodes;
+
+    private int[] offsets;
+    private int[] targets;
+    private double[] weights;
+    private int[] sources;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+        offsets = new int[nodes + 1];
+        List<int[]> edges = new ArrayList<>();
+        for (int v = 0; v < nodes; v++) {
+            offsets[v] = edges.size();
+            int[] neighbors = { v + 1, v - 1, v + side, v - side, random.nextInt(nodes) };
+            for (int neighbor : neighbors) {
+                if (neighbor >= 0 && neighbor < nodes) {
+                    edges.add(new int[] { neighbor, 1 + random.nextInt(10) });
+                }
+            }
+        }
+        offsets[nodes] = edges.size();
+        targets = new int[edges.size()];
+        weights = new double[edges.size()];
+        for (int e = 0; e < edges.size(); e++) {
+            targets[e] = edges.get(e)[0];
+            weights[e] = edges.get(e)[1];
+        }
+        sources = random.ints(SOURCES, 0, nodes).toArray();
+
+        for (int source : sources) {
+            double queue = priorityQueueDijkstra(offsets, targets, weights, source);
+            double heap = indexedHeapDijkstra(offsets, targets, weights, source);
+            if (Math.abs(queue - heap) > 1e-6) {
+                throw new IllegalStateException("open lists disagree: " + queue + " vs " + heap);
+            }
+        }
+    }
+
+    @Benchmark
+    public double priorityQueue() {
+        return priorityQueueDijkstra(offsets, targets, weights, nextSource());
+    }
+
+    @Benchmark
+    public double indexedHeap() {
+        return indexedHeapDijkstra(offsets, targets, weights, nextSource());
+    }
+
+    private int nextSource() {
+        int source = sources[next];
+        next = (next + 1) % sources.length;
+        return source;
+    }
+
+    private static double priorityQueueDijkstra(int[] offsets, int[] targets, double[] weights, int source) {
+        PriorityQueue<Node> openList = new PriorityQueue<>();
+        Map<Integer, Node> allNodes = new HashMap<>();
+        Set<Integer> closedList = new HashSet<>();
+        Node start = new Node(source, 0);
+        openList.add(start);
+        allNodes.put(source, start);
+        double total = 0;
+        while (!openList.isEmpty()) {
+            Node current = openList.poll();
+            closedList.add(current.id);
+            total += current.gScore;
+            for (int e = offsets[current.id]; e < offsets[current.id + 1]; e++) {
+                if (closedList.contains(targets[e])) {
+                    continue;
+                }
+                Node neighbor = allNodes.computeIfAbsent(targets[e], id -> new Node(id, Double.MAX_VALUE));
+                double tentative = current.gScore + weights[e];
+                if (tentative < neighbor.gScore) {
+                    if (openList.contains(neighbor)) {
+                        openList.remove(neighbor);
+                    }
+                    neighbor.gScore = tentative;
+                    openList.add(neighbor);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static double indexedHeapDijkstra(int[] offsets, int[] targets, double[] weights, int source) {
+        int n = offsets.length - 1;
+        IndexedMinHeap openList = new IndexedMinHeap(n);
+        double[] gScore = new double[n];
+        boolean[] closed = new boolean[n];
+        Arrays.fill(gScore, Double.MAX_VALUE);
+        gScore[source] = 0;
+        openList.insert(source, 0);
+        double total = 0;
+        while (!openList.isEmpty()) {
+            int current = openList.poll();
+            closed[current] = true;
+            total += gScore[current];
+            for (int e = offsets[current]; e < offsets[current + 1]; e++) {
+                int neighbor = targets[e];
+                double tentative = gScore[current] + weights[e];
+                if (!closed[neighbor] && tentative < gScore[neighbor]) {
+                    gScore[neighbor] = tentative;
+                    openList.insertOrDecrease(neighbor, tentative);
+                }
+            }
+        }
+        return total;
+    }
+
+    private static final class Node implements Comparable<Node> {
+        final int id;
+        double gScore;
+
+        Node(int id, double gScore) {
+            this.id = id;
+            this.gScore = gScore;
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            return Double.compare(gScore, other.gScore);
+        }
+    }
+}
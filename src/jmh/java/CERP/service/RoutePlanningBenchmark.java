@@ -0,0 +1,168 @@
+package CERP.service;
+
+import CERP.graph.GeoMath;
+import CERP.graph.GraphPath;
+import CERP.graph.ShortestPathTree;
+import CERP.graph.TransitGraph;
+import CERP.model.OdPair;
+import CERP.model.RouteResult;
+import CERP.model.ScheduledRoute;
+import CERP.model.Station;
+import CERP.model.TravelSegment;
+import CERP.repository.InMemoryRouteRepository;
+import CERP.repository.SyntheticNetwork;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hot paths of {@link RoutePlanningService} on a seeded {@link SyntheticNetwork}, with the route cache
+ * disabled so every query searches. Each benchmark reports throughput and sampled latency percentiles;
+ * the {@code benchmark} profile adds the allocation rate per operation through {@code -prof gc}.
+ * <p>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}, or pass JMH options, e.g.
+ * {@code -Djmh.args="fastestRoute -prof gc -p side=40"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutePlanningBenchmark {
+    private static final int QUERIES = 1024;
+    private static final LocalTime MORNING = LocalTime.of(8, 0);
+
+    // stations per side of the city grid
+    @Param("60")
+    public int side;
+
+    private TransitGraph graph;
+    private RoutePlanningService service;
+    private PlannerExecutor plannerExecutor;
+    private List<OdPair> queries;
+    private List<GraphPath> paths;
+    private double[] unitX;
+    private double[] unitY;
+    private double[] unitZ;
+    private double[] distances;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticNetwork network = new SyntheticNetwork(42, side, side, side / 8);
+        InMemoryRouteRepository repository = new InMemoryRouteRepository(network);
+        TransitGraphService transitGraphService = new TransitGraphService(repository, "", "", 0, 0, 10, 5,
+                "05:30", "23:30");
+        plannerExecutor = new PlannerExecutor(new SimpleMeterRegistry(), 0, 0);
+        service = new RoutePlanningService(transitGraphService,
+                new RouteCache(new SimpleMeterRegistry(), 0), plannerExecutor,
+                new PlannerMetrics(new SimpleMeterRegistry(), 0, Long.MAX_VALUE));
+        graph = transitGraphService.getGraph();
+
+        queries = network.odPairs(QUERIES, 7);
+        Random random = new Random(7);
+        paths = new ArrayList<>(QUERIES);
+        for (int i = 0; i < QUERIES; i++) {
+            int from = random.nextInt(graph.stationCount());
+            int to = random.nextInt(graph.stationCount());
+            GraphPath path = ShortestPathTree.fastest(graph, from).pathTo(to);
+            if (path != null && path.edgeCount() > 0) {
+                paths.add(path);
+            }
+        }
+        int n = graph.stationCount();
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = graph.latitude(i);
+            longitudes[i] = graph.longitude(i);
+        }
+        unitX = new double[n];
+        unitY = new double[n];
+        unitZ = new double[n];
+        distances = new double[n];
+        GeoMath.unitVectors(latitudes, longitudes, unitX, unitY, unitZ);
+        transitGraphService.shutdown();
+    }
+
+    @TearDown
+    public void tearDown() {
+        plannerExecutor.shutdown();
+    }
+
+    @Benchmark
+    public RouteResult fastestRoute() {
+        OdPair query = queries.get(nextQuery());
+        return service.findShortestPath(query.getStartLat(), query.getStartLon(), query.getEndLat(), query.getEndLon());
+    }
+
+    @Benchmark
+    public RouteResult costEffectiveRoute() {
+        OdPair query = queries.get(nextQuery());
+        return service.findMostCostEffectivePath(query.getStartLat(), query.getStartLon(), query.getEndLat(),
+                query.getEndLon());
+    }
+
+    // leaving at a time in the morning peak
+    @Benchmark
+    public ScheduledRoute scheduledRoute() {
+        int i = nextQuery();
+        OdPair query = queries.get(i);
+        return service.findScheduledRoute(query.getStartLat(), query.getStartLon(), query.getEndLat(),
+                query.getEndLon(), MORNING.plusSeconds(i * 7L % 3600));
+    }
+
+    // leaving any time within an hour of the morning peak
+    @Benchmark
+    public List<ScheduledRoute> departureProfile() {
+        OdPair query = queries.get(nextQuery());
+        return service.findDepartureProfile(query.getStartLat(), query.getStartLon(), query.getEndLat(),
+                query.getEndLon(), MORNING, MORNING.plusHours(1));
+    }
+
+    @Benchmark
+    public List<Station> nearestStations() {
+        OdPair query = queries.get(nextQuery());
+        return service.findNearestStations(graph, query.getStartLat(), query.getStartLon(),
+                RoutePlanningService.MAX_NEARBY_STATIONS);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double haversine() {
+        OdPair query = queries.get(nextQuery());
+        return GeoMath.haversineMeters(query.getStartLat(), query.getStartLon(), query.getEndLat(), query.getEndLon());
+    }
+
+    // chord distances from a query point to every station, on the Vector API when its module is added
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double[] chordDistances() {
+        OdPair query = queries.get(nextQuery());
+        double[] unit = GeoMath.unitVector(query.getStartLat(), query.getStartLon());
+        GeoMath.chordMeters(unit[0], unit[1], unit[2], unitX, unitY, unitZ, 0, unitX.length, distances);
+        return distances;
+    }
+
+    // segments and fare of a path from its edges, then the walks at both ends
+    @Benchmark
+    public List<TravelSegment> createFullPath() {
+        int i = nextQuery();
+        OdPair query = queries.get(i);
+        GraphPath path = paths.get(i % paths.size());
+        return service.createFullPath(query.getStartLat(), query.getStartLon(), service.createStationRoute(graph, path),
+                query.getEndLat(), query.getEndLon());
+    }
+
+    private int nextQuery() {
+        int i = next;
+        next = (i + 1) & (QUERIES - 1);
+        return i;
+    }
+}
@@ -0,0 +1,140 @@
+package CERP.controller;
+
+import CERP.graph.GraphDelta;
+import CERP.graph.GraphSnapshot;
+import CERP.model.SnapshotInfo;
+import CERP.service.TransitGraphService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@CrossOrigin
+@RequestMapping("/api/graph")
+public class GraphController {
+    private final TransitGraphService transitGraphService;
+
+    public GraphController(TransitGraphService transitGraphService) {
+        this.transitGraphService = transitGraphService;
+    }
+
+    @GetMapping("/snapshot")
+    public ResponseEntity<Map<String, Object>> getSnapshot() {
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", toInfo(transitGraphService.getSnapshot()));
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "loading the transit graph failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    // starts a rebuild from the database and answers right away with the snapshot still being served
+    @PostMapping("/reload")
+    public ResponseEntity<Map<String, Object>> reload() {
+        transitGraphService.reload();
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("code", 202);
+        response.put("msg", "reload started");
+        try {
+            response.put("data", toInfo(transitGraphService.getSnapshot()));
+        } catch (Exception e) {
+            response.put("data", null);
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+    }
+
+    /**
+     * Applies changes to the live graph, e.g.
+     * {@code {"travelTimes": [{"routeId": 12, "travelTime": 9.5}], "closedRoutes": [40, 41],
+     * "transfers": [{"fromStationId": 3, "toStationId": 8, "lineId": 2, "travelTime": 4, "distance": 300}]}};
+     * every field is optional.
+     */
+    @PostMapping("/delta")
+    public ResponseEntity<Map<String, Object>> applyDelta(@RequestBody Map<String, Object> request) {
+        GraphDelta delta;
+        try {
+            delta = parseDelta(request);
+        } catch (RuntimeException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 400);
+            response.put("msg", "invalid graph delta：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", toInfo(transitGraphService.applyDelta(delta)));
+
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 400);
+            response.put("msg", "invalid graph delta：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "applying the graph delta failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private GraphDelta parseDelta(Map<String, Object> request) {
+        GraphDelta delta = new GraphDelta();
+        for (Map<String, Object> change : (List<Map<String, Object>>) request.getOrDefault("travelTimes", List.of())) {
+            delta.setTravelTime(intValue(change, "routeId"), doubleValue(change, "travelTime"));
+        }
+        for (Object routeId : (List<Object>) request.getOrDefault("closedRoutes", List.of())) {
+            delta.closeRoute(((Number) routeId).intValue());
+        }
+        for (Map<String, Object> transfer : (List<Map<String, Object>>) request.getOrDefault("transfers", List.of())) {
+            delta.addTransfer(intValue(transfer, "fromStationId"), intValue(transfer, "toStationId"),
+                    intValue(transfer, "lineId"), doubleValue(transfer, "travelTime"), intValue(transfer, "distance"));
+        }
+        return delta;
+    }
+
+    private static int intValue(Map<String, Object> values, String name) {
+        Object value = values.get(name);
+        if (!(value instanceof Number number)) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+        return number.intValue();
+    }
+
+    private static double doubleValue(Map<String, Object> values, String name) {
+        Object value = values.get(name);
+        if (!(value instanceof Number number)) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+        return number.doubleValue();
+    }
+
+    private SnapshotInfo toInfo(GraphSnapshot snapshot) {
+        return new SnapshotInfo(snapshot.getVersion(), snapshot.getBuiltAt(), snapshot.getBuildMillis(),
+                snapshot.getGraph().stationCount(), snapshot.getGraph().edgeCount());
+    }
+}
@@ -1,13 +1,33 @@
 package CERP.controller;
 
+import CERP.model.OdPair;
+import CERP.model.ReachableStation;
+import CERP.model.RouteMatrix;
+import CERP.model.RouteObjective;
+import CERP.model.RouteOption;
 import CERP.model.RouteResult;
+import CERP.model.ScheduledRoute;
 import CERP.model.TravelSegment;
 import CERP.service.RoutePlanningService;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,10 +35,16 @@ import java.util.Map;
 @CrossOrigin
 @RequestMapping("/api/route")
 public class RoutePlanningController {
+    private static final String NDJSON = "application/x-ndjson";
+    // pairs read, planned and written at a time, which bounds the memory a batch of any size takes
+    private static final int BATCH_CHUNK_SIZE = 500;
+
     private final RoutePlanningService routePlanningService;
+    private final ObjectMapper objectMapper;
 
-    public RoutePlanningController(RoutePlanningService routePlanningService) {
+    public RoutePlanningController(RoutePlanningService routePlanningService, ObjectMapper objectMapper) {
         this.routePlanningService = routePlanningService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/fastest")
@@ -72,4 +98,346 @@ public class RoutePlanningController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
         }
     }
+
+    @PostMapping("/options")
+    public ResponseEntity<Map<String, Object>> planRouteOptions(@RequestBody Map<String, String> request) {
+        try {
+            double startLat = Double.parseDouble(request.get("startLat"));
+            double startLon = Double.parseDouble(request.get("startLon"));
+            double endLat = Double.parseDouble(request.get("endLat"));
+            double endLon = Double.parseDouble(request.get("endLon"));
+
+            List<RouteOption> result = routePlanningService.findRouteOptions(startLat, startLon, endLat, endLon);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", result);
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "route planning failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/scheduled")
+    public ResponseEntity<Map<String, Object>> planScheduledRoute(@RequestBody Map<String, String> request) {
+        try {
+            double startLat = Double.parseDouble(request.get("startLat"));
+            double startLon = Double.parseDouble(request.get("startLon"));
+            double endLat = Double.parseDouble(request.get("endLat"));
+            double endLon = Double.parseDouble(request.get("endLon"));
+            // leaving now unless a time such as "08:00" is given
+            LocalTime departure = request.get("departure") == null ? LocalTime.now()
+                    : LocalTime.parse(request.get("departure"));
+
+            ScheduledRoute result = routePlanningService.findScheduledRoute(startLat, startLon, endLat, endLon, departure);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", result);
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "route planning failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/profile")
+    public ResponseEntity<Map<String, Object>> planDepartureProfile(@RequestBody Map<String, String> request) {
+        try {
+            double startLat = Double.parseDouble(request.get("startLat"));
+            double startLon = Double.parseDouble(request.get("startLon"));
+            double endLat = Double.parseDouble(request.get("endLat"));
+            double endLon = Double.parseDouble(request.get("endLon"));
+            LocalTime earliest = LocalTime.parse(request.get("earliestDeparture"));
+            LocalTime latest = LocalTime.parse(request.get("latestDeparture"));
+
+            List<ScheduledRoute> result = routePlanningService.findDepartureProfile(startLat, startLon, endLat, endLon,
+                    earliest, latest);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", result);
+
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 400);
+            response.put("msg", "invalid profile request：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.badRequest().body(response);
+        } catch (IllegalStateException e) {
+            // the timetable is rebuilt in the background after a graph delta
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 503);
+            response.put("msg", "timetable not available：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "route planning failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/isochrone")
+    public ResponseEntity<Map<String, Object>> planIsochrone(@RequestBody Map<String, String> request) {
+        try {
+            double startLat = Double.parseDouble(request.get("startLat"));
+            double startLon = Double.parseDouble(request.get("startLon"));
+            double maxMinutes = Double.parseDouble(request.get("maxMinutes"));
+            // no fare limit unless one is given
+            double maxCost = request.get("maxCost") == null ? Double.POSITIVE_INFINITY
+                    : Double.parseDouble(request.get("maxCost"));
+
+            List<ReachableStation> result = routePlanningService.findReachableStations(startLat, startLon, maxMinutes, maxCost);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", result);
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "route planning failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    @PostMapping("/matrix")
+    public ResponseEntity<Map<String, Object>> planRouteMatrix(@RequestBody Map<String, Object> request) {
+        RouteObjective routeObjective;
+        double[][] origins;
+        double[][] destinations;
+        try {
+            String objective = request.get("objective") == null ? "fastest" : request.get("objective").toString();
+            routeObjective = RouteObjective.fromName(objective);
+            if (routeObjective == null) {
+                throw new IllegalArgumentException("unknown objective " + objective);
+            }
+            origins = parseCoordinates(request, "origins");
+            destinations = parseCoordinates(request, "destinations");
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 400);
+            response.put("msg", "invalid matrix request：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        try {
+            RouteMatrix result = routePlanningService.computeMatrix(routeObjective, origins, destinations);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 200);
+            response.put("msg", "successful");
+            response.put("data", result);
+
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            // more cells than one matrix may have
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 400);
+            response.put("msg", "invalid matrix request：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.badRequest().body(response);
+        } catch (Exception e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("code", 500);
+            response.put("msg", "route planning failed：" + e.getMessage());
+            response.put("data", null);
+
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    // a list of {"lat": ..., "lon": ...} objects as {lat, lon} pairs
+    private double[][] parseCoordinates(Map<String, Object> request, String field) {
+        if (!(request.get(field) instanceof List<?> points)) {
+            throw new IllegalArgumentException(field + " is not a list of points");
+        }
+        double[][] coordinates = new double[points.size()][];
+        for (int i = 0; i < coordinates.length; i++) {
+            if (!(points.get(i) instanceof Map<?, ?> point)) {
+                throw new IllegalArgumentException(field + "[" + i + "] is not a point");
+            }
+            coordinates[i] = new double[]{degrees(point, "lat", field, i), degrees(point, "lon", field, i)};
+        }
+        return coordinates;
+    }
+
+    // a number, or a string holding one
+    private double degrees(Map<?, ?> point, String key, String field, int i) {
+        Object value = point.get(key);
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        if (value instanceof String text) {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                // reported below
+            }
+        }
+        throw new IllegalArgumentException(field + "[" + i + "]." + key + " is not a number: " + value);
+    }
+
+    /**
+     * Plans a JSON array of OD pairs, each shaped like the body of the single-query endpoints, and streams
+     * one response object per pair as NDJSON, tagged with the pair's index in the array. The array is read
+     * and answered in chunks. An element that is not a valid OD pair gets a 400 line of its own; a body that
+     * stops being valid JSON ends the stream with a line without index.
+     */
+    @PostMapping(value = "/batch", produces = NDJSON)
+    public void planRouteBatch(@RequestParam(defaultValue = "cost-effective") String objective,
+                               InputStream body, HttpServletResponse response) throws IOException {
+        RouteObjective routeObjective = RouteObjective.fromName(objective);
+        if (routeObjective == null) {
+            Map<String, Object> error = new HashMap<>();
+            error.put("code", 400);
+            error.put("msg", "unknown objective：" + objective);
+            error.put("data", null);
+            response.setStatus(HttpStatus.BAD_REQUEST.value());
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getOutputStream().write(objectMapper.writeValueAsBytes(error));
+            return;
+        }
+
+        response.setContentType(NDJSON);
+        response.setCharacterEncoding("UTF-8");
+        OutputStream out = response.getOutputStream();
+        List<OdPair> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+        List<String> errors = new ArrayList<>(BATCH_CHUNK_SIZE);
+        int firstIndex = 0;
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "expected an array of OD pairs");
+            }
+            for (JsonToken token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "unexpected end of the OD pairs");
+                }
+                // read as a tree so that an element of the wrong shape fails on its own line only
+                JsonNode request = parser.readValueAsTree();
+                try {
+                    chunk.add(parseOdPair(request));
+                    errors.add(null);
+                } catch (RuntimeException e) {
+                    chunk.add(null);
+                    errors.add(e.getMessage());
+                }
+                if (chunk.size() == BATCH_CHUNK_SIZE) {
+                    writeBatchChunk(out, routeObjective, firstIndex, chunk, errors);
+                    firstIndex += chunk.size();
+                    chunk.clear();
+                    errors.clear();
+                }
+            }
+            writeBatchChunk(out, routeObjective, firstIndex, chunk, errors);
+        } catch (JsonProcessingException e) {
+            // answer the pairs read before the body broke off
+            writeBatchChunk(out, routeObjective, firstIndex, chunk, errors);
+            Map<String, Object> error = new LinkedHashMap<>();
+            error.put("code", 400);
+            error.put("msg", "invalid batch：" + e.getOriginalMessage());
+            error.put("data", null);
+            writeLine(out, error);
+        }
+        out.flush();
+    }
+
+    private OdPair parseOdPair(JsonNode request) {
+        if (!request.isObject()) {
+            throw new IllegalArgumentException("expected an object, got " + request.getNodeType());
+        }
+        return new OdPair(coordinate(request, "startLat"), coordinate(request, "startLon"),
+                coordinate(request, "endLat"), coordinate(request, "endLon"));
+    }
+
+    // a number, or a string holding one as in the single-query bodies
+    private double coordinate(JsonNode request, String field) {
+        JsonNode value = request.get(field);
+        if (value == null || value.isNull()) {
+            throw new IllegalArgumentException("missing " + field);
+        }
+        if (value.isNumber()) {
+            return value.doubleValue();
+        }
+        if (value.isTextual()) {
+            try {
+                return Double.parseDouble(value.textValue());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(field + " is not a number: " + value.textValue());
+            }
+        }
+        throw new IllegalArgumentException(field + " is not a number: " + value);
+    }
+
+    private void writeBatchChunk(OutputStream out, RouteObjective objective, int firstIndex,
+                                 List<OdPair> chunk, List<String> errors) throws IOException {
+        List<OdPair> pairs = new ArrayList<>(chunk.size());
+        for (OdPair pair : chunk) {
+            if (pair != null) {
+                pairs.add(pair);
+            }
+        }
+        List<RouteResult> results = null;
+        String failure = null;
+        try {
+            results = routePlanningService.planBatch(objective, pairs);
+        } catch (Exception e) {
+            failure = e.getMessage();
+        }
+
+        int planned = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("index", firstIndex + i);
+            if (chunk.get(i) == null) {
+                line.put("code", 400);
+                line.put("msg", "invalid OD pair：" + errors.get(i));
+                line.put("data", null);
+            } else if (results == null) {
+                line.put("code", 500);
+                line.put("msg", "route planning failed：" + failure);
+                line.put("data", null);
+            } else {
+                line.put("code", 200);
+                line.put("msg", "successful");
+                line.put("data", results.get(planned++));
+            }
+            writeLine(out, line);
+        }
+        out.flush();
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(line));
+        out.write('\n');
+    }
 }
@@ -2,12 +2,14 @@ package CERP.controller;
 
 import CERP.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Map;
 
 @RestController
+@Profile("!synthetic")
 @RequestMapping("/api/users")
 public class UserController {
 
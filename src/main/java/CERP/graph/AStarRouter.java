@@ -0,0 +1,120 @@
+package CERP.graph;
+
+/**
+ * A* over the CSR arrays of a {@link TransitGraph}, working purely on station and edge indices.
+ * All per-query state lives in the thread's pooled {@link SearchState}; the only allocation is the
+ * returned path.
+ * <p>
+ * A query is seeded from several start stations at once, each with the cost of walking to it, and
+ * ends as soon as no open node can beat the best target settled so far plus that target's egress cost.
+ * The straight-line estimate assumes the graph's {@link TransitGraph#maxSpeed() fastest edge} all the way and
+ * leaves fares out, so it never overestimates; with {@link Landmarks} it is tightened by the ALT lower bound.
+ */
+public final class AStarRouter {
+    private static final double METRO_SEGMENT_FARE = 0.5;
+
+    private final double wagePerMinute;
+
+    public AStarRouter(double wagePerMinute) {
+        this.wagePerMinute = wagePerMinute;
+    }
+
+    public GraphPath fastestPath(TransitGraph graph, Landmarks landmarks,
+                             int[] sources, double[] sourceCosts, int[] targets, double[] targetCosts) {
+        return search(graph, landmarks, sources, sourceCosts, targets, targetCosts, false);
+    }
+
+    public GraphPath cheapestPath(TransitGraph graph, Landmarks landmarks,
+                              int[] sources, double[] sourceCosts, int[] targets, double[] targetCosts) {
+        return search(graph, landmarks, sources, sourceCosts, targets, targetCosts, true);
+    }
+
+    // nodes expanded by the last search on the calling thread
+    public int lastExpandedNodes() {
+        return SearchState.current().expandedNodes;
+    }
+
+    private GraphPath search(TransitGraph graph, Landmarks landmarks, int[] sources, double[] sourceCosts,
+                         int[] targets, double[] targetCosts, boolean costMetric) {
+        SearchState state = SearchState.get(graph.stationCount());
+        IndexedMinHeap openList = state.openList;
+        double[] gScore = state.gScore;
+        double[] hScore = state.hScore;
+        int[] parent = state.parent;
+        int[] parentEdge = state.parentEdge;
+
+        for (int i = 0; i < sources.length; i++) {
+            int source = sources[i];
+            if (!state.isTouched(source)) {
+                state.touch(source, heuristic(graph, landmarks, source, targets, targetCosts, costMetric));
+            }
+            if (sourceCosts[i] < gScore[source]) {
+                gScore[source] = sourceCosts[i];
+                openList.insertOrDecrease(source, sourceCosts[i] + hScore[source]);
+            }
+        }
+
+        int bestTarget = -1;
+        double bestCost = Double.MAX_VALUE;
+        while (!openList.isEmpty() && openList.peekKey() < bestCost) {
+            int current = openList.poll();
+            state.close(current);
+            state.expandedNodes++;
+            for (int i = 0; i < targets.length; i++) {
+                if (targets[i] == current && gScore[current] + targetCosts[i] < bestCost) {
+                    bestCost = gScore[current] + targetCosts[i];
+                    bestTarget = current;
+                }
+            }
+
+            for (int e = graph.firstEdge(current), last = graph.endEdge(current); e < last; e++) {
+                int neighbor = graph.edgeTarget(e);
+                if (state.isClosed(neighbor)) {
+                    continue;
+                }
+                if (!state.isTouched(neighbor)) {
+                    state.touch(neighbor, heuristic(graph, landmarks, neighbor, targets, targetCosts, costMetric));
+                }
+
+                double tentative = gScore[current] + edgeWeight(graph, e, costMetric, wagePerMinute);
+                if (tentative < gScore[neighbor]) {
+                    parent[neighbor] = current;
+                    parentEdge[neighbor] = e;
+                    gScore[neighbor] = tentative;
+                    openList.insertOrDecrease(neighbor, tentative + hScore[neighbor]);
+                }
+            }
+        }
+        return bestTarget < 0 ? null : state.pathTo(bestTarget);
+    }
+
+    static double edgeWeight(TransitGraph graph, int edge, boolean costMetric, double wagePerMinute) {
+        double travelTime = graph.edgeTravelTime(edge);
+        if (!costMetric) {
+            return travelTime;
+        }
+        double transportCost = graph.edgeLineType(edge) == TransitGraph.METRO ? METRO_SEGMENT_FARE : 0;
+        return travelTime * wagePerMinute + transportCost;
+    }
+
+    // lower bound to the cheapest way of finishing at any of the targets
+    private double heuristic(TransitGraph graph, Landmarks landmarks, int node, int[] targets, double[] targetCosts,
+                             boolean costMetric) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            // both bounds are admissible, so their maximum is too; landmarks far from the query
+            // can be weaker than the straight line
+            double bound = heuristic(graph, node, targets[i], costMetric);
+            if (landmarks != null) {
+                bound = Math.max(bound, landmarks.lowerBound(node, targets[i], costMetric));
+            }
+            best = Math.min(best, bound + targetCosts[i]);
+        }
+        return best;
+    }
+
+    private double heuristic(TransitGraph graph, int node, int end, boolean costMetric) {
+        double estimatedTime = graph.chordDistance(node, end) / graph.maxSpeed();
+        return costMetric ? estimatedTime * wagePerMinute : estimatedTime;
+    }
+}
@@ -0,0 +1,589 @@
+package CERP.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Departure-time queries on a {@link Timetable} with the Connection Scan Algorithm.
+ * <p>
+ * {@link #earliestArrival} scans the connections once, in order of departure from the departure time
+ * on, keeping the earliest arrival at every station and the connection every trip was boarded at. A
+ * connection can be taken when its trip is already boarded or its station is reached by the time it
+ * leaves, and the scan stops at the first connection leaving after the best arrival at the destination.
+ * <p>
+ * {@link #profile} answers "leave between" queries with a single scan backwards over the window. Every
+ * station keeps a profile of (departure, arrival at the destination) pairs, none leaving no later and
+ * arriving no earlier than another, and every trip the earliest arrival from staying on it. The journeys
+ * from the origin that no other journey beats by leaving later and arriving no later are returned.
+ * <p>
+ * In both, a footpath can be walked from a source station or after arriving by a connection, never two in
+ * a row, and changing trips at a station takes no time. Journeys ride at least one trip; walking straight
+ * there is left to the caller. Scratch arrays are kept per thread.
+ */
+public final class ConnectionScanRouter {
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * @param sourceTimes minutes of walking to each source station
+     * @param targetTimes minutes of walking from each target station to the destination
+     * @param departure   seconds after midnight when the journey may start
+     * @return a journey arriving first, or null if no target is reached by riding at least one trip
+     */
+    public Journey earliestArrival(Timetable timetable, int[] sources, double[] sourceTimes, int[] targets,
+                                   double[] targetTimes, int departure) {
+        Scratch s = SCRATCH.get();
+        s.reset(timetable);
+        int[] sourceSeconds = seconds(sourceTimes);
+        setTargets(s, targets, seconds(targetTimes));
+        TransitGraph graph = timetable.getGraph();
+
+        // the sources count as arrived at by a ride, so a footpath can be walked on from them
+        for (int i = 0; i < sources.length; i++) {
+            s.arrival[sources[i]] = Math.min(s.arrival[sources[i]], departure + sourceSeconds[i]);
+        }
+        for (int source : sources) {
+            for (int f = timetable.firstFootpath(source), last = timetable.endFootpath(source); f < last; f++) {
+                walk(timetable, s, source, f);
+            }
+        }
+
+        int best = UNREACHED;
+        int bestConnection = -1;
+        int bestFootpath = -1;
+        for (int c = timetable.firstDepartingAt(departure), m = timetable.connectionCount(); c < m; c++) {
+            int time = timetable.departure(c);
+            if (time >= best) {
+                break;
+            }
+            int trip = timetable.trip(c);
+            if (s.boarded[trip] < 0) {
+                int from = timetable.fromStation(c);
+                if (Math.min(s.arrival[from], s.walkArrival[from]) > time) {
+                    continue;
+                }
+                s.boarded[trip] = c;
+            }
+            int station = timetable.toStation(c);
+            int arrival = timetable.arrival(c);
+            if (arrival >= s.arrival[station]) {
+                continue;
+            }
+            s.arrival[station] = arrival;
+            s.connection[station] = c;
+            if (s.finalWalk[station] != UNREACHED && arrival + s.finalWalk[station] < best) {
+                best = arrival + s.finalWalk[station];
+                bestConnection = c;
+                bestFootpath = -1;
+            }
+            for (int f = timetable.firstFootpath(station), last = timetable.endFootpath(station); f < last; f++) {
+                int next = graph.edgeTarget(timetable.footpathEdge(f));
+                if (walk(timetable, s, station, f) && s.finalWalk[next] != UNREACHED
+                        && s.walkArrival[next] + s.finalWalk[next] < best) {
+                    best = s.walkArrival[next] + s.finalWalk[next];
+                    bestConnection = c;
+                    bestFootpath = f;
+                }
+            }
+        }
+        if (best == UNREACHED) {
+            return null;
+        }
+        return earliestJourney(timetable, s, bestConnection, bestFootpath, sources, sourceSeconds, best);
+    }
+
+    /*
+     * Arrivals on foot are kept apart from arrivals by a ride: a station reached early on foot must not
+     * stop a later ride there from walking on, as the footpaths are not chained.
+     */
+    private static boolean walk(Timetable timetable, Scratch s, int station, int footpath) {
+        int next = timetable.getGraph().edgeTarget(timetable.footpathEdge(footpath));
+        int time = s.arrival[station] + timetable.footpathSeconds(footpath);
+        if (time >= s.walkArrival[next]) {
+            return false;
+        }
+        s.walkArrival[next] = time;
+        s.footpath[next] = footpath;
+        s.walkedFrom[next] = station;
+        return true;
+    }
+
+    // follows the labels back from the last connection; a walk ahead of the first ride is moved up against it
+    private static Journey earliestJourney(Timetable timetable, Scratch s, int last, int lastFootpath,
+                                           int[] sources, int[] sourceSeconds, int arrival) {
+        TransitGraph graph = timetable.getGraph();
+        Legs legs = s.legs;
+        legs.clear();
+        if (lastFootpath >= 0) {
+            int time = timetable.arrival(last);
+            int edge = timetable.footpathEdge(lastFootpath);
+            legs.add(edge, graph.edgeTarget(edge), time, time + timetable.footpathSeconds(lastFootpath));
+        }
+        int c = last;
+        int station;
+        int rides = 0;
+        while (true) {
+            int boarding = s.boarded[timetable.trip(c)];
+            int[] rode = timetable.tripEdges(boarding, c);
+            for (int k = rode.length - 1; k >= 0; k--) {
+                legs.add(rode[k], graph.edgeTarget(rode[k]), timetable.tripDeparture(c, rode[k]),
+                        timetable.tripArrival(c, rode[k]));
+            }
+            rides++;
+            station = timetable.fromStation(boarding);
+            if (s.arrival[station] > timetable.departure(boarding)) {
+                int f = s.footpath[station];
+                legs.add(timetable.footpathEdge(f), station, s.walkArrival[station] - timetable.footpathSeconds(f),
+                        s.walkArrival[station]);
+                station = s.walkedFrom[station];
+            }
+            c = s.connection[station];
+            if (c < 0) {
+                break;
+            }
+        }
+        legs.reverse();
+
+        int sourceWalk = UNREACHED;
+        for (int i = 0; i < sources.length; i++) {
+            if (sources[i] == station) {
+                sourceWalk = Math.min(sourceWalk, sourceSeconds[i]);
+            }
+        }
+        int time = legs.departure(0);
+        if (graph.edgeLineType(legs.edge(0)) == TransitGraph.TRANSFER) {
+            int walk = legs.arrival(0) - legs.departure(0);
+            time = legs.departure(1) - walk;
+            legs.set(0, time, time + walk);
+        }
+        return legs.toJourney(station, time - sourceWalk, arrival, rides);
+    }
+
+    /**
+     * @param sourceTimes       minutes of walking to each source station
+     * @param targetTimes       minutes of walking from each target station to the destination
+     * @param earliestDeparture seconds after midnight, the start of the window to leave the origin in
+     * @param latestDeparture   seconds after midnight, the end of the window
+     * @return the journeys leaving in the window that no other beats, latest departure first; one leaving
+     *         after the window is given as leaving at its end
+     */
+    public List<Journey> profile(Timetable timetable, int[] sources, double[] sourceTimes, int[] targets,
+                                 double[] targetTimes, int earliestDeparture, int latestDeparture) {
+        // a journey arriving after the one leaving at the end of the window is beaten by it
+        Journey last = earliestArrival(timetable, sources, sourceTimes, targets, targetTimes, latestDeparture);
+        if (last == null && earliestArrival(timetable, sources, sourceTimes, targets, targetTimes,
+                earliestDeparture) == null) {
+            return new ArrayList<>();
+        }
+        int end = last == null ? timetable.connectionCount() : timetable.firstDepartingAt(last.getArrival());
+        int begin = timetable.firstDepartingAt(earliestDeparture);
+
+        Scratch s = SCRATCH.get();
+        s.reset(timetable);
+        int[] sourceSeconds = seconds(sourceTimes);
+        setTargets(s, targets, seconds(targetTimes));
+        for (int target : targets) {
+            int stop = timetable.endIncomingFootpath(target);
+            for (int k = timetable.firstIncomingFootpath(target); k < stop; k++) {
+                int from = timetable.incomingFootpathSource(k);
+                int walk = timetable.incomingFootpathSeconds(k) + s.finalWalk[target];
+                if (walk < s.finalWalk[from]) {
+                    s.finalWalk[from] = walk;
+                    s.finalFootpath[from] = k;
+                }
+            }
+        }
+
+        Profiles profiles = s.profiles;
+        for (int i = 0; i < sources.length; i++) {
+            s.sourceWalk[sources[i]] = Math.min(s.sourceWalk[sources[i]], sourceSeconds[i]);
+        }
+        // {leave, arrival, boarding connection, alighting connection, footpath}
+        List<int[]> candidates = new ArrayList<>();
+        for (int c = end - 1; c >= begin; c--) {
+            int station = timetable.toStation(c);
+            int time = timetable.arrival(c);
+            int trip = timetable.trip(c);
+            int alight = s.finalWalk[station] == UNREACHED ? UNREACHED : time + s.finalWalk[station];
+            int transfer = profiles.arrivalAfter(station, time);
+            int best;
+            int exit;
+            // staying on wins ties, which saves a transfer
+            if (Math.min(alight, transfer) < s.tripArrival[trip]) {
+                best = Math.min(alight, transfer);
+                exit = c;
+                s.tripArrival[trip] = best;
+                s.tripExit[trip] = c;
+            } else {
+                best = s.tripArrival[trip];
+                exit = s.tripExit[trip];
+            }
+            if (best == UNREACHED) {
+                continue;
+            }
+
+            int from = timetable.fromStation(c);
+            int leave = timetable.departure(c);
+            profiles.add(from, leave, best, c, exit, -1);
+            offer(s, candidates, from, leave, best, c, exit, -1, earliestDeparture, latestDeparture);
+            int stop = timetable.endIncomingFootpath(from);
+            for (int k = timetable.firstIncomingFootpath(from); k < stop; k++) {
+                int walker = timetable.incomingFootpathSource(k);
+                int walkStart = leave - timetable.incomingFootpathSeconds(k);
+                profiles.add(walker, walkStart, best, c, exit, k);
+                offer(s, candidates, walker, walkStart, best, c, exit, k, earliestDeparture, latestDeparture);
+            }
+        }
+
+        candidates.sort(Comparator.<int[]>comparingInt(candidate -> -candidate[0])
+                .thenComparingInt(candidate -> candidate[1]));
+        List<Journey> journeys = new ArrayList<>();
+        int bestArrival = UNREACHED;
+        for (int[] candidate : candidates) {
+            if (candidate[1] < bestArrival) {
+                bestArrival = candidate[1];
+                journeys.add(profileJourney(timetable, s, candidate));
+            }
+        }
+        return journeys;
+    }
+
+    /*
+     * The origin is looked at as the entries are made, not through its profile: there an entry leaving after
+     * the window would hide one inside it arriving as early. A journey leaving after the window is offered as
+     * leaving at its end and waiting.
+     */
+    private static void offer(Scratch s, List<int[]> candidates, int station, int time, int arrival, int boarding,
+                              int alighting, int footpath, int earliestDeparture, int latestDeparture) {
+        if (s.sourceWalk[station] == UNREACHED) {
+            return;
+        }
+        int leave = time - s.sourceWalk[station];
+        if (leave >= earliestDeparture) {
+            candidates.add(new int[] { Math.min(leave, latestDeparture), arrival, boarding, alighting, footpath });
+        }
+    }
+
+    // follows a candidate forward, alighting where the profiles say to
+    private static Journey profileJourney(Timetable timetable, Scratch s, int[] candidate) {
+        TransitGraph graph = timetable.getGraph();
+        Profiles profiles = s.profiles;
+        Legs legs = s.legs;
+        legs.clear();
+        int boarding = candidate[2];
+        int alighting = candidate[3];
+        int k = candidate[4];
+        int source = k >= 0 ? timetable.incomingFootpathSource(k) : timetable.fromStation(boarding);
+        int rides = 0;
+        while (true) {
+            if (k >= 0) {
+                int walkEnd = timetable.departure(boarding);
+                legs.add(timetable.incomingFootpathEdge(k), timetable.fromStation(boarding),
+                        walkEnd - timetable.incomingFootpathSeconds(k), walkEnd);
+            }
+            for (int edge : timetable.tripEdges(boarding, alighting)) {
+                legs.add(edge, graph.edgeTarget(edge), timetable.tripDeparture(boarding, edge),
+                        timetable.tripArrival(boarding, edge));
+            }
+            rides++;
+
+            int station = timetable.toStation(alighting);
+            int time = timetable.arrival(alighting);
+            int alight = s.finalWalk[station] == UNREACHED ? UNREACHED : time + s.finalWalk[station];
+            int next = profiles.entryAfter(station, time);
+            if (next < 0 || alight <= profiles.arrival(station, next)) {
+                int f = s.finalFootpath[station];
+                if (f >= 0) {
+                    legs.add(timetable.incomingFootpathEdge(f), graph.edgeTarget(timetable.incomingFootpathEdge(f)),
+                            time, time + timetable.incomingFootpathSeconds(f));
+                }
+                break;
+            }
+            boarding = profiles.boarding(station, next);
+            alighting = profiles.alighting(station, next);
+            k = profiles.footpath(station, next);
+        }
+        return legs.toJourney(source, candidate[0], candidate[1], rides);
+    }
+
+    private static void setTargets(Scratch s, int[] targets, int[] targetSeconds) {
+        for (int i = 0; i < targets.length; i++) {
+            s.finalWalk[targets[i]] = Math.min(s.finalWalk[targets[i]], targetSeconds[i]);
+        }
+    }
+
+    // minutes as whole seconds, rounded up like the footpaths
+    private static int[] seconds(double[] minutes) {
+        int[] seconds = new int[minutes.length];
+        for (int i = 0; i < minutes.length; i++) {
+            seconds[i] = (int) Math.ceil(minutes[i] * 60);
+        }
+        return seconds;
+    }
+
+    /**
+     * A journey on the timetable. Departure and arrival are at the origin and destination, walks at both
+     * ends included; every edge of the path has its own departure and arrival, so waiting shows as the gap
+     * between one edge's arrival and the next one's departure. Times are seconds after midnight.
+     */
+    public static final class Journey {
+        private final GraphPath path;
+        private final int[] departures;
+        private final int[] arrivals;
+        private final int departure;
+        private final int arrival;
+        private final int rides;
+
+        Journey(GraphPath path, int[] departures, int[] arrivals, int departure, int arrival, int rides) {
+            this.path = path;
+            this.departures = departures;
+            this.arrivals = arrivals;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.rides = rides;
+        }
+
+        public GraphPath getPath() {
+            return path;
+        }
+
+        public int getDeparture() {
+            return departure;
+        }
+
+        public int getArrival() {
+            return arrival;
+        }
+
+        // when edge i of the path is left from its first station
+        public int departureAt(int i) {
+            return departures[i];
+        }
+
+        public int arrivalAt(int i) {
+            return arrivals[i];
+        }
+
+        // trips boarded after the first
+        public int getTransfers() {
+            return Math.max(0, rides - 1);
+        }
+    }
+
+    // edges of a journey being put together, with the station each one leads to and its times
+    private static final class Legs {
+        private final IntStack edges = new IntStack();
+        private final IntStack stations = new IntStack();
+        private final IntStack departures = new IntStack();
+        private final IntStack arrivals = new IntStack();
+
+        void clear() {
+            edges.clear();
+            stations.clear();
+            departures.clear();
+            arrivals.clear();
+        }
+
+        void add(int edge, int station, int departure, int arrival) {
+            edges.push(edge);
+            stations.push(station);
+            departures.push(departure);
+            arrivals.push(arrival);
+        }
+
+        int size() {
+            return edges.size();
+        }
+
+        int edge(int i) {
+            return edges.get(i);
+        }
+
+        int departure(int i) {
+            return departures.get(i);
+        }
+
+        int arrival(int i) {
+            return arrivals.get(i);
+        }
+
+        void set(int i, int departure, int arrival) {
+            departures.set(i, departure);
+            arrivals.set(i, arrival);
+        }
+
+        void reverse() {
+            edges.reverse();
+            stations.reverse();
+            departures.reverse();
+            arrivals.reverse();
+        }
+
+        Journey toJourney(int first, int departure, int arrival, int rides) {
+            int[] path = new int[stations.size() + 1];
+            path[0] = first;
+            for (int i = 0; i < stations.size(); i++) {
+                path[i + 1] = stations.get(i);
+            }
+            return new Journey(new GraphPath(path, edges.toArray()), departures.toArray(), arrivals.toArray(),
+                    departure, arrival, rides);
+        }
+    }
+
+    /**
+     * Profiles of all stations. The entries of a station are kept in order of decreasing departure, so
+     * their arrivals decrease too, and the scan backwards nearly always appends.
+     */
+    private static final class Profiles {
+        private static final int FIELDS = 5;
+
+        // per station: departure, arrival, boarding connection, alighting connection, footpath, per entry
+        private int[][] entries = new int[0][];
+        private int[] sizes = new int[0];
+        private final IntStack touched = new IntStack();
+
+        void reset(int stationCount) {
+            if (sizes.length < stationCount) {
+                entries = Arrays.copyOf(entries, stationCount);
+                sizes = new int[stationCount];
+                touched.clear();
+                return;
+            }
+            for (int i = 0; i < touched.size(); i++) {
+                sizes[touched.get(i)] = 0;
+            }
+            touched.clear();
+        }
+
+        int size(int station) {
+            return sizes[station];
+        }
+
+        int departure(int station, int i) {
+            return entries[station][i * FIELDS];
+        }
+
+        int arrival(int station, int i) {
+            return entries[station][i * FIELDS + 1];
+        }
+
+        int boarding(int station, int i) {
+            return entries[station][i * FIELDS + 2];
+        }
+
+        int alighting(int station, int i) {
+            return entries[station][i * FIELDS + 3];
+        }
+
+        int footpath(int station, int i) {
+            return entries[station][i * FIELDS + 4];
+        }
+
+        // the entry leaving first at or after the time, which arrives first of those; -1 if there is none
+        int entryAfter(int station, int time) {
+            int low = 0;
+            int high = sizes[station];
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (departure(station, mid) >= time) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+
+        int arrivalAfter(int station, int time) {
+            int i = entryAfter(station, time);
+            return i < 0 ? UNREACHED : arrival(station, i);
+        }
+
+        void add(int station, int departure, int arrival, int boarding, int alighting, int footpath) {
+            int size = sizes[station];
+            int p = size;
+            while (p > 0 && departure(station, p - 1) <= departure) {
+                p--;
+            }
+            // beaten by an entry leaving later, or at the same time
+            if ((p > 0 && arrival(station, p - 1) <= arrival)
+                    || (p < size && departure(station, p) == departure && arrival(station, p) <= arrival)) {
+                return;
+            }
+            // drops the entries leaving no later that arrive no earlier
+            int keep = p;
+            while (keep < size && arrival(station, keep) >= arrival) {
+                keep++;
+            }
+            int[] values = entries[station];
+            if (values == null) {
+                values = new int[4 * FIELDS];
+                entries[station] = values;
+            }
+            if (size == 0) {
+                touched.push(station);
+            }
+            int newSize = size - (keep - p) + 1;
+            if (newSize * FIELDS > values.length) {
+                values = Arrays.copyOf(values, Math.max(newSize * FIELDS, values.length * 2));
+                entries[station] = values;
+            }
+            System.arraycopy(values, keep * FIELDS, values, (p + 1) * FIELDS, (size - keep) * FIELDS);
+            int at = p * FIELDS;
+            values[at] = departure;
+            values[at + 1] = arrival;
+            values[at + 2] = boarding;
+            values[at + 3] = alighting;
+            values[at + 4] = footpath;
+            sizes[station] = newSize;
+        }
+    }
+
+    private static final class Scratch {
+        private int[] arrival = new int[0];
+        private int[] connection = new int[0];
+        private int[] walkArrival = new int[0];
+        private int[] footpath = new int[0];
+        private int[] walkedFrom = new int[0];
+        private int[] finalWalk = new int[0];
+        private int[] finalFootpath = new int[0];
+        private int[] sourceWalk = new int[0];
+        private int[] boarded = new int[0];
+        private int[] tripArrival = new int[0];
+        private int[] tripExit = new int[0];
+        private final Profiles profiles = new Profiles();
+        private final Legs legs = new Legs();
+
+        void reset(Timetable timetable) {
+            int n = timetable.getGraph().stationCount();
+            int trips = timetable.tripCount();
+            if (arrival.length < n) {
+                arrival = new int[n];
+                connection = new int[n];
+                walkArrival = new int[n];
+                footpath = new int[n];
+                walkedFrom = new int[n];
+                finalWalk = new int[n];
+                finalFootpath = new int[n];
+                sourceWalk = new int[n];
+            }
+            if (boarded.length < trips) {
+                boarded = new int[trips];
+                tripArrival = new int[trips];
+                tripExit = new int[trips];
+            }
+            Arrays.fill(arrival, 0, n, UNREACHED);
+            Arrays.fill(connection, 0, n, -1);
+            Arrays.fill(walkArrival, 0, n, UNREACHED);
+            Arrays.fill(finalWalk, 0, n, UNREACHED);
+            Arrays.fill(finalFootpath, 0, n, -1);
+            Arrays.fill(sourceWalk, 0, n, UNREACHED);
+            Arrays.fill(boarded, 0, trips, -1);
+            Arrays.fill(tripArrival, 0, trips, UNREACHED);
+            profiles.reset(n);
+        }
+    }
+}
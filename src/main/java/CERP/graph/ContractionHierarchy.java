@@ -0,0 +1,481 @@
+package CERP.graph;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+/**
+ * Contraction Hierarchy over the travel-time weights of a {@link TransitGraph}.
+ * <p>
+ * Preprocessing contracts stations one by one in order of their edge difference, adding a shortcut
+ * arc whenever a local witness search cannot find a path that avoids the contracted station. Queries
+ * run a bidirectional Dijkstra that only climbs to higher-ranked stations and unpack the shortcuts of
+ * the meeting path back into original edges. Arcs that are original edges keep their CSR edge index;
+ * shortcuts reference the two arcs they bridge.
+ */
+public final class ContractionHierarchy {
+    private static final int FILE_MAGIC = 0x43455243;
+    private static final int FILE_FORMAT = 1;
+
+    private final long graphFingerprint;
+    private final int nodeCount;
+    private final int[] rank;
+    private final int[] arcFrom;
+    private final int[] arcTo;
+    private final int[] arcEdge;
+    private final int[] arcChildA;
+    private final int[] arcChildB;
+    private final double[] arcWeight;
+
+    // arcs towards higher ranks: leaving a node for the forward search, entering it for the backward search
+    private final int[] upOffsets;
+    private final int[] upArcs;
+    private final int[] downOffsets;
+    private final int[] downArcs;
+
+    private static final ThreadLocal<QueryState> QUERY_STATE = ThreadLocal.withInitial(QueryState::new);
+
+    private ContractionHierarchy(long graphFingerprint, int[] rank, int[] arcFrom, int[] arcTo, int[] arcEdge,
+                                 int[] arcChildA, int[] arcChildB, double[] arcWeight) {
+        this.graphFingerprint = graphFingerprint;
+        this.nodeCount = rank.length;
+        this.rank = rank;
+        this.arcFrom = arcFrom;
+        this.arcTo = arcTo;
+        this.arcEdge = arcEdge;
+        this.arcChildA = arcChildA;
+        this.arcChildB = arcChildB;
+        this.arcWeight = arcWeight;
+
+        upOffsets = new int[nodeCount + 1];
+        downOffsets = new int[nodeCount + 1];
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcFrom[a]] < rank[arcTo[a]]) {
+                upOffsets[arcFrom[a] + 1]++;
+            } else {
+                downOffsets[arcTo[a] + 1]++;
+            }
+        }
+        for (int v = 0; v < nodeCount; v++) {
+            upOffsets[v + 1] += upOffsets[v];
+            downOffsets[v + 1] += downOffsets[v];
+        }
+        upArcs = new int[upOffsets[nodeCount]];
+        downArcs = new int[downOffsets[nodeCount]];
+        int[] upFill = Arrays.copyOf(upOffsets, nodeCount);
+        int[] downFill = Arrays.copyOf(downOffsets, nodeCount);
+        for (int a = 0; a < arcFrom.length; a++) {
+            if (rank[arcFrom[a]] < rank[arcTo[a]]) {
+                upArcs[upFill[arcFrom[a]]++] = a;
+            } else {
+                downArcs[downFill[arcTo[a]]++] = a;
+            }
+        }
+    }
+
+    public static ContractionHierarchy build(TransitGraph graph) {
+        return new Builder(graph).contract();
+    }
+
+    public long getGraphFingerprint() {
+        return graphFingerprint;
+    }
+
+    public int arcCount() {
+        return arcFrom.length;
+    }
+
+    /**
+     * Fastest station path from any source to any target, where each source and target carries the
+     * walking time to or from it. Returns the path over original edges, or null if no target is reachable.
+     */
+    public GraphPath shortestPath(int[] sources, double[] sourceCosts, int[] targets, double[] targetCosts) {
+        QueryState state = QUERY_STATE.get();
+        state.reset(nodeCount);
+        for (int i = 0; i < sources.length; i++) {
+            state.forward.seed(sources[i], sourceCosts[i]);
+        }
+        for (int i = 0; i < targets.length; i++) {
+            state.backward.seed(targets[i], targetCosts[i]);
+        }
+
+        double best = Double.MAX_VALUE;
+        int meet = -1;
+        Direction forward = state.forward;
+        Direction backward = state.backward;
+        while (true) {
+            boolean forwardActive = !forward.heap.isEmpty() && forward.heap.peekKey() < best;
+            boolean backwardActive = !backward.heap.isEmpty() && backward.heap.peekKey() < best;
+            if (!forwardActive && !backwardActive) {
+                break;
+            }
+            boolean goForward = forwardActive && (!backwardActive || forward.heap.peekKey() <= backward.heap.peekKey());
+            Direction current = goForward ? forward : backward;
+            Direction other = goForward ? backward : forward;
+
+            int v = current.heap.poll();
+            double distance = current.distance[v];
+            if (other.isReached(v) && distance + other.distance[v] < best) {
+                best = distance + other.distance[v];
+                meet = v;
+            }
+
+            int[] offsets = goForward ? upOffsets : downOffsets;
+            int[] arcs = goForward ? upArcs : downArcs;
+            for (int k = offsets[v]; k < offsets[v + 1]; k++) {
+                int a = arcs[k];
+                int next = goForward ? arcTo[a] : arcFrom[a];
+                current.relax(next, distance + arcWeight[a], a);
+            }
+        }
+        return meet < 0 ? null : unpack(state, meet);
+    }
+
+    private GraphPath unpack(QueryState state, int meet) {
+        IntStack arcs = state.arcs;
+        arcs.clear();
+        for (int v = meet; state.forward.parentArc[v] >= 0; v = arcFrom[state.forward.parentArc[v]]) {
+            arcs.push(state.forward.parentArc[v]);
+        }
+        arcs.reverse();
+        int start = arcs.size() == 0 ? meet : arcFrom[arcs.get(0)];
+        for (int v = meet; state.backward.parentArc[v] >= 0; v = arcTo[state.backward.parentArc[v]]) {
+            arcs.push(state.backward.parentArc[v]);
+        }
+
+        IntStack path = state.path;
+        IntStack edges = state.edges;
+        IntStack pending = state.pending;
+        path.clear();
+        edges.clear();
+        path.push(start);
+        for (int i = 0; i < arcs.size(); i++) {
+            pending.clear();
+            pending.push(arcs.get(i));
+            while (pending.size() > 0) {
+                int a = pending.pop();
+                if (arcEdge[a] >= 0) {
+                    path.push(arcTo[a]);
+                    edges.push(arcEdge[a]);
+                } else {
+                    pending.push(arcChildB[a]);
+                    pending.push(arcChildA[a]);
+                }
+            }
+        }
+        return new GraphPath(path.toArray(), edges.toArray());
+    }
+
+    public void writeTo(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_FORMAT);
+            out.writeLong(graphFingerprint);
+            out.writeInt(nodeCount);
+            out.writeInt(arcFrom.length);
+            for (int v = 0; v < nodeCount; v++) {
+                out.writeInt(rank[v]);
+            }
+            for (int a = 0; a < arcFrom.length; a++) {
+                out.writeInt(arcFrom[a]);
+                out.writeInt(arcTo[a]);
+                out.writeInt(arcEdge[a]);
+                out.writeInt(arcChildA[a]);
+                out.writeInt(arcChildB[a]);
+                out.writeDouble(arcWeight[a]);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static ContractionHierarchy readFrom(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_FORMAT) {
+                throw new IOException("not a contraction hierarchy file: " + file);
+            }
+            long fingerprint = in.readLong();
+            int nodes = in.readInt();
+            int arcCount = in.readInt();
+            int[] rank = new int[nodes];
+            for (int v = 0; v < nodes; v++) {
+                rank[v] = in.readInt();
+            }
+            int[] from = new int[arcCount];
+            int[] to = new int[arcCount];
+            int[] edge = new int[arcCount];
+            int[] childA = new int[arcCount];
+            int[] childB = new int[arcCount];
+            double[] weight = new double[arcCount];
+            for (int a = 0; a < arcCount; a++) {
+                from[a] = in.readInt();
+                to[a] = in.readInt();
+                edge[a] = in.readInt();
+                childA[a] = in.readInt();
+                childB[a] = in.readInt();
+                weight[a] = in.readDouble();
+            }
+            return new ContractionHierarchy(fingerprint, rank, from, to, edge, childA, childB, weight);
+        }
+    }
+
+    private static final class Builder {
+        private static final int WITNESS_SETTLE_LIMIT = 500;
+
+        private final TransitGraph graph;
+        private final int n;
+
+        private int arcCount;
+        private int[] arcFrom = new int[64];
+        private int[] arcTo = new int[64];
+        private int[] arcEdge = new int[64];
+        private int[] arcChildA = new int[64];
+        private int[] arcChildB = new int[64];
+        private double[] arcWeight = new double[64];
+
+        private final IntStack[] outArcs;
+        private final IntStack[] inArcs;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+        private final int[] rank;
+
+        private final double[] witnessDistance;
+        private final int[] witnessStamp;
+        private int stamp;
+        private final IndexedMinHeap witnessHeap;
+
+        Builder(TransitGraph graph) {
+            this.graph = graph;
+            this.n = graph.stationCount();
+            outArcs = new IntStack[n];
+            inArcs = new IntStack[n];
+            for (int v = 0; v < n; v++) {
+                outArcs[v] = new IntStack();
+                inArcs[v] = new IntStack();
+            }
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            rank = new int[n];
+            witnessDistance = new double[n];
+            witnessStamp = new int[n];
+            witnessHeap = new IndexedMinHeap(n);
+
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    int v = graph.edgeTarget(e);
+                    double weight = graph.edgeTravelTime(e);
+                    if (u != v && !Double.isInfinite(weight)) {
+                        addArc(u, v, weight, e, -1, -1);
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy contract() {
+            IndexedMinHeap queue = new IndexedMinHeap(n);
+            for (int v = 0; v < n; v++) {
+                queue.insert(v, priority(v));
+            }
+            int order = 0;
+            while (!queue.isEmpty()) {
+                int v = queue.poll();
+                // priorities go stale as neighbours get contracted; re-check lazily before committing
+                double priority = priority(v);
+                if (!queue.isEmpty() && priority > queue.peekKey()) {
+                    queue.insert(v, priority);
+                    continue;
+                }
+                processNode(v, false);
+                contracted[v] = true;
+                rank[v] = order++;
+                for (int k = 0; k < outArcs[v].size(); k++) {
+                    contractedNeighbors[arcTo[outArcs[v].get(k)]]++;
+                }
+                for (int k = 0; k < inArcs[v].size(); k++) {
+                    contractedNeighbors[arcFrom[inArcs[v].get(k)]]++;
+                }
+            }
+            return new ContractionHierarchy(graph.getFingerprint(), rank,
+                    Arrays.copyOf(arcFrom, arcCount), Arrays.copyOf(arcTo, arcCount), Arrays.copyOf(arcEdge, arcCount),
+                    Arrays.copyOf(arcChildA, arcCount), Arrays.copyOf(arcChildB, arcCount),
+                    Arrays.copyOf(arcWeight, arcCount));
+        }
+
+        private double priority(int v) {
+            int degree = 0;
+            for (int k = 0; k < outArcs[v].size(); k++) {
+                degree += contracted[arcTo[outArcs[v].get(k)]] ? 0 : 1;
+            }
+            for (int k = 0; k < inArcs[v].size(); k++) {
+                degree += contracted[arcFrom[inArcs[v].get(k)]] ? 0 : 1;
+            }
+            int shortcuts = processNode(v, true);
+            return 2.0 * (shortcuts - degree) + contractedNeighbors[v];
+        }
+
+        // counts (simulate) or adds the shortcuts needed to contract v
+        private int processNode(int v, boolean simulate) {
+            int shortcuts = 0;
+            IntStack in = inArcs[v];
+            IntStack out = outArcs[v];
+            for (int i = 0; i < in.size(); i++) {
+                int inArc = in.get(i);
+                int u = arcFrom[inArc];
+                if (contracted[u]) {
+                    continue;
+                }
+                double limit = -1;
+                for (int k = 0; k < out.size(); k++) {
+                    int w = arcTo[out.get(k)];
+                    if (!contracted[w] && w != u) {
+                        limit = Math.max(limit, arcWeight[inArc] + arcWeight[out.get(k)]);
+                    }
+                }
+                if (limit < 0) {
+                    continue;
+                }
+                witnessSearch(u, v, limit);
+                for (int k = 0; k < out.size(); k++) {
+                    int outArc = out.get(k);
+                    int w = arcTo[outArc];
+                    if (contracted[w] || w == u) {
+                        continue;
+                    }
+                    double via = arcWeight[inArc] + arcWeight[outArc];
+                    if (witnessStamp[w] == stamp && witnessDistance[w] <= via) {
+                        continue;
+                    }
+                    shortcuts++;
+                    if (!simulate) {
+                        addArc(u, w, via, -1, inArc, outArc);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        private void witnessSearch(int source, int excluded, double limit) {
+            stamp++;
+            witnessHeap.clear();
+            witnessStamp[source] = stamp;
+            witnessDistance[source] = 0;
+            witnessHeap.insert(source, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && witnessHeap.peekKey() <= limit && settled++ < WITNESS_SETTLE_LIMIT) {
+                int u = witnessHeap.poll();
+                IntStack out = outArcs[u];
+                for (int k = 0; k < out.size(); k++) {
+                    int a = out.get(k);
+                    int w = arcTo[a];
+                    if (w == excluded || contracted[w]) {
+                        continue;
+                    }
+                    double distance = witnessDistance[u] + arcWeight[a];
+                    if (witnessStamp[w] != stamp) {
+                        witnessStamp[w] = stamp;
+                        witnessDistance[w] = distance;
+                        witnessHeap.insert(w, distance);
+                    } else if (distance < witnessDistance[w]) {
+                        witnessDistance[w] = distance;
+                        witnessHeap.insertOrDecrease(w, distance);
+                    }
+                }
+            }
+        }
+
+        private void addArc(int from, int to, double weight, int edge, int childA, int childB) {
+            // keep a single arc per pair of uncontracted stations; it cannot be part of a shortcut yet
+            IntStack out = outArcs[from];
+            for (int k = 0; k < out.size(); k++) {
+                int a = out.get(k);
+                if (arcTo[a] == to) {
+                    if (weight < arcWeight[a]) {
+                        arcWeight[a] = weight;
+                        arcEdge[a] = edge;
+                        arcChildA[a] = childA;
+                        arcChildB[a] = childB;
+                    }
+                    return;
+                }
+            }
+            if (arcCount == arcFrom.length) {
+                int capacity = arcCount * 2;
+                arcFrom = Arrays.copyOf(arcFrom, capacity);
+                arcTo = Arrays.copyOf(arcTo, capacity);
+                arcEdge = Arrays.copyOf(arcEdge, capacity);
+                arcChildA = Arrays.copyOf(arcChildA, capacity);
+                arcChildB = Arrays.copyOf(arcChildB, capacity);
+                arcWeight = Arrays.copyOf(arcWeight, capacity);
+            }
+            int a = arcCount++;
+            arcFrom[a] = from;
+            arcTo[a] = to;
+            arcEdge[a] = edge;
+            arcChildA[a] = childA;
+            arcChildB[a] = childB;
+            arcWeight[a] = weight;
+            out.push(a);
+            inArcs[to].push(a);
+        }
+    }
+
+    private static final class Direction {
+        private int stamp;
+        private int[] reached = new int[0];
+        double[] distance = new double[0];
+        int[] parentArc = new int[0];
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+        void reset(int n) {
+            if (reached.length < n) {
+                reached = new int[n];
+                distance = new double[n];
+                parentArc = new int[n];
+                heap.ensureCapacity(n);
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(reached, 0);
+                stamp = 1;
+            }
+            heap.clear();
+        }
+
+        boolean isReached(int v) {
+            return reached[v] == stamp;
+        }
+
+        void seed(int v, double cost) {
+            relax(v, cost, -1);
+        }
+
+        void relax(int v, double cost, int arc) {
+            if (reached[v] != stamp) {
+                reached[v] = stamp;
+                distance[v] = cost;
+                parentArc[v] = arc;
+                heap.insert(v, cost);
+            } else if (cost < distance[v]) {
+                distance[v] = cost;
+                parentArc[v] = arc;
+                heap.insertOrDecrease(v, cost);
+            }
+        }
+    }
+
+    private static final class QueryState {
+        final Direction forward = new Direction();
+        final Direction backward = new Direction();
+        final IntStack arcs = new IntStack();
+        final IntStack pending = new IntStack();
+        final IntStack path = new IntStack();
+        final IntStack edges = new IntStack();
+
+        void reset(int n) {
+            forward.reset(n);
+            backward.reset(n);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package CERP.graph;
+
+import CERP.model.Route;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Changes to apply to a live {@link TransitGraph} without reloading it: new travel times and closures of
+ * routes from {@code cer_routes}, identified by route id, and additional walking transfers.
+ */
+public final class GraphDelta {
+    private final Map<Integer, Double> travelTimes = new LinkedHashMap<>();
+    private final Set<Integer> closedRoutes = new HashSet<>();
+    private final List<Route> transfers = new ArrayList<>();
+
+    public GraphDelta setTravelTime(int routeId, double travelTime) {
+        if (!(travelTime >= 0)) {
+            throw new IllegalArgumentException("travel time of route " + routeId + " must be at least 0");
+        }
+        travelTimes.put(routeId, travelTime);
+        return this;
+    }
+
+    public GraphDelta closeRoute(int routeId) {
+        closedRoutes.add(routeId);
+        return this;
+    }
+
+    // a walking transfer from one station to a station of the given line
+    public GraphDelta addTransfer(int fromStationId, int toStationId, int lineId, double travelTime, int distance) {
+        if (!(travelTime >= 0)) {
+            throw new IllegalArgumentException("travel time of a transfer must be at least 0");
+        }
+        transfers.add(new Route(-1, fromStationId, toStationId, lineId, travelTime, distance, "transfer"));
+        return this;
+    }
+
+    public Map<Integer, Double> getTravelTimes() {
+        return Collections.unmodifiableMap(travelTimes);
+    }
+
+    public Set<Integer> getClosedRoutes() {
+        return Collections.unmodifiableSet(closedRoutes);
+    }
+
+    public List<Route> getTransfers() {
+        return Collections.unmodifiableList(transfers);
+    }
+
+    public boolean isEmpty() {
+        return travelTimes.isEmpty() && closedRoutes.isEmpty() && transfers.isEmpty();
+    }
+}
@@ -0,0 +1,255 @@
+package CERP.graph;
+
+import CERP.model.Line;
+import CERP.model.Station;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary file of a built {@link TransitGraph}: stations, lines, line membership and the edges in CSR
+ * form with the walking transfers already generated, so loading it needs neither the database nor the
+ * transfer search.
+ * <p>
+ * The file is little-endian. A 48-byte header (magic, format version, graph fingerprint, export time,
+ * CRC32C and length of the payload) is followed by the counts, the edge arrays, each padded to 8 bytes,
+ * and then stations, lines and line members. {@link #read} maps the file and hands the edge arrays to
+ * the graph as views of the mapping, so they stay off the heap and in the page cache shared by every
+ * process that maps the same file.
+ */
+public final class GraphFile {
+    private static final long MAGIC = 0x4345525047524150L;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 48;
+
+    private GraphFile() {
+    }
+
+    public static void write(TransitGraph graph, Path file) throws IOException {
+        int n = graph.stationCount();
+        int m = graph.edgeCount();
+        List<byte[]> strings = new ArrayList<>();
+        for (Station station : graph.getStations()) {
+            strings.add(encode(station.getStationName()));
+            strings.add(encode(station.getStationType()));
+        }
+        for (Line line : graph.getLines().values()) {
+            strings.add(encode(line.getLineType()));
+        }
+        // keyed by line id, including lines missing from the lines table
+        Map<Integer, int[]> lineStations = graph.lineStationIndices();
+
+        long size = 16L + padded(4L * (n + 1)) + 4 * padded(4L * m) + 8L * m + padded(m)
+                + (long) n * (4 + 8 + 8) + graph.getLines().size() * 4L + 4;
+        for (byte[] string : strings) {
+            size += 4 + (string == null ? 0 : string.length);
+        }
+        for (int[] members : lineStations.values()) {
+            size += 8 + 4L * members.length;
+        }
+        if (HEADER_BYTES + size > Integer.MAX_VALUE) {
+            throw new IOException("transit graph too large for a graph file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) (HEADER_BYTES + size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_BYTES);
+        buffer.putInt(n).putInt(m).putInt(graph.getLines().size()).putInt(0);
+        for (int i = 0; i < n; i++) {
+            buffer.putInt(graph.firstEdge(i));
+        }
+        buffer.putInt(m);
+        pad(buffer);
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(graph.edgeTarget(e));
+        }
+        pad(buffer);
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(graph.edgeLineId(e));
+        }
+        pad(buffer);
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(graph.edgeRouteId(e));
+        }
+        pad(buffer);
+        for (int e = 0; e < m; e++) {
+            buffer.putInt(graph.edgeDistance(e));
+        }
+        pad(buffer);
+        for (int e = 0; e < m; e++) {
+            buffer.putDouble(graph.edgeTravelTime(e));
+        }
+        for (int e = 0; e < m; e++) {
+            buffer.put(graph.edgeLineType(e));
+        }
+        pad(buffer);
+
+        int string = 0;
+        for (Station station : graph.getStations()) {
+            buffer.putInt(station.getStationId());
+            buffer.putDouble(station.getLatitude());
+            buffer.putDouble(station.getLongitude());
+            putString(buffer, strings.get(string++));
+            putString(buffer, strings.get(string++));
+        }
+        for (Line line : graph.getLines().values()) {
+            buffer.putInt(line.getLineId());
+            putString(buffer, strings.get(string++));
+        }
+        buffer.putInt(lineStations.size());
+        for (Map.Entry<Integer, int[]> entry : lineStations.entrySet()) {
+            buffer.putInt(entry.getKey());
+            buffer.putInt(entry.getValue().length);
+            for (int member : entry.getValue()) {
+                buffer.putInt(member);
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), HEADER_BYTES, (int) size);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, FORMAT);
+        buffer.putInt(12, 0);
+        buffer.putLong(16, graph.getFingerprint());
+        buffer.putLong(24, System.currentTimeMillis());
+        buffer.putLong(32, crc.getValue());
+        buffer.putLong(40, size);
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps the file and checks its checksum and fingerprint before building the graph on top of the mapping.
+     *
+     * @param version version given to the loaded graph
+     */
+    public static TransitGraph read(Path file, long version) throws IOException {
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("not a graph file: " + file);
+            }
+            // the mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        ByteBuffer buffer = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getLong(0) != MAGIC) {
+            throw new IOException("not a graph file: " + file);
+        }
+        if (buffer.getInt(8) != FORMAT) {
+            throw new IOException("graph file " + file + " has format " + buffer.getInt(8) + ", expected " + FORMAT);
+        }
+        long fingerprint = buffer.getLong(16);
+        long size = buffer.getLong(40);
+        if (size != buffer.capacity() - HEADER_BYTES) {
+            throw new IOException("graph file " + file + " is truncated");
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(HEADER_BYTES, (int) size));
+        if (crc.getValue() != buffer.getLong(32)) {
+            throw new IOException("graph file " + file + " fails its checksum");
+        }
+
+        buffer.position(HEADER_BYTES);
+        int n = buffer.getInt();
+        int m = buffer.getInt();
+        int lineCount = buffer.getInt();
+        buffer.getInt();
+        IntBuffer edgeOffsets = ints(buffer, n + 1);
+        IntBuffer edgeTargets = ints(buffer, m);
+        IntBuffer edgeLineIds = ints(buffer, m);
+        IntBuffer edgeRouteIds = ints(buffer, m);
+        IntBuffer edgeDistances = ints(buffer, m);
+        DoubleBuffer edgeTravelTimes = slice(buffer, 8L * m).asDoubleBuffer();
+        ByteBuffer edgeLineTypes = slice(buffer, m);
+
+        Station[] stations = new Station[n];
+        for (int i = 0; i < n; i++) {
+            int stationId = buffer.getInt();
+            double latitude = buffer.getDouble();
+            double longitude = buffer.getDouble();
+            stations[i] = new Station(stationId, getString(buffer), getString(buffer), latitude, longitude);
+        }
+        Map<Integer, Line> lines = new LinkedHashMap<>();
+        for (int i = 0; i < lineCount; i++) {
+            int lineId = buffer.getInt();
+            lines.put(lineId, new Line(lineId, getString(buffer)));
+        }
+        Map<Integer, int[]> lineStations = new LinkedHashMap<>();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            int lineId = buffer.getInt();
+            int[] members = new int[buffer.getInt()];
+            for (int k = 0; k < members.length; k++) {
+                members[k] = buffer.getInt();
+            }
+            lineStations.put(lineId, members);
+        }
+
+        TransitGraph graph = TransitGraph.fromEdges(version, stations, lines, lineStations, edgeOffsets, edgeTargets,
+                edgeTravelTimes, edgeLineTypes, edgeLineIds, edgeRouteIds, edgeDistances);
+        if (graph.getFingerprint() != fingerprint) {
+            throw new IOException("graph file " + file + " does not match the fingerprint it was written with");
+        }
+        return graph;
+    }
+
+    // a little-endian view of the next bytes, moving past them and the padding after them
+    private static ByteBuffer slice(ByteBuffer buffer, long bytes) {
+        ByteBuffer slice = buffer.slice(buffer.position(), (int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + (int) padded(bytes));
+        return slice;
+    }
+
+    private static IntBuffer ints(ByteBuffer buffer, int count) {
+        return slice(buffer, 4L * count).asIntBuffer();
+    }
+
+    private static long padded(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static void pad(ByteBuffer buffer) {
+        while ((buffer.position() & 7) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
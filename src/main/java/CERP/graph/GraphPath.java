@@ -0,0 +1,48 @@
+package CERP.graph;
+
+/**
+ * A path found by a search: its stations and the edges it travels, edge {@code i} leading from station
+ * {@code i} to station {@code i + 1}. Carrying the edges keeps the ridden line and route of every hop,
+ * which the stations alone do not tell apart when several lines connect them.
+ */
+public final class GraphPath {
+    private final int[] stations;
+    private final int[] edges;
+
+    GraphPath(int[] stations, int[] edges) {
+        if (edges.length != stations.length - 1) {
+            throw new IllegalArgumentException("a path of " + stations.length + " stations has "
+                    + (stations.length - 1) + " edges, not " + edges.length);
+        }
+        this.stations = stations;
+        this.edges = edges;
+    }
+
+    public int stationCount() {
+        return stations.length;
+    }
+
+    public int station(int i) {
+        return stations[i];
+    }
+
+    public int edgeCount() {
+        return edges.length;
+    }
+
+    public int edge(int i) {
+        return edges[i];
+    }
+
+    public int first() {
+        return stations[0];
+    }
+
+    public int last() {
+        return stations[stations.length - 1];
+    }
+
+    public int[] getStations() {
+        return stations.clone();
+    }
+}
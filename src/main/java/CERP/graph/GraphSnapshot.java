@@ -0,0 +1,58 @@
+package CERP.graph;
+
+import java.time.Instant;
+
+/**
+ * A transit graph together with the speedup data derived from it. Queries read one snapshot and use
+ * it throughout, so the graph and its preprocessing always belong to the same version.
+ */
+public final class GraphSnapshot {
+    private final TransitGraph graph;
+    private final ContractionHierarchy hierarchy;
+    private final Landmarks landmarks;
+    private final Timetable timetable;
+    private final Instant builtAt;
+    private final long buildMillis;
+
+    public GraphSnapshot(TransitGraph graph, ContractionHierarchy hierarchy, Landmarks landmarks,
+                         Timetable timetable, Instant builtAt, long buildMillis) {
+        this.graph = graph;
+        this.hierarchy = hierarchy;
+        this.landmarks = landmarks;
+        this.timetable = timetable;
+        this.builtAt = builtAt;
+        this.buildMillis = buildMillis;
+    }
+
+    public TransitGraph getGraph() {
+        return graph;
+    }
+
+    // null when the hierarchy could not be built; callers fall back to A*
+    public ContractionHierarchy getHierarchy() {
+        return hierarchy;
+    }
+
+    // null when the landmarks could not be built; A* then uses the straight-line heuristic
+    public Landmarks getLandmarks() {
+        return landmarks;
+    }
+
+    // null when the timetable could not be built or is being rebuilt after a delta; departure-time queries fail then
+    public Timetable getTimetable() {
+        return timetable;
+    }
+
+    public long getVersion() {
+        return graph.getVersion();
+    }
+
+    public Instant getBuiltAt() {
+        return builtAt;
+    }
+
+    // time spent loading the graph and deriving its speedup data
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+}
@@ -0,0 +1,154 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Indexed d-ary min-heap over node indices {@code 0 .. capacity - 1} with double keys.
+ * A position table gives O(1) {@link #contains} and O(log n) {@link #decreaseKey}, so the open
+ * list never has to be scanned or hold duplicate entries. Polls and other updates are counted in the
+ * {@link SearchStats} of the thread that created the heap.
+ */
+public final class IndexedMinHeap {
+    private static final int ARITY = 4;
+
+    private int[] heap;
+    private double[] keys;
+    private int[] positions;
+    private int size;
+    private final SearchStats stats = SearchStats.current();
+
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    // grows to hold nodes below capacity, keeping the nodes already queued
+    public void ensureCapacity(int capacity) {
+        if (positions.length < capacity) {
+            int previous = positions.length;
+            heap = Arrays.copyOf(heap, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            Arrays.fill(positions, previous, capacity, -1);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] >= 0;
+    }
+
+    public double key(int node) {
+        return keys[node];
+    }
+
+    public double peekKey() {
+        return keys[heap[0]];
+    }
+
+    public int peek() {
+        return heap[0];
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    public void insert(int node, double key) {
+        stats.heapOperations++;
+        keys[node] = key;
+        heap[size] = node;
+        positions[node] = size;
+        siftUp(size++);
+    }
+
+    public void decreaseKey(int node, double key) {
+        stats.heapOperations++;
+        keys[node] = key;
+        siftUp(positions[node]);
+    }
+
+    // inserts the node or lowers its key; a higher key than the current one is ignored
+    public void insertOrDecrease(int node, double key) {
+        int position = positions[node];
+        if (position < 0) {
+            insert(node, key);
+        } else if (key < keys[node]) {
+            stats.heapOperations++;
+            keys[node] = key;
+            siftUp(position);
+        }
+    }
+
+    public int poll() {
+        stats.heapOperations++;
+        stats.nodesExpanded++;
+        int top = heap[0];
+        positions[top] = -1;
+        if (--size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int position) {
+        int node = heap[position];
+        double key = keys[node];
+        while (position > 0) {
+            int parentPosition = (position - 1) / ARITY;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+
+    private void siftDown(int position) {
+        int node = heap[position];
+        double key = keys[node];
+        while (true) {
+            int firstChild = position * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int bestPosition = firstChild;
+            double bestKey = keys[heap[firstChild]];
+            for (int child = firstChild + 1, last = Math.min(firstChild + ARITY, size); child < last; child++) {
+                double childKey = keys[heap[child]];
+                if (childKey < bestKey) {
+                    bestKey = childKey;
+                    bestPosition = child;
+                }
+            }
+            if (key <= bestKey) {
+                break;
+            }
+            int best = heap[bestPosition];
+            heap[position] = best;
+            positions[best] = position;
+            position = bestPosition;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+}
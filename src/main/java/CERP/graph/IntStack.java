@@ -0,0 +1,50 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used as scratch space by the searches.
+ */
+final class IntStack {
+    private int[] values = new int[16];
+    private int size;
+
+    int size() {
+        return size;
+    }
+
+    int get(int index) {
+        return values[index];
+    }
+
+    void set(int index, int value) {
+        values[index] = value;
+    }
+
+    void push(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    int pop() {
+        return values[--size];
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
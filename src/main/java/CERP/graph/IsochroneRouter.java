@@ -0,0 +1,140 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Bounded one-to-all search for isochrones: every station reachable within a time budget, with its
+ * earliest arrival and the fare of the path it is reached by.
+ * <p>
+ * A single Dijkstra on travel time, the same metric {@link AStarRouter#fastestPath} uses, is seeded with
+ * the walk to every origin station and stops at the budget. Fares follow the rules of
+ * {@link RaptorRouter} along each station's fastest path. Scratch arrays are kept per thread, so a query
+ * only allocates its result.
+ */
+public final class IsochroneRouter {
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /**
+     * @param sourceTimes minutes to get to each source station
+     * @param maxFare     stations whose fastest path costs more are left out, and not expanded further
+     */
+    public Isochrone reachable(TransitGraph graph, int[] sources, double[] sourceTimes, double maxMinutes,
+                               double maxFare) {
+        Scratch s = SCRATCH.get();
+        s.reset(graph.stationCount());
+        IndexedMinHeap heap = s.heap;
+        for (int i = 0; i < sources.length; i++) {
+            s.offer(sources[i], sourceTimes[i], 0, RaptorRouter.NO_FARE, maxMinutes);
+        }
+
+        while (!heap.isEmpty()) {
+            int v = heap.poll();
+            s.settled.push(v);
+            double time = s.time[v];
+            double fare = s.fare[v];
+            int state = s.state[v];
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                byte lineType = graph.edgeLineType(e);
+                double nextFare = fare;
+                int nextState = state;
+                if (lineType != TransitGraph.TRANSFER) {
+                    // boarding fare plus the per-segment fare, which is the cost metric at zero wage
+                    nextFare += RaptorRouter.boardingCost(state, lineType)
+                            + AStarRouter.edgeWeight(graph, e, true, 0);
+                    nextState = lineType;
+                }
+                // fares only grow along a path, so nothing past the fare budget can come back under it
+                if (nextFare <= maxFare) {
+                    s.offer(graph.edgeTarget(e), time + graph.edgeTravelTime(e), nextFare, nextState, maxMinutes);
+                }
+            }
+        }
+
+        int count = s.settled.size();
+        int[] stations = new int[count];
+        double[] times = new double[count];
+        double[] fares = new double[count];
+        for (int i = 0; i < count; i++) {
+            int station = s.settled.get(i);
+            stations[i] = station;
+            times[i] = s.time[station];
+            fares[i] = s.fare[station];
+        }
+        return new Isochrone(stations, times, fares);
+    }
+
+    /**
+     * Reached stations in order of arrival.
+     */
+    public static final class Isochrone {
+        private final int[] stations;
+        private final double[] arrivalTimes;
+        private final double[] fares;
+
+        Isochrone(int[] stations, double[] arrivalTimes, double[] fares) {
+            this.stations = stations;
+            this.arrivalTimes = arrivalTimes;
+            this.fares = fares;
+        }
+
+        public int size() {
+            return stations.length;
+        }
+
+        public int station(int i) {
+            return stations[i];
+        }
+
+        public double arrivalTime(int i) {
+            return arrivalTimes[i];
+        }
+
+        public double fare(int i) {
+            return fares[i];
+        }
+    }
+
+    // per-thread station arrays, invalidated between queries by a stamp instead of clearing
+    private static final class Scratch {
+        int stamp;
+        int[] stationStamp = new int[0];
+        double[] time = new double[0];
+        double[] fare = new double[0];
+        byte[] state = new byte[0];
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+        final IntStack settled = new IntStack();
+
+        void reset(int stationCount) {
+            if (stationStamp.length < stationCount) {
+                stationStamp = new int[stationCount];
+                time = new double[stationCount];
+                fare = new double[stationCount];
+                state = new byte[stationCount];
+                heap.ensureCapacity(stationCount);
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(stationStamp, 0);
+                stamp = 1;
+            }
+            heap.clear();
+            settled.clear();
+        }
+
+        void offer(int station, double arrival, double pathFare, int pathState, double maxMinutes) {
+            if (arrival > maxMinutes) {
+                return;
+            }
+            if (stationStamp[station] != stamp) {
+                stationStamp[station] = stamp;
+                time[station] = Double.POSITIVE_INFINITY;
+            }
+            if (arrival < time[station]) {
+                time[station] = arrival;
+                fare[station] = pathFare;
+                state[station] = (byte) pathState;
+                heap.insertOrDecrease(station, arrival);
+            }
+        }
+    }
+}
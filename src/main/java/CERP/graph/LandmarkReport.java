@@ -0,0 +1,58 @@
+package CERP.graph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares the number of nodes A* expands with the straight-line heuristic against the ALT heuristic
+ * on a seeded sample of random station pairs, for both the time and the cost metric.
+ */
+public final class LandmarkReport {
+
+    private LandmarkReport() {
+    }
+
+    public static String compare(TransitGraph graph, Landmarks landmarks, AStarRouter router, int queries, long seed) {
+        if (graph.stationCount() == 0 || queries <= 0) {
+            return "no queries";
+        }
+        Random random = new Random(seed);
+        int[][] pairs = new int[queries][];
+        for (int q = 0; q < queries; q++) {
+            pairs[q] = new int[] { random.nextInt(graph.stationCount()), random.nextInt(graph.stationCount()) };
+        }
+        return "fastest: " + summarize(graph, landmarks, router, pairs, false)
+                + "; cost-effective: " + summarize(graph, landmarks, router, pairs, true);
+    }
+
+    private static String summarize(TransitGraph graph, Landmarks landmarks, AStarRouter router, int[][] pairs,
+                                    boolean costMetric) {
+        int[] before = new int[pairs.length];
+        int[] after = new int[pairs.length];
+        double[] zero = { 0 };
+        for (int q = 0; q < pairs.length; q++) {
+            int[] source = { pairs[q][0] };
+            int[] target = { pairs[q][1] };
+            for (int pass = 0; pass < 2; pass++) {
+                Landmarks used = pass == 0 ? null : landmarks;
+                if (costMetric) {
+                    router.cheapestPath(graph, used, source, zero, target, zero);
+                } else {
+                    router.fastestPath(graph, used, source, zero, target, zero);
+                }
+                (pass == 0 ? before : after)[q] = router.lastExpandedNodes();
+            }
+        }
+        double meanBefore = Arrays.stream(before).average().orElse(0);
+        double meanAfter = Arrays.stream(after).average().orElse(0);
+        return String.format("nodes expanded per query mean %.1f -> %.1f, median %d -> %d, p90 %d -> %d (%.1fx fewer)",
+                meanBefore, meanAfter, percentile(before, 0.5), percentile(after, 0.5),
+                percentile(before, 0.9), percentile(after, 0.9), meanAfter == 0 ? 0 : meanBefore / meanAfter);
+    }
+
+    private static int percentile(int[] values, double fraction) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+    }
+}
@@ -0,0 +1,201 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Landmark distances for ALT (A*, landmarks, triangle inequality) lower bounds.
+ * <p>
+ * For every landmark {@code L} the distances {@code d(L, v)} and {@code d(v, L)} are stored for both
+ * the travel-time metric and the wage-weighted cost metric used by {@link AStarRouter}, so that
+ * {@code d(v, t) >= max(d(L, t) - d(L, v), d(v, L) - d(t, L))}. Landmarks are picked by farthest
+ * selection on travel time.
+ */
+public final class Landmarks {
+    private static final int DEFAULT_LANDMARK_COUNT = 8;
+
+    private final int count;
+    private final int[] landmarks;
+    // indexed [station * count + landmark]
+    private final double[] timeFrom;
+    private final double[] timeTo;
+    private final double[] costFrom;
+    private final double[] costTo;
+    private final double wagePerMinute;
+
+    private Landmarks(int[] landmarks, double[] timeFrom, double[] timeTo, double[] costFrom, double[] costTo,
+                      double wagePerMinute) {
+        this.count = landmarks.length;
+        this.landmarks = landmarks;
+        this.timeFrom = timeFrom;
+        this.timeTo = timeTo;
+        this.costFrom = costFrom;
+        this.costTo = costTo;
+        this.wagePerMinute = wagePerMinute;
+    }
+
+    public static Landmarks build(TransitGraph graph, double wagePerMinute) {
+        return build(graph, wagePerMinute, DEFAULT_LANDMARK_COUNT);
+    }
+
+    public static Landmarks build(TransitGraph graph, double wagePerMinute, int landmarkCount) {
+        int n = graph.stationCount();
+        int k = Math.min(landmarkCount, n);
+        ReverseGraph reverse = new ReverseGraph(graph);
+        Dijkstra dijkstra = new Dijkstra(n);
+
+        int[] landmarks = new int[k];
+        double[] closest = new double[n];
+        Arrays.fill(closest, Double.POSITIVE_INFINITY);
+        double[] timeFrom = new double[n * k];
+        double[] timeTo = new double[n * k];
+        double[] costFrom = new double[n * k];
+        double[] costTo = new double[n * k];
+
+        // the first landmark is the station farthest from the best connected one, every next one the farthest
+        // from all chosen so far
+        int next = n == 0 ? -1 : farthest(graph, dijkstra.run(graph, reverse, busiestStation(graph), false, false,
+                wagePerMinute));
+        for (int i = 0; i < k; i++) {
+            int landmark = next;
+            landmarks[i] = landmark;
+            double[] from = dijkstra.run(graph, reverse, landmark, false, false, wagePerMinute);
+            copyColumn(from, timeFrom, i, k);
+            double[] to = dijkstra.run(graph, reverse, landmark, true, false, wagePerMinute);
+            copyColumn(to, timeTo, i, k);
+            for (int v = 0; v < n; v++) {
+                double roundTrip = from[v] + to[v];
+                closest[v] = Math.min(closest[v], Double.isNaN(roundTrip) ? Double.POSITIVE_INFINITY : roundTrip);
+            }
+            copyColumn(dijkstra.run(graph, reverse, landmark, false, true, wagePerMinute), costFrom, i, k);
+            copyColumn(dijkstra.run(graph, reverse, landmark, true, true, wagePerMinute), costTo, i, k);
+            next = farthest(graph, closest);
+        }
+        return new Landmarks(landmarks, timeFrom, timeTo, costFrom, costTo, wagePerMinute);
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    public double getWagePerMinute() {
+        return wagePerMinute;
+    }
+
+    // lower bound on the travel time (or cost) from v to t
+    public double lowerBound(int v, int t, boolean costMetric) {
+        double[] from = costMetric ? costFrom : timeFrom;
+        double[] to = costMetric ? costTo : timeTo;
+        int vBase = v * count;
+        int tBase = t * count;
+        double bound = 0;
+        for (int i = 0; i < count; i++) {
+            // unreachable pairs are infinite; infinity minus infinity is NaN and fails both comparisons
+            double forward = from[tBase + i] - from[vBase + i];
+            if (forward > bound) {
+                bound = forward;
+            }
+            double backward = to[vBase + i] - to[tBase + i];
+            if (backward > bound) {
+                bound = backward;
+            }
+        }
+        return bound;
+    }
+
+    private static void copyColumn(double[] distances, double[] table, int column, int width) {
+        for (int v = 0; v < distances.length; v++) {
+            table[v * width + column] = distances[v];
+        }
+    }
+
+    private static int busiestStation(TransitGraph graph) {
+        int best = 0;
+        for (int v = 1; v < graph.stationCount(); v++) {
+            if (graph.endEdge(v) - graph.firstEdge(v) > graph.endEdge(best) - graph.firstEdge(best)) {
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    // chosen landmarks are at distance zero from themselves, so they are never picked twice;
+    // stations without edges bound nothing and are skipped
+    private static int farthest(TransitGraph graph, double[] distances) {
+        int best = 0;
+        double bestDistance = -1;
+        for (int v = 0; v < distances.length; v++) {
+            double distance = distances[v];
+            if (!Double.isInfinite(distance) && distance > bestDistance && graph.firstEdge(v) < graph.endEdge(v)) {
+                bestDistance = distance;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    private static final class ReverseGraph {
+        final int[] offsets;
+        final int[] edges;
+        final int[] edgeSources;
+
+        ReverseGraph(TransitGraph graph) {
+            int n = graph.stationCount();
+            offsets = new int[n + 1];
+            edgeSources = new int[graph.edgeCount()];
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    offsets[graph.edgeTarget(e) + 1]++;
+                    edgeSources[e] = u;
+                }
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            edges = new int[offsets[n]];
+            int[] fill = Arrays.copyOf(offsets, n);
+            for (int u = 0; u < n; u++) {
+                for (int e = graph.firstEdge(u), last = graph.endEdge(u); e < last; e++) {
+                    edges[fill[graph.edgeTarget(e)]++] = e;
+                }
+            }
+        }
+    }
+
+    private static final class Dijkstra {
+        final IndexedMinHeap heap;
+
+        Dijkstra(int n) {
+            heap = new IndexedMinHeap(n);
+        }
+
+        // distances from root, or towards root when reverse is set
+        double[] run(TransitGraph graph, ReverseGraph reverseGraph, int root, boolean reverse, boolean costMetric,
+                     double wagePerMinute) {
+            int n = graph.stationCount();
+            double[] distance = new double[n];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            distance[root] = 0;
+            heap.clear();
+            heap.insert(root, 0);
+            while (!heap.isEmpty()) {
+                int v = heap.poll();
+                int first = reverse ? reverseGraph.offsets[v] : graph.firstEdge(v);
+                int last = reverse ? reverseGraph.offsets[v + 1] : graph.endEdge(v);
+                for (int k = first; k < last; k++) {
+                    int e = reverse ? reverseGraph.edges[k] : k;
+                    int next = reverse ? reverseGraph.edgeSources[e] : graph.edgeTarget(e);
+                    double candidate = distance[v] + AStarRouter.edgeWeight(graph, e, costMetric, wagePerMinute);
+                    if (candidate < distance[next]) {
+                        distance[next] = candidate;
+                        heap.insertOrDecrease(next, candidate);
+                    }
+                }
+            }
+            return distance;
+        }
+    }
+}
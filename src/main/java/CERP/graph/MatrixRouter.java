@@ -0,0 +1,217 @@
+package CERP.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Many-to-many travel times and fares. Every row is one multi-source Dijkstra seeded with the walk from the
+ * origin to its nearby stations, and it stops once every station a destination can be left from is
+ * settled. Rows run in parallel on a fork-join pool, split into at most a given number of tasks, and write
+ * straight into dense row-major arrays.
+ * <p>
+ * The fastest matrix searches on travel time and reports the fare of that path; the cost-effective one
+ * searches over station and fare state on the fare plus the time valued at a wage, with the fare rules of
+ * {@link RaptorRouter} but no limit on the number of rides.
+ */
+public final class MatrixRouter {
+    // fewest rows worth a task of their own
+    private static final int ROWS_PER_TASK = 4;
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final double wagePerMinute;
+
+    public MatrixRouter(double wagePerMinute) {
+        this.wagePerMinute = wagePerMinute;
+    }
+
+    /**
+     * @param sourceTimes minutes of walking from each origin to each of its stations
+     * @param targetTimes minutes of walking from each of a destination's stations to the destination
+     * @param durations   filled row-major with minutes from every origin to every destination
+     * @param maxTasks    most tasks the rows are split into, which bounds the workers busy with this matrix
+     * @param fares       filled like durations with the fare; both are infinite where nothing is reachable
+     */
+    public void compute(TransitGraph graph, int[][] sources, double[][] sourceTimes, int[][] targets,
+                        double[][] targetTimes, boolean costMetric, ForkJoinPool pool, int maxTasks,
+                        double[] durations, double[] fares) {
+        int tasks = Math.max(1, Math.min(maxTasks, (sources.length + ROWS_PER_TASK - 1) / ROWS_PER_TASK));
+        pool.invoke(new Rows(graph, sources, sourceTimes, targets, targetTimes, costMetric, durations, fares,
+                tasks, 0, tasks));
+    }
+
+    private void computeRow(TransitGraph graph, int[] sources, double[] sourceTimes, int[][] targets,
+                            double[][] targetTimes, boolean costMetric, double[] durations, double[] fares, int row) {
+        int n = graph.stationCount();
+        Scratch s = SCRATCH.get();
+        s.reset(n, costMetric ? RaptorRouter.STATES : 1);
+
+        // the search is over once every target station is settled
+        int remaining = 0;
+        for (int[] destinationTargets : targets) {
+            for (int target : destinationTargets) {
+                if (s.targetStamp[target] != s.stamp) {
+                    s.targetStamp[target] = s.stamp;
+                    remaining++;
+                }
+            }
+        }
+
+        int rootState = costMetric ? RaptorRouter.NO_FARE : 0;
+        for (int i = 0; i < sources.length; i++) {
+            s.offer(rootState * n + sources[i], sourceTimes[i], 0, (byte) RaptorRouter.NO_FARE,
+                    costMetric ? sourceTimes[i] * wagePerMinute : sourceTimes[i]);
+        }
+
+        IndexedMinHeap heap = s.heap;
+        while (!heap.isEmpty() && remaining > 0) {
+            int label = heap.poll();
+            int v = label % n;
+            if (s.targetStamp[v] == s.stamp && s.settledStamp[v] != s.stamp) {
+                // the first label settled at a station is its cheapest over all fare states
+                s.settledStamp[v] = s.stamp;
+                s.bestLabel[v] = label;
+                remaining--;
+            }
+            double time = s.time[label];
+            double fare = s.fare[label];
+            double key = s.key[label];
+            byte state = s.state[label];
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                byte lineType = graph.edgeLineType(e);
+                double travelTime = graph.edgeTravelTime(e);
+                double nextFare = fare;
+                byte nextState = state;
+                if (lineType != TransitGraph.TRANSFER) {
+                    nextFare += RaptorRouter.boardingCost(state, lineType) + AStarRouter.edgeWeight(graph, e, true, 0);
+                    nextState = lineType;
+                }
+                double nextKey = costMetric ? key + travelTime * wagePerMinute + nextFare - fare : time + travelTime;
+                int next = (costMetric ? nextState : 0) * n + graph.edgeTarget(e);
+                s.offer(next, time + travelTime, nextFare, nextState, nextKey);
+            }
+        }
+
+        int columns = targets.length;
+        int base = row * columns;
+        for (int j = 0; j < columns; j++) {
+            double bestKey = Double.POSITIVE_INFINITY;
+            double duration = Double.POSITIVE_INFINITY;
+            double fare = Double.POSITIVE_INFINITY;
+            for (int k = 0; k < targets[j].length; k++) {
+                int target = targets[j][k];
+                if (s.settledStamp[target] != s.stamp) {
+                    continue;
+                }
+                int label = s.bestLabel[target];
+                double walk = targetTimes[j][k];
+                double candidate = s.key[label] + (costMetric ? walk * wagePerMinute : walk);
+                if (candidate < bestKey) {
+                    bestKey = candidate;
+                    duration = s.time[label] + walk;
+                    fare = s.fare[label];
+                }
+            }
+            durations[base + j] = duration;
+            fares[base + j] = fare;
+        }
+    }
+
+    private final class Rows extends RecursiveAction {
+        private final TransitGraph graph;
+        private final int[][] sources;
+        private final double[][] sourceTimes;
+        private final int[][] targets;
+        private final double[][] targetTimes;
+        private final boolean costMetric;
+        private final double[] durations;
+        private final double[] fares;
+        private final int tasks;
+        // range of tasks, task i covering rows [i * rows / tasks, (i + 1) * rows / tasks)
+        private final int from;
+        private final int to;
+
+        Rows(TransitGraph graph, int[][] sources, double[][] sourceTimes, int[][] targets, double[][] targetTimes,
+             boolean costMetric, double[] durations, double[] fares, int tasks, int from, int to) {
+            this.graph = graph;
+            this.sources = sources;
+            this.sourceTimes = sourceTimes;
+            this.targets = targets;
+            this.targetTimes = targetTimes;
+            this.costMetric = costMetric;
+            this.durations = durations;
+            this.fares = fares;
+            this.tasks = tasks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                int rows = sources.length;
+                for (int row = (int) ((long) from * rows / tasks), last = (int) ((long) to * rows / tasks); row < last; row++) {
+                    computeRow(graph, sources[row], sourceTimes[row], targets, targetTimes, costMetric,
+                            durations, fares, row);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Rows(graph, sources, sourceTimes, targets, targetTimes, costMetric, durations, fares,
+                            tasks, from, middle),
+                    new Rows(graph, sources, sourceTimes, targets, targetTimes, costMetric, durations, fares,
+                            tasks, middle, to));
+        }
+    }
+
+    // per-thread label arrays, invalidated between rows by a stamp instead of clearing
+    private static final class Scratch {
+        int stamp;
+        int[] labelStamp = new int[0];
+        double[] key = new double[0];
+        double[] time = new double[0];
+        double[] fare = new double[0];
+        byte[] state = new byte[0];
+        int[] targetStamp = new int[0];
+        int[] settledStamp = new int[0];
+        int[] bestLabel = new int[0];
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+        void reset(int stationCount, int states) {
+            int labels = stationCount * states;
+            if (labelStamp.length < labels || targetStamp.length < stationCount) {
+                labelStamp = new int[Math.max(labels, labelStamp.length)];
+                key = new double[labelStamp.length];
+                time = new double[labelStamp.length];
+                fare = new double[labelStamp.length];
+                state = new byte[labelStamp.length];
+                targetStamp = new int[stationCount];
+                settledStamp = new int[stationCount];
+                bestLabel = new int[stationCount];
+                heap.ensureCapacity(labelStamp.length);
+                stamp = 0;
+            }
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(labelStamp, 0);
+                Arrays.fill(targetStamp, 0);
+                Arrays.fill(settledStamp, 0);
+                stamp = 1;
+            }
+            heap.clear();
+        }
+
+        void offer(int label, double arrival, double pathFare, byte pathState, double pathKey) {
+            if (labelStamp[label] != stamp) {
+                labelStamp[label] = stamp;
+                key[label] = Double.POSITIVE_INFINITY;
+            }
+            if (pathKey < key[label]) {
+                key[label] = pathKey;
+                time[label] = arrival;
+                fare[label] = pathFare;
+                state[label] = pathState;
+                heap.insertOrDecrease(label, pathKey);
+            }
+        }
+    }
+}
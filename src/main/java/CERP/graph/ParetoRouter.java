@@ -0,0 +1,431 @@
+package CERP.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Multi-label search for the Pareto front of (duration, fare, transfers) in one pass.
+ * <p>
+ * Every station keeps a small bag of labels that do not dominate each other. A label records the fare
+ * state and the line being ridden, since staying on a line is neither a transfer nor a new boarding
+ * fare; a label only dominates one on another line if it is ahead by a whole transfer and by the
+ * largest boarding fare it might still have to pay. Labels are settled in order of duration and pruned
+ * against the journeys already found using a lower bound on the remaining time. Bag sizes, the number
+ * of labels per query and the number of journeys returned are bounded so latency stays predictable.
+ */
+public final class ParetoRouter {
+    private static final int NO_FARE = 2;
+    private static final double BUS_FARE = 1;
+    private static final double METRO_FARE = 2;
+    private static final double METRO_SEGMENT_FARE = 0.5;
+    // the most a label in another fare state can save on its next boarding
+    private static final double MAX_BOARDING_SAVING = METRO_FARE - METRO_SEGMENT_FARE;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int maxLabelsPerStation;
+    private final int maxLabels;
+    private final int maxJourneys;
+
+    public ParetoRouter(int maxLabelsPerStation, int maxLabels, int maxJourneys) {
+        this.maxLabelsPerStation = maxLabelsPerStation;
+        this.maxLabels = maxLabels;
+        this.maxJourneys = maxJourneys;
+    }
+
+    /**
+     * @param sourceTimes minutes of walking to each source station
+     * @param targetTimes minutes of walking from each target station to the destination
+     * @return the non-dominated journeys ordered by duration, at most {@code maxJourneys} of them
+     */
+    public List<Journey> paretoPaths(TransitGraph graph, Landmarks landmarks, int[] sources, double[] sourceTimes,
+                                     int[] targets, double[] targetTimes) {
+        Scratch scratch = SCRATCH.get();
+        scratch.reset(graph.stationCount(), maxLabelsPerStation);
+        return new Search(graph, landmarks, scratch, targets, targetTimes).run(sources, sourceTimes);
+    }
+
+    private static double fare(int state, boolean boarding, int lineType) {
+        if (lineType == TransitGraph.METRO) {
+            return state == TransitGraph.METRO ? METRO_SEGMENT_FARE : METRO_FARE;
+        }
+        return boarding && state != TransitGraph.BUS ? BUS_FARE : 0;
+    }
+
+    /**
+     * One journey of the front. Duration includes walking at both ends; transfers count the boardings
+     * after the first.
+     */
+    public static final class Journey {
+        private final GraphPath path;
+        private final double duration;
+        private final double fare;
+        private final int transfers;
+
+        Journey(GraphPath path, double duration, double fare, int transfers) {
+            this.path = path;
+            this.duration = duration;
+            this.fare = fare;
+            this.transfers = transfers;
+        }
+
+        public GraphPath getPath() {
+            return path;
+        }
+
+        public double getDuration() {
+            return duration;
+        }
+
+        public double getFare() {
+            return fare;
+        }
+
+        public int getTransfers() {
+            return transfers;
+        }
+    }
+
+    private final class Search {
+        private final TransitGraph graph;
+        private final Landmarks landmarks;
+        private final Scratch s;
+        private final int[] targets;
+        private final double[] targetTimes;
+        // journeys found so far as {duration including egress, fare, transfers, label}
+        private final List<double[]> front = new ArrayList<>();
+
+        Search(TransitGraph graph, Landmarks landmarks, Scratch scratch, int[] targets, double[] targetTimes) {
+            this.graph = graph;
+            this.landmarks = landmarks;
+            this.s = scratch;
+            this.targets = targets;
+            this.targetTimes = targetTimes;
+        }
+
+        List<Journey> run(int[] sources, double[] sourceTimes) {
+            IndexedMinHeap heap = s.heap;
+            for (int i = 0; i < sources.length; i++) {
+                offer(sources[i], sourceTimes[i], 0, 0, -1, NO_FARE, -1, -1);
+            }
+            while (!heap.isEmpty()) {
+                int label = heap.poll();
+                if (s.dead[label]) {
+                    continue;
+                }
+                int station = s.station[label];
+                double time = s.time[label];
+                double fare = s.fare[label];
+                int rides = s.rides[label];
+                for (int i = 0; i < targets.length; i++) {
+                    if (targets[i] == station) {
+                        addJourney(label, time + targetTimes[i], fare, Math.max(0, rides - 1));
+                    }
+                }
+                if (prunedByFront(time + lowerBound(station), fare, Math.max(0, rides - 1))) {
+                    continue;
+                }
+                int line = s.line[label];
+                int state = s.state[label];
+                for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                    int next = graph.edgeTarget(e);
+                    double nextTime = time + graph.edgeTravelTime(e);
+                    byte lineType = graph.edgeLineType(e);
+                    if (lineType == TransitGraph.TRANSFER) {
+                        offer(next, nextTime, fare, rides, -1, state, label, e);
+                        continue;
+                    }
+                    int nextLine = graph.edgeLineId(e);
+                    boolean boarding = nextLine != line;
+                    offer(next, nextTime, fare + fare(state, boarding, lineType), boarding ? rides + 1 : rides,
+                            nextLine, lineType, label, e);
+                }
+                if (s.labelCount >= maxLabels) {
+                    break;
+                }
+            }
+            return journeys();
+        }
+
+        private void offer(int station, double time, double fare, int rides, int line, int state, int parent,
+                           int edge) {
+            double minDuration = time + lowerBound(station);
+            if (minDuration == Double.POSITIVE_INFINITY || prunedByFront(minDuration, fare, Math.max(0, rides - 1))) {
+                return;
+            }
+            int base = station * maxLabelsPerStation;
+            int size = s.bagSize(station);
+            for (int slot = base; slot < base + size; slot++) {
+                if (covers(s.slotTime[slot], s.slotFare[slot], s.slotRides[slot], s.slotLine[slot], s.slotState[slot],
+                        time, fare, rides, line, state)) {
+                    return;
+                }
+            }
+            // drop the labels the new one dominates; those still queued are skipped when polled
+            for (int slot = base; slot < base + size; ) {
+                if (covers(time, fare, rides, line, state,
+                        s.slotTime[slot], s.slotFare[slot], s.slotRides[slot], s.slotLine[slot], s.slotState[slot])) {
+                    s.dead[s.slotLabel[slot]] = true;
+                    s.moveSlot(base + --size, slot);
+                } else {
+                    slot++;
+                }
+            }
+            if (size == maxLabelsPerStation) {
+                int victim = evictionCandidate(base, size, time, fare, rides);
+                if (victim < 0) {
+                    s.bagSizes[station] = size;
+                    return;
+                }
+                s.dead[s.slotLabel[victim]] = true;
+                s.moveSlot(base + --size, victim);
+            }
+            int label = s.newLabel(station, time, fare, rides, line, state, parent, edge);
+            s.setSlot(base + size, label, time, fare, rides, line, state);
+            s.bagSizes[station] = size + 1;
+            s.heap.insert(label, time);
+        }
+
+        // a full bag gives up its slowest label that is not the best of the bag on any criterion, so the
+        // fastest, cheapest and fewest-transfer labels survive; -1 if the new label should go instead
+        private int evictionCandidate(int base, int size, double time, double fare, int rides) {
+            double minTime = time;
+            double minFare = fare;
+            int minRides = rides;
+            for (int slot = base; slot < base + size; slot++) {
+                minTime = Math.min(minTime, s.slotTime[slot]);
+                minFare = Math.min(minFare, s.slotFare[slot]);
+                minRides = Math.min(minRides, s.slotRides[slot]);
+            }
+            int victim = -1;
+            for (int slot = base; slot < base + size; slot++) {
+                boolean extreme = s.slotTime[slot] == minTime || s.slotFare[slot] == minFare
+                        || s.slotRides[slot] == minRides;
+                if (!extreme && (victim < 0 || s.slotTime[slot] > s.slotTime[victim])) {
+                    victim = slot;
+                }
+            }
+            boolean newExtreme = time == minTime || fare == minFare || rides == minRides;
+            if (victim >= 0 && !newExtreme && time >= s.slotTime[victim]) {
+                return -1;
+            }
+            return victim;
+        }
+
+        // whether every continuation of label b is matched or beaten by the same continuation of label a
+        private boolean covers(double timeA, double fareA, int ridesA, int lineA, int stateA,
+                               double timeB, double fareB, int ridesB, int lineB, int stateB) {
+            if (timeA > timeB) {
+                return false;
+            }
+            boolean sameLine = lineA == lineB || lineB < 0;
+            boolean sameFare = stateA == stateB || stateB == NO_FARE;
+            return ridesA + (sameLine ? 0 : 1) <= ridesB
+                    && fareA + (sameFare ? 0 : MAX_BOARDING_SAVING) <= fareB;
+        }
+
+        private void addJourney(int label, double duration, double fare, int transfers) {
+            for (double[] journey : front) {
+                if (journey[0] <= duration && journey[1] <= fare && journey[2] <= transfers) {
+                    return;
+                }
+            }
+            for (int i = front.size() - 1; i >= 0; i--) {
+                double[] journey = front.get(i);
+                if (duration <= journey[0] && fare <= journey[1] && transfers <= journey[2]) {
+                    front.remove(i);
+                }
+            }
+            front.add(new double[] { duration, fare, transfers, label });
+        }
+
+        // no continuation can produce a journey the front does not already beat or match
+        private boolean prunedByFront(double minDuration, double minFare, int minTransfers) {
+            for (double[] journey : front) {
+                if (journey[0] <= minDuration && journey[1] <= minFare && journey[2] <= minTransfers) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // lower bound on the minutes to the destination through any target
+        private double lowerBound(int station) {
+            if (s.boundStamp[station] == s.queryStamp) {
+                return s.bound[station];
+            }
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < targets.length; i++) {
+                // no edge of the graph covers its chord faster than maxSpeed, so this never overestimates
+                double bound = graph.chordDistance(station, targets[i]) / graph.maxSpeed();
+                if (landmarks != null) {
+                    bound = Math.max(bound, landmarks.lowerBound(station, targets[i], false));
+                }
+                best = Math.min(best, bound + targetTimes[i]);
+            }
+            s.boundStamp[station] = s.queryStamp;
+            s.bound[station] = best;
+            return best;
+        }
+
+        // the fastest, the cheapest and the fewest-transfer journeys, then the others by duration
+        private List<Journey> journeys() {
+            front.sort(Comparator.<double[]>comparingDouble(journey -> journey[0])
+                    .thenComparingDouble(journey -> journey[1]));
+            boolean[] chosen = new boolean[front.size()];
+            int count = 0;
+            for (int criterion = 0; criterion < 3 && criterion < front.size(); criterion++) {
+                int best = 0;
+                for (int k = 1; k < front.size(); k++) {
+                    if (front.get(k)[criterion] < front.get(best)[criterion]) {
+                        best = k;
+                    }
+                }
+                if (!chosen[best] && count < maxJourneys) {
+                    chosen[best] = true;
+                    count++;
+                }
+            }
+            for (int k = 0; k < front.size() && count < maxJourneys; k++) {
+                if (!chosen[k]) {
+                    chosen[k] = true;
+                    count++;
+                }
+            }
+            List<Journey> journeys = new ArrayList<>(count);
+            for (int k = 0; k < front.size(); k++) {
+                if (chosen[k]) {
+                    double[] journey = front.get(k);
+                    journeys.add(new Journey(path((int) journey[3]), journey[0], journey[1], (int) journey[2]));
+                }
+            }
+            return journeys;
+        }
+
+        private GraphPath path(int label) {
+            IntStack path = s.path;
+            IntStack edges = s.edges;
+            path.clear();
+            edges.clear();
+            for (int current = label; current >= 0; current = s.parent[current]) {
+                path.push(s.station[current]);
+                if (s.parent[current] >= 0) {
+                    edges.push(s.edge[current]);
+                }
+            }
+            path.reverse();
+            edges.reverse();
+            return new GraphPath(path.toArray(), edges.toArray());
+        }
+    }
+
+    // per-thread label storage; a label is an index into the parallel arrays, and the bag of a station
+    // is a fixed run of slots holding copies of its labels' criteria so dominance checks stay in cache
+    private static final class Scratch {
+        int queryStamp;
+        int labelCount;
+        int[] bagStamp = new int[0];
+        int[] bagSizes = new int[0];
+        int[] boundStamp = new int[0];
+        double[] bound = new double[0];
+
+        int[] slotLabel = new int[0];
+        double[] slotTime = new double[0];
+        double[] slotFare = new double[0];
+        int[] slotRides = new int[0];
+        int[] slotLine = new int[0];
+        byte[] slotState = new byte[0];
+
+        int[] station = new int[0];
+        double[] time = new double[0];
+        double[] fare = new double[0];
+        int[] rides = new int[0];
+        int[] line = new int[0];
+        byte[] state = new byte[0];
+        int[] parent = new int[0];
+        // the edge from the parent label
+        int[] edge = new int[0];
+        boolean[] dead = new boolean[0];
+
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+        final IntStack path = new IntStack();
+        final IntStack edges = new IntStack();
+
+        void reset(int stationCount, int slotsPerStation) {
+            if (bagStamp.length < stationCount || slotLabel.length < stationCount * slotsPerStation) {
+                bagStamp = new int[stationCount];
+                bagSizes = new int[stationCount];
+                boundStamp = new int[stationCount];
+                bound = new double[stationCount];
+                int slots = stationCount * slotsPerStation;
+                slotLabel = new int[slots];
+                slotTime = new double[slots];
+                slotFare = new double[slots];
+                slotRides = new int[slots];
+                slotLine = new int[slots];
+                slotState = new byte[slots];
+                queryStamp = 0;
+            }
+            if (++queryStamp == Integer.MAX_VALUE) {
+                Arrays.fill(bagStamp, 0);
+                Arrays.fill(boundStamp, 0);
+                queryStamp = 1;
+            }
+            labelCount = 0;
+            heap.clear();
+        }
+
+        int bagSize(int at) {
+            if (bagStamp[at] != queryStamp) {
+                bagStamp[at] = queryStamp;
+                bagSizes[at] = 0;
+            }
+            return bagSizes[at];
+        }
+
+        void setSlot(int slot, int label, double labelTime, double labelFare, int labelRides, int labelLine,
+                     int labelState) {
+            slotLabel[slot] = label;
+            slotTime[slot] = labelTime;
+            slotFare[slot] = labelFare;
+            slotRides[slot] = labelRides;
+            slotLine[slot] = labelLine;
+            slotState[slot] = (byte) labelState;
+        }
+
+        void moveSlot(int from, int to) {
+            setSlot(to, slotLabel[from], slotTime[from], slotFare[from], slotRides[from], slotLine[from],
+                    slotState[from]);
+        }
+
+        int newLabel(int at, double labelTime, double labelFare, int labelRides, int labelLine, int labelState,
+                     int labelParent, int labelEdge) {
+            if (labelCount == station.length) {
+                int capacity = Math.max(1024, labelCount * 2);
+                station = Arrays.copyOf(station, capacity);
+                time = Arrays.copyOf(time, capacity);
+                fare = Arrays.copyOf(fare, capacity);
+                rides = Arrays.copyOf(rides, capacity);
+                line = Arrays.copyOf(line, capacity);
+                state = Arrays.copyOf(state, capacity);
+                parent = Arrays.copyOf(parent, capacity);
+                edge = Arrays.copyOf(edge, capacity);
+                dead = Arrays.copyOf(dead, capacity);
+                heap.ensureCapacity(capacity);
+            }
+            int label = labelCount++;
+            station[label] = at;
+            time[label] = labelTime;
+            fare[label] = labelFare;
+            rides[label] = labelRides;
+            line[label] = labelLine;
+            state[label] = (byte) labelState;
+            parent[label] = labelParent;
+            edge[label] = labelEdge;
+            dead[label] = false;
+            return label;
+        }
+    }
+}
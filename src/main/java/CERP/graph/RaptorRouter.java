@@ -0,0 +1,464 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Round-based (RAPTOR-style) search for the most cost-effective journey: the fare plus the duration
+ * valued at a wage per minute.
+ * <p>
+ * Round {@code k} rides one more line from every label improved in round {@code k - 1} and then walks
+ * on along transfers, so a journey settled in round {@code k} boards at most {@code k} lines.
+ * Labels are kept per station and fare state, because what a ride costs depends on what was ridden
+ * before it: a bus costs 1 unless coming off a bus, the metro costs 2 for the first segment and 0.5 for
+ * every further one while staying on the metro, and walking leaves the state as it was.
+ * <p>
+ * The search starts from the path {@link AStarRouter} finds under its per-segment approximation of the
+ * fares, priced by the real rules, and prunes every label that cannot beat it even by a lower bound to
+ * the targets; that path is returned when nothing cheaper turns up.
+ */
+public final class RaptorRouter {
+    // fare state before the first ride; the other states are TransitGraph.BUS and TransitGraph.METRO
+    static final int NO_FARE = 2;
+    static final int STATES = 3;
+    private static final double BUS_FARE = 1;
+    private static final double METRO_FARE = 2;
+    private static final double METRO_SEGMENT_FARE = 0.5;
+
+    private static final byte ORIGIN = 0;
+    private static final byte RIDE = 1;
+    private static final byte WALK = 2;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final double wagePerMinute;
+    private final int maxRounds;
+    private final AStarRouter aStarRouter;
+
+    public RaptorRouter(double wagePerMinute, int maxRounds) {
+        this.wagePerMinute = wagePerMinute;
+        this.maxRounds = maxRounds;
+        this.aStarRouter = new AStarRouter(wagePerMinute);
+    }
+
+    /**
+     * @param sourceCosts cost of getting to each source station, already valued at the wage
+     * @param targetCosts cost of getting from each target station to the destination
+     * @return the cheapest journey, or null if no target can be reached
+     */
+    public GraphPath cheapestPath(TransitGraph graph, Landmarks landmarks, int[] sources, double[] sourceCosts,
+                              int[] targets, double[] targetCosts) {
+        GraphPath approximate = aStarRouter.cheapestPath(graph, landmarks, sources, sourceCosts, targets, targetCosts);
+        if (approximate == null) {
+            // both searches use the same edges, so no target is reachable at all
+            return null;
+        }
+        Scratch scratch = SCRATCH.get();
+        scratch.reset(graph.stationCount());
+        Search search = new Search(graph, landmarks, scratch, targets, targetCosts);
+        search.bestTotal = journeyCost(graph, approximate, sources, sourceCosts, targets, targetCosts);
+        GraphPath path = search.run(sources, sourceCosts);
+        return path != null ? path : approximate;
+    }
+
+    // cost of a path under the fare rules, over the edges it travels
+    private double journeyCost(TransitGraph graph, GraphPath path, int[] sources, double[] sourceCosts,
+                               int[] targets, double[] targetCosts) {
+        double cost = endpointCost(sources, sourceCosts, path.first());
+        int state = NO_FARE;
+        for (int i = 0; i < path.edgeCount(); i++) {
+            int e = path.edge(i);
+            byte lineType = graph.edgeLineType(e);
+            if (lineType == TransitGraph.TRANSFER) {
+                cost += graph.edgeTravelTime(e) * wagePerMinute;
+            } else {
+                cost += boardingCost(state, lineType) + rideCost(graph, e);
+                state = lineType;
+            }
+        }
+        return cost + endpointCost(targets, targetCosts, path.last());
+    }
+
+    private static double endpointCost(int[] stations, double[] costs, int station) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < stations.length; i++) {
+            if (stations[i] == station) {
+                best = Math.min(best, costs[i]);
+            }
+        }
+        return best;
+    }
+
+    private double rideCost(TransitGraph graph, int edge) {
+        double fare = graph.edgeLineType(edge) == TransitGraph.METRO ? METRO_SEGMENT_FARE : 0;
+        return graph.edgeTravelTime(edge) * wagePerMinute + fare;
+    }
+
+    // boarding fare on top of the per-segment fare, which rideCost already charges for every segment
+    static double boardingCost(int state, int lineType) {
+        if (lineType == TransitGraph.METRO) {
+            return state == TransitGraph.METRO ? 0 : METRO_FARE - METRO_SEGMENT_FARE;
+        }
+        return state == TransitGraph.BUS ? 0 : BUS_FARE;
+    }
+
+    private final class Search {
+        private final TransitGraph graph;
+        private final Landmarks landmarks;
+        private final Scratch s;
+        private final int[] targets;
+        private final double[] targetCosts;
+        private final int n;
+        private double bestTotal = Double.POSITIVE_INFINITY;
+        private int bestLabel = -1;
+
+        Search(TransitGraph graph, Landmarks landmarks, Scratch scratch, int[] targets, double[] targetCosts) {
+            this.graph = graph;
+            this.landmarks = landmarks;
+            this.s = scratch;
+            this.targets = targets;
+            this.targetCosts = targetCosts;
+            this.n = graph.stationCount();
+            for (int i = 0; i < targets.length; i++) {
+                int target = targets[i];
+                if (s.targetStamp[target] != s.queryStamp || targetCosts[i] < s.targetCost[target]) {
+                    s.targetStamp[target] = s.queryStamp;
+                    s.targetCost[target] = targetCosts[i];
+                }
+            }
+        }
+
+        GraphPath run(int[] sources, double[] sourceCosts) {
+            s.nextRound();
+            for (int i = 0; i < sources.length; i++) {
+                offer(NO_FARE, sources[i], sourceCosts[i], ORIGIN, -1, NO_FARE, -1);
+            }
+            walk();
+            for (int round = 1; round <= maxRounds && s.next.size() > 0; round++) {
+                IntStack previous = s.next;
+                s.next = s.current;
+                s.current = previous;
+                s.next.clear();
+                s.nextRound();
+                rideLines(s.current);
+                walk();
+            }
+            return bestLabel < 0 ? null : path(bestLabel);
+        }
+
+        // rides every line serving a label of the previous round, each line scanned once from all its seeds
+        private void rideLines(IntStack marked) {
+            int keyCount = 0;
+            for (int i = 0; i < marked.size(); i++) {
+                int label = marked.get(i);
+                int station = label % n;
+                for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                    byte lineType = graph.edgeLineType(e);
+                    if (lineType == TransitGraph.TRANSFER || servedEarlier(station, e)) {
+                        continue;
+                    }
+                    keyCount = s.addKey(keyCount,
+                            ((long) graph.edgeLineId(e) << 32) | (((long) label << 1) | lineType));
+                }
+            }
+            long[] keys = s.keys;
+            Arrays.sort(keys, 0, keyCount);
+            for (int start = 0; start < keyCount; ) {
+                int lineId = (int) (keys[start] >> 32);
+                int end = start + 1;
+                while (end < keyCount && (int) (keys[end] >> 32) == lineId) {
+                    end++;
+                }
+                scanLine(lineId, keys, start, end);
+                start = end;
+            }
+        }
+
+        // true if an earlier edge of the station already belongs to the same line
+        private boolean servedEarlier(int station, int edge) {
+            int lineId = graph.edgeLineId(edge);
+            for (int e = graph.firstEdge(station); e < edge; e++) {
+                if (graph.edgeLineId(e) == lineId && graph.edgeLineType(e) != TransitGraph.TRANSFER) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void scanLine(int lineId, long[] keys, int start, int end) {
+            s.nextScan();
+            IndexedMinHeap heap = s.heap;
+            int lineType = (int) (keys[start] & 1);
+            for (int k = start; k < end; k++) {
+                int label = (int) ((keys[k] & 0xffffffffL) >>> 1);
+                int station = label % n;
+                int state = label / n;
+                double boardCost = s.cost[label] + boardingCost(state, lineType);
+                if (s.lineStamp[station] != s.scanStamp || boardCost < s.lineCost[station]) {
+                    s.lineStamp[station] = s.scanStamp;
+                    s.lineCost[station] = boardCost;
+                    s.lineBoard[station] = station;
+                    s.lineBoardState[station] = (byte) state;
+                    heap.insertOrDecrease(station, boardCost);
+                }
+            }
+
+            while (!heap.isEmpty()) {
+                int station = heap.poll();
+                double cost = s.lineCost[station];
+                // a label at least as cheap in the line's fare state rides on from here at no boarding cost,
+                // in this round or the next, so continuing this ride past it cannot win
+                if (s.lineBoard[station] != station && !offer(lineType, station, cost, RIDE,
+                        s.lineBoard[station], s.lineBoardState[station], lineId)) {
+                    continue;
+                }
+                if (cost + lowerBound(station) >= bestTotal) {
+                    continue;
+                }
+                for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                    if (graph.edgeLineId(e) != lineId || graph.edgeLineType(e) == TransitGraph.TRANSFER) {
+                        continue;
+                    }
+                    int next = graph.edgeTarget(e);
+                    double candidate = cost + rideCost(graph, e);
+                    if (s.lineStamp[next] != s.scanStamp || candidate < s.lineCost[next]) {
+                        s.lineStamp[next] = s.scanStamp;
+                        s.lineCost[next] = candidate;
+                        s.lineBoard[next] = s.lineBoard[station];
+                        s.lineBoardState[next] = s.lineBoardState[station];
+                        heap.insertOrDecrease(next, candidate);
+                    }
+                }
+            }
+        }
+
+        // walking transfers are not transitively closed, so they are followed in cheapest-first order,
+        // one fare state at a time since walking does not change it
+        private void walk() {
+            IntStack marked = s.next;
+            IndexedMinHeap heap = s.heap;
+            int size = marked.size();
+            for (int state = 0; state < STATES; state++) {
+                for (int i = 0; i < size; i++) {
+                    int label = marked.get(i);
+                    if (label / n == state) {
+                        heap.insertOrDecrease(label % n, s.cost[label]);
+                    }
+                }
+                while (!heap.isEmpty()) {
+                    int station = heap.poll();
+                    double cost = s.cost[state * n + station];
+                    for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                        if (graph.edgeLineType(e) != TransitGraph.TRANSFER) {
+                            continue;
+                        }
+                        int next = graph.edgeTarget(e);
+                        double candidate = cost + graph.edgeTravelTime(e) * wagePerMinute;
+                        if (offer(state, next, candidate, WALK, station, state, e)) {
+                            heap.insertOrDecrease(next, candidate);
+                        }
+                    }
+                }
+            }
+        }
+
+        // via is the line of a ride or the transfer edge of a walk
+        private boolean offer(int state, int station, double cost, byte kind, int from, int fromState, int via) {
+            int label = state * n + station;
+            if (s.labelStamp[label] == s.queryStamp && cost >= s.cost[label]) {
+                return false;
+            }
+            if (cost + lowerBound(station) >= bestTotal) {
+                return false;
+            }
+            s.labelStamp[label] = s.queryStamp;
+            s.cost[label] = cost;
+            s.kind[label] = kind;
+            s.from[label] = from;
+            s.fromState[label] = (byte) fromState;
+            s.via[label] = via;
+            if (s.markedRound[label] != s.roundStamp) {
+                s.markedRound[label] = s.roundStamp;
+                s.next.push(label);
+            }
+            if (s.targetStamp[station] == s.queryStamp && cost + s.targetCost[station] < bestTotal) {
+                bestTotal = cost + s.targetCost[station];
+                bestLabel = label;
+            }
+            return true;
+        }
+
+        // lower bound on the cost of finishing at any target from the station
+        private double lowerBound(int station) {
+            if (s.boundStamp[station] == s.queryStamp) {
+                return s.bound[station];
+            }
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < targets.length; i++) {
+                // the fastest edge of the graph all the way, and the landmark bound under the per-segment
+                // fare approximation, which never charges more than the real fares
+                double bound = graph.chordDistance(station, targets[i]) / graph.maxSpeed() * wagePerMinute;
+                if (landmarks != null) {
+                    bound = Math.max(bound, landmarks.lowerBound(station, targets[i], true));
+                }
+                best = Math.min(best, bound + targetCosts[i]);
+            }
+            s.boundStamp[station] = s.queryStamp;
+            s.bound[station] = best;
+            return best;
+        }
+
+        private GraphPath path(int label) {
+            IntStack path = s.path;
+            IntStack edges = s.edges;
+            path.clear();
+            edges.clear();
+            while (true) {
+                int station = label % n;
+                byte kind = s.kind[label];
+                if (kind == ORIGIN) {
+                    path.push(station);
+                    break;
+                }
+                if (kind == RIDE) {
+                    ride(s.via[label], s.from[label], station, path, edges);
+                } else {
+                    path.push(station);
+                    edges.push(s.via[label]);
+                }
+                label = s.fromState[label] * n + s.from[label];
+            }
+            path.reverse();
+            edges.reverse();
+            return new GraphPath(path.toArray(), edges.toArray());
+        }
+
+        // rides the line again from the boarding station, pushing the stops after it and the edges into
+        // them in reverse order
+        private void ride(int lineId, int board, int alight, IntStack path, IntStack edges) {
+            s.nextScan();
+            IndexedMinHeap heap = s.heap;
+            s.lineStamp[board] = s.scanStamp;
+            s.lineCost[board] = 0;
+            s.lineParent[board] = -1;
+            s.lineParentEdge[board] = -1;
+            heap.insert(board, 0);
+            while (!heap.isEmpty()) {
+                int station = heap.poll();
+                if (station == alight) {
+                    break;
+                }
+                for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                    if (graph.edgeLineId(e) != lineId || graph.edgeLineType(e) == TransitGraph.TRANSFER) {
+                        continue;
+                    }
+                    int next = graph.edgeTarget(e);
+                    double candidate = s.lineCost[station] + rideCost(graph, e);
+                    if (s.lineStamp[next] != s.scanStamp || candidate < s.lineCost[next]) {
+                        s.lineStamp[next] = s.scanStamp;
+                        s.lineCost[next] = candidate;
+                        s.lineParent[next] = station;
+                        s.lineParentEdge[next] = e;
+                        heap.insertOrDecrease(next, candidate);
+                    }
+                }
+            }
+            heap.clear();
+            for (int station = alight; station != board; station = s.lineParent[station]) {
+                path.push(station);
+                edges.push(s.lineParentEdge[station]);
+            }
+        }
+    }
+
+    // per-thread label and line-scan arrays, invalidated between uses by stamps instead of clearing
+    private static final class Scratch {
+        int n;
+        int queryStamp;
+        int roundStamp;
+        int scanStamp;
+
+        int[] labelStamp = new int[0];
+        double[] cost = new double[0];
+        byte[] kind = new byte[0];
+        int[] from = new int[0];
+        byte[] fromState = new byte[0];
+        int[] via = new int[0];
+        int[] markedRound = new int[0];
+
+        int[] targetStamp = new int[0];
+        double[] targetCost = new double[0];
+        int[] boundStamp = new int[0];
+        double[] bound = new double[0];
+
+        int[] lineStamp = new int[0];
+        double[] lineCost = new double[0];
+        int[] lineBoard = new int[0];
+        byte[] lineBoardState = new byte[0];
+        int[] lineParent = new int[0];
+        int[] lineParentEdge = new int[0];
+        final IndexedMinHeap heap = new IndexedMinHeap(0);
+
+        IntStack current = new IntStack();
+        IntStack next = new IntStack();
+        final IntStack path = new IntStack();
+        final IntStack edges = new IntStack();
+        long[] keys = new long[64];
+
+        void reset(int stationCount) {
+            n = stationCount;
+            if (targetStamp.length < stationCount) {
+                int labels = STATES * stationCount;
+                labelStamp = new int[labels];
+                cost = new double[labels];
+                kind = new byte[labels];
+                from = new int[labels];
+                fromState = new byte[labels];
+                via = new int[labels];
+                markedRound = new int[labels];
+                targetStamp = new int[stationCount];
+                targetCost = new double[stationCount];
+                boundStamp = new int[stationCount];
+                bound = new double[stationCount];
+                lineStamp = new int[stationCount];
+                lineCost = new double[stationCount];
+                lineBoard = new int[stationCount];
+                lineBoardState = new byte[stationCount];
+                lineParent = new int[stationCount];
+                lineParentEdge = new int[stationCount];
+                heap.ensureCapacity(stationCount);
+                queryStamp = roundStamp = scanStamp = 0;
+            }
+            if (++queryStamp == Integer.MAX_VALUE) {
+                Arrays.fill(labelStamp, 0);
+                Arrays.fill(targetStamp, 0);
+                Arrays.fill(boundStamp, 0);
+                queryStamp = 1;
+            }
+            heap.clear();
+            current.clear();
+            next.clear();
+        }
+
+        void nextRound() {
+            if (++roundStamp == Integer.MAX_VALUE) {
+                Arrays.fill(markedRound, 0);
+                roundStamp = 1;
+            }
+        }
+
+        void nextScan() {
+            if (++scanStamp == Integer.MAX_VALUE) {
+                Arrays.fill(lineStamp, 0);
+                scanStamp = 1;
+            }
+        }
+
+        int addKey(int count, long key) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+            }
+            keys[count] = key;
+            return count + 1;
+        }
+    }
+}
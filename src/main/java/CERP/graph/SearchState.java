@@ -0,0 +1,88 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Per-thread scratch space for a single search over a {@link TransitGraph}.
+ * Arrays are sized to the graph once and reused; a generation stamp marks which entries belong
+ * to the current search so nothing has to be cleared between queries.
+ */
+public final class SearchState {
+    private static final ThreadLocal<SearchState> POOL = ThreadLocal.withInitial(SearchState::new);
+
+    private int stamp;
+    private int[] touched = new int[0];
+    private int[] closed = new int[0];
+    double[] gScore = new double[0];
+    double[] hScore = new double[0];
+    int[] parent = new int[0];
+    int[] parentEdge = new int[0];
+    final IndexedMinHeap openList = new IndexedMinHeap(0);
+    int expandedNodes;
+
+    public static SearchState get(int stationCount) {
+        SearchState state = POOL.get();
+        state.reset(stationCount);
+        return state;
+    }
+
+    static SearchState current() {
+        return POOL.get();
+    }
+
+    private void reset(int stationCount) {
+        if (touched.length < stationCount) {
+            touched = new int[stationCount];
+            closed = new int[stationCount];
+            gScore = new double[stationCount];
+            hScore = new double[stationCount];
+            parent = new int[stationCount];
+            parentEdge = new int[stationCount];
+            openList.ensureCapacity(stationCount);
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(touched, 0);
+            Arrays.fill(closed, 0);
+            stamp = 1;
+        }
+        openList.clear();
+        expandedNodes = 0;
+    }
+
+    boolean isTouched(int node) {
+        return touched[node] == stamp;
+    }
+
+    void touch(int node, double h) {
+        touched[node] = stamp;
+        gScore[node] = Double.MAX_VALUE;
+        hScore[node] = h;
+        parent[node] = -1;
+        parentEdge[node] = -1;
+    }
+
+    boolean isClosed(int node) {
+        return closed[node] == stamp;
+    }
+
+    void close(int node) {
+        closed[node] = stamp;
+    }
+
+    GraphPath pathTo(int node) {
+        int length = 0;
+        for (int current = node; current >= 0; current = parent[current]) {
+            length++;
+        }
+        int[] stations = new int[length];
+        int[] edges = new int[length - 1];
+        for (int current = node; current >= 0; current = parent[current]) {
+            stations[--length] = current;
+            if (length > 0) {
+                edges[length - 1] = parentEdge[current];
+            }
+        }
+        return new GraphPath(stations, edges);
+    }
+}
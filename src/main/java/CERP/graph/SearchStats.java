@@ -0,0 +1,29 @@
+package CERP.graph;
+
+/**
+ * Running totals of the search work done on one thread: nodes (or labels) expanded and heap operations.
+ * Heaps count into the totals of the thread that created them, which is the thread that uses them as all
+ * routers keep their heaps per thread, so counting is a plain increment. Callers take the difference of
+ * the totals before and after a search.
+ */
+public final class SearchStats {
+    private static final ThreadLocal<SearchStats> CURRENT = ThreadLocal.withInitial(SearchStats::new);
+
+    long nodesExpanded;
+    long heapOperations;
+
+    private SearchStats() {
+    }
+
+    public static SearchStats current() {
+        return CURRENT.get();
+    }
+
+    public long nodesExpanded() {
+        return nodesExpanded;
+    }
+
+    public long heapOperations() {
+        return heapOperations;
+    }
+}
@@ -0,0 +1,107 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Costs from one root station to every station, so that many queries leaving from the same place are
+ * answered by a single search.
+ * <p>
+ * The fastest tree is a Dijkstra on travel time. The cheapest tree runs over station and fare state
+ * with the fare rules of {@link RaptorRouter}, but without its limit on the number of rides.
+ */
+public final class ShortestPathTree {
+    private final int stationCount;
+    // indexed [state * stationCount + station], a single state for the fastest tree
+    private final double[] cost;
+    private final int[] parent;
+    private final int[] parentEdge;
+
+    private ShortestPathTree(int stationCount, double[] cost, int[] parent, int[] parentEdge) {
+        this.stationCount = stationCount;
+        this.cost = cost;
+        this.parent = parent;
+        this.parentEdge = parentEdge;
+    }
+
+    public static ShortestPathTree fastest(TransitGraph graph, int root) {
+        return build(graph, root, 1, 0, false, 0);
+    }
+
+    public static ShortestPathTree cheapest(TransitGraph graph, int root, double wagePerMinute) {
+        return build(graph, root, RaptorRouter.STATES, RaptorRouter.NO_FARE, true, wagePerMinute);
+    }
+
+    // infinite when the station cannot be reached
+    public double costTo(int station) {
+        return cost[bestLabel(station)];
+    }
+
+    // the path from the root, or null when the station cannot be reached
+    public GraphPath pathTo(int station) {
+        int label = bestLabel(station);
+        if (cost[label] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int length = 0;
+        for (int l = label; l >= 0; l = parent[l]) {
+            length++;
+        }
+        int[] stations = new int[length];
+        int[] edges = new int[length - 1];
+        for (int l = label; l >= 0; l = parent[l]) {
+            stations[--length] = l % stationCount;
+            if (length > 0) {
+                edges[length - 1] = parentEdge[l];
+            }
+        }
+        return new GraphPath(stations, edges);
+    }
+
+    private int bestLabel(int station) {
+        int best = station;
+        for (int label = station + stationCount; label < cost.length; label += stationCount) {
+            if (cost[label] < cost[best]) {
+                best = label;
+            }
+        }
+        return best;
+    }
+
+    private static ShortestPathTree build(TransitGraph graph, int root, int states, int rootState,
+                                          boolean costMetric, double wagePerMinute) {
+        int n = graph.stationCount();
+        double[] cost = new double[states * n];
+        int[] parent = new int[states * n];
+        int[] parentEdge = new int[states * n];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(parent, -1);
+        IndexedMinHeap heap = new IndexedMinHeap(states * n);
+
+        int rootLabel = rootState * n + root;
+        cost[rootLabel] = 0;
+        heap.insert(rootLabel, 0);
+        while (!heap.isEmpty()) {
+            int label = heap.poll();
+            int state = label / n;
+            int v = label - state * n;
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                double candidate = cost[label] + AStarRouter.edgeWeight(graph, e, costMetric, wagePerMinute);
+                int nextState = state;
+                byte lineType = graph.edgeLineType(e);
+                if (costMetric && lineType != TransitGraph.TRANSFER) {
+                    // walking keeps the fare state, riding switches to the ridden line type
+                    candidate += RaptorRouter.boardingCost(state, lineType);
+                    nextState = lineType;
+                }
+                int next = nextState * n + graph.edgeTarget(e);
+                if (candidate < cost[next]) {
+                    cost[next] = candidate;
+                    parent[next] = label;
+                    parentEdge[next] = e;
+                    heap.insertOrDecrease(next, candidate);
+                }
+            }
+        }
+        return new ShortestPathTree(n, cost, parent, parentEdge);
+    }
+}
@@ -0,0 +1,305 @@
+package CERP.graph;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over station coordinates for nearest-station and radius lookups.
+ * Cells are laid out on a local equirectangular projection, scaled with the smallest cosine of the
+ * covered latitudes so that projected distances never exceed the great-circle distance; candidates
+ * are then ranked by {@link GeoMath} chord meters. Stations are stored cell by cell and cells row by
+ * row, so the candidates of a run of cells in one row are a single range that the distances are
+ * computed for in one batch.
+ */
+public final class StationSpatialIndex {
+    private static final double METERS_PER_DEGREE = GeoMath.EARTH_RADIUS_METERS * Math.PI / 180;
+    private static final double CELL_SIZE = 250;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double[] unitX;
+    private final double[] unitY;
+    private final double[] unitZ;
+    private final int[] lineOffsets;
+    private final int[] stationLines;
+
+    private final double minLat;
+    private final double minLon;
+    private final double lonScale;
+    private final int columns;
+    private final int rows;
+    private final int[] cellOffsets;
+    private final int[] cellStations;
+    // unit vectors in the order of cellStations
+    private final double[] cellX;
+    private final double[] cellY;
+    private final double[] cellZ;
+
+    private final ThreadLocal<Scratch> scratch;
+
+    /**
+     * @param lineOffsets  CSR offsets into {@code stationLines}, one entry per station plus one
+     * @param stationLines dense line indices each station belongs to
+     */
+    public StationSpatialIndex(double[] latitudes, double[] longitudes, int[] lineOffsets, int[] stationLines,
+                               int lineCount) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.lineOffsets = lineOffsets;
+        this.stationLines = stationLines;
+
+        int n = latitudes.length;
+        unitX = new double[n];
+        unitY = new double[n];
+        unitZ = new double[n];
+        GeoMath.unitVectors(latitudes, longitudes, unitX, unitY, unitZ);
+
+        double lowLat = Double.MAX_VALUE, highLat = -Double.MAX_VALUE;
+        double lowLon = Double.MAX_VALUE, highLon = -Double.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            lowLat = Math.min(lowLat, latitudes[i]);
+            highLat = Math.max(highLat, latitudes[i]);
+            lowLon = Math.min(lowLon, longitudes[i]);
+            highLon = Math.max(highLon, longitudes[i]);
+        }
+        if (n == 0) {
+            lowLat = highLat = lowLon = highLon = 0;
+        }
+        minLat = lowLat;
+        minLon = lowLon;
+        double maxAbsLat = Math.min(89, Math.max(Math.abs(lowLat), Math.abs(highLat)));
+        lonScale = Math.cos(Math.toRadians(maxAbsLat));
+        columns = (int) ((highLon - lowLon) * METERS_PER_DEGREE * lonScale / CELL_SIZE) + 1;
+        rows = (int) ((highLat - lowLat) * METERS_PER_DEGREE / CELL_SIZE) + 1;
+
+        int[] cellOf = new int[n];
+        cellOffsets = new int[columns * rows + 1];
+        for (int i = 0; i < n; i++) {
+            cellOf[i] = row(latitudes[i]) * columns + column(longitudes[i]);
+            cellOffsets[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < columns * rows; c++) {
+            cellOffsets[c + 1] += cellOffsets[c];
+        }
+        cellStations = new int[n];
+        int[] fill = Arrays.copyOf(cellOffsets, columns * rows);
+        for (int i = 0; i < n; i++) {
+            cellStations[fill[cellOf[i]]++] = i;
+        }
+        cellX = new double[n];
+        cellY = new double[n];
+        cellZ = new double[n];
+        for (int k = 0; k < n; k++) {
+            cellX[k] = unitX[cellStations[k]];
+            cellY[k] = unitY[cellStations[k]];
+            cellZ[k] = unitZ[cellStations[k]];
+        }
+
+        scratch = ThreadLocal.withInitial(() -> new Scratch(lineCount));
+    }
+
+    /**
+     * The nearest station of every line, ordered by distance, keeping the first {@code limit}
+     * distinct stations. Only stations within {@code maxDistance} meters are considered.
+     */
+    public int[] nearestPerLine(double lat, double lon, int limit, double maxDistance) {
+        Scratch s = scratch.get();
+        s.begin();
+        double[] query = GeoMath.unitVector(lat, lon);
+        int queryColumn = column(lon);
+        int queryRow = row(lat);
+        // rings before firstRing lie entirely outside the grid when the query point is off the map
+        int firstRing = Math.max(Math.max(-queryColumn, queryColumn - (columns - 1)),
+                Math.max(-queryRow, queryRow - (rows - 1)));
+        int lastRing = Math.max(Math.max(queryColumn, columns - 1 - queryColumn),
+                Math.max(queryRow, rows - 1 - queryRow));
+
+        for (int ring = Math.max(0, firstRing); ring <= lastRing; ring++) {
+            double ringDistance = Math.max(0, ring - 1) * CELL_SIZE;
+            if (ringDistance > maxDistance || s.kthDistance(limit) <= ringDistance) {
+                break;
+            }
+            for (int r = Math.max(0, queryRow - ring), lastRow = Math.min(rows - 1, queryRow + ring); r <= lastRow; r++) {
+                int firstColumn = Math.max(0, queryColumn - ring);
+                int lastColumn = Math.min(columns - 1, queryColumn + ring);
+                if (r == queryRow - ring || r == queryRow + ring) {
+                    offerRange(s, query, r * columns + firstColumn, r * columns + lastColumn, maxDistance);
+                    continue;
+                }
+                // rows in between only have the ring's two end cells
+                if (queryColumn - ring >= 0) {
+                    offerRange(s, query, r * columns + queryColumn - ring, r * columns + queryColumn - ring, maxDistance);
+                }
+                if (queryColumn + ring < columns) {
+                    offerRange(s, query, r * columns + queryColumn + ring, r * columns + queryColumn + ring, maxDistance);
+                }
+            }
+        }
+        return s.result(limit);
+    }
+
+    // offers the stations of the cells firstCell .. lastCell of one row within maxDistance to their lines
+    private void offerRange(Scratch s, double[] query, int firstCell, int lastCell, double maxDistance) {
+        int from = cellOffsets[firstCell];
+        int to = cellOffsets[lastCell + 1];
+        double[] distances = s.distances(to - from);
+        GeoMath.chordMeters(query[0], query[1], query[2], cellX, cellY, cellZ, from, to, distances);
+        for (int k = from; k < to; k++) {
+            double distance = distances[k - from];
+            if (distance > maxDistance) {
+                continue;
+            }
+            int station = cellStations[k];
+            for (int l = lineOffsets[station]; l < lineOffsets[station + 1]; l++) {
+                s.offer(stationLines[l], station, distance);
+            }
+        }
+    }
+
+    public int[] nearestPerLine(double lat, double lon, int limit) {
+        return nearestPerLine(lat, lon, limit, Double.MAX_VALUE);
+    }
+
+    // all stations within radius meters, nearest first
+    public int[] withinRadius(double lat, double lon, double radius) {
+        double[] query = GeoMath.unitVector(lat, lon);
+        int queryColumn = column(lon);
+        int queryRow = row(lat);
+        int span = (int) Math.ceil(radius / CELL_SIZE) + 1;
+        int firstColumn = Math.max(0, queryColumn - span);
+        int lastColumn = Math.min(columns - 1, queryColumn + span);
+        int count = 0;
+        int[] found = new int[16];
+        double[] distances = new double[16];
+        double[] rowDistances = new double[16];
+        for (int r = Math.max(0, queryRow - span); r <= Math.min(rows - 1, queryRow + span) && firstColumn <= lastColumn; r++) {
+            int from = cellOffsets[r * columns + firstColumn];
+            int to = cellOffsets[r * columns + lastColumn + 1];
+            if (rowDistances.length < to - from) {
+                rowDistances = new double[Math.max(to - from, rowDistances.length * 2)];
+            }
+            GeoMath.chordMeters(query[0], query[1], query[2], cellX, cellY, cellZ, from, to, rowDistances);
+            for (int k = from; k < to; k++) {
+                double distance = rowDistances[k - from];
+                if (distance <= radius) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                        distances = Arrays.copyOf(distances, count * 2);
+                    }
+                    found[count] = cellStations[k];
+                    distances[count++] = distance;
+                }
+            }
+        }
+        return sortByDistance(found, distances, count);
+    }
+
+    // chord meters between two stations, see GeoMath
+    double chordMeters(int a, int b) {
+        return GeoMath.chordMeters(unitX[a], unitY[a], unitZ[a], unitX[b], unitY[b], unitZ[b]);
+    }
+
+    private int column(double lon) {
+        return (int) Math.floor((lon - minLon) * METERS_PER_DEGREE * lonScale / CELL_SIZE);
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor((lat - minLat) * METERS_PER_DEGREE / CELL_SIZE);
+    }
+
+    private static int[] sortByDistance(int[] stations, double[] distances, int count) {
+        for (int i = 1; i < count; i++) {
+            int station = stations[i];
+            double distance = distances[i];
+            int j = i - 1;
+            while (j >= 0 && distances[j] > distance) {
+                stations[j + 1] = stations[j];
+                distances[j + 1] = distances[j];
+                j--;
+            }
+            stations[j + 1] = station;
+            distances[j + 1] = distance;
+        }
+        return Arrays.copyOf(stations, count);
+    }
+
+    // best station per line for one nearestPerLine query, reused by the calling thread
+    private static final class Scratch {
+        private final double[] bestDistance;
+        private final int[] bestStation;
+        private final int[] touchedLines;
+        private int touchedCount;
+        private double[] distances = new double[64];
+
+        Scratch(int lineCount) {
+            bestDistance = new double[lineCount];
+            bestStation = new int[lineCount];
+            touchedLines = new int[lineCount];
+            Arrays.fill(bestStation, -1);
+        }
+
+        double[] distances(int count) {
+            if (distances.length < count) {
+                distances = new double[Math.max(count, distances.length * 2)];
+            }
+            return distances;
+        }
+
+        void begin() {
+            for (int i = 0; i < touchedCount; i++) {
+                bestStation[touchedLines[i]] = -1;
+            }
+            touchedCount = 0;
+        }
+
+        void offer(int line, int station, double distance) {
+            if (bestStation[line] < 0) {
+                touchedLines[touchedCount++] = line;
+            } else if (bestDistance[line] <= distance) {
+                return;
+            }
+            bestStation[line] = station;
+            bestDistance[line] = distance;
+        }
+
+        // distance of the limit-th distinct station found so far, or infinity if there are fewer
+        double kthDistance(int limit) {
+            int[] stations = result(limit);
+            if (stations.length < limit) {
+                return Double.POSITIVE_INFINITY;
+            }
+            int last = stations[stations.length - 1];
+            for (int i = 0; i < touchedCount; i++) {
+                if (bestStation[touchedLines[i]] == last) {
+                    return bestDistance[touchedLines[i]];
+                }
+            }
+            return Double.POSITIVE_INFINITY;
+        }
+
+        int[] result(int limit) {
+            int[] lines = Arrays.copyOf(touchedLines, touchedCount);
+            for (int i = 1; i < lines.length; i++) {
+                int line = lines[i];
+                int j = i - 1;
+                while (j >= 0 && bestDistance[lines[j]] > bestDistance[line]) {
+                    lines[j + 1] = lines[j];
+                    j--;
+                }
+                lines[j + 1] = line;
+            }
+            int[] stations = new int[Math.min(limit, lines.length)];
+            int count = 0;
+            for (int i = 0; i < lines.length && count < stations.length; i++) {
+                int station = bestStation[lines[i]];
+                boolean seen = false;
+                for (int j = 0; j < count && !seen; j++) {
+                    seen = stations[j] == station;
+                }
+                if (!seen) {
+                    stations[count++] = station;
+                }
+            }
+            return Arrays.copyOf(stations, count);
+        }
+    }
+}
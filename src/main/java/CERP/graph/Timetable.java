@@ -0,0 +1,426 @@
+package CERP.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Periodic timetable of a transit graph, laid out for the Connection Scan Algorithm: every hop of every
+ * trip is a connection, and the connections are stored in one set of arrays sorted by departure so that
+ * a query scans a contiguous range of them.
+ * <p>
+ * The network only has a travel time per route, so the trips are derived. The ride edges of each line are
+ * chained into patterns, an edge continuing with the edge of the same line that leaves its target, as
+ * long as that edge neither turns back nor is one of several, which splits a line where it branches.
+ * Every pattern runs a trip each headway of its line type from the first to the last departure, at an
+ * offset seeded by the line id so that lines do not all leave together, and a trip reaches each stop after
+ * the travel times of the edges before it. Footpaths are the walking transfers of the graph. Closed edges
+ * are left out of both, splitting a pattern where its line is closed.
+ * <p>
+ * Times are whole seconds after midnight; trips that leave close to the last departure arrive after 24:00.
+ */
+public final class Timetable {
+    private final TransitGraph graph;
+    private final int firstDeparture;
+    private final int lastDeparture;
+
+    // connections, in order of departure
+    private final int[] departures;
+    private final int[] arrivals;
+    private final int[] fromStations;
+    private final int[] toStations;
+    private final int[] trips;
+    private final int[] edges;
+
+    // the trips each pattern runs, and where every edge sits in its pattern
+    private final int[] tripStarts;
+    private final int[] patternOffsets;
+    private final int[] patternEdges;
+    private final int[] patternDepartures;
+    private final int[] patternArrivals;
+    private final int[] edgePositions;
+
+    // walking transfers in compressed sparse row form, leaving and entering each station
+    private final int[] footpathOffsets;
+    private final int[] footpathEdges;
+    private final int[] footpathSeconds;
+    private final int[] incomingOffsets;
+    private final int[] incomingEdges;
+    private final int[] incomingSources;
+    private final int[] incomingSeconds;
+
+    private Timetable(TransitGraph graph, int firstDeparture, int lastDeparture, int[] departures, int[] arrivals,
+                      int[] fromStations, int[] toStations, int[] trips, int[] edges, int[] tripStarts,
+                      int[] patternOffsets, int[] patternEdges, int[] patternDepartures,
+                      int[] patternArrivals, int[] edgePositions) {
+        this.graph = graph;
+        this.firstDeparture = firstDeparture;
+        this.lastDeparture = lastDeparture;
+        this.departures = departures;
+        this.arrivals = arrivals;
+        this.fromStations = fromStations;
+        this.toStations = toStations;
+        this.trips = trips;
+        this.edges = edges;
+        this.tripStarts = tripStarts;
+        this.patternOffsets = patternOffsets;
+        this.patternEdges = patternEdges;
+        this.patternDepartures = patternDepartures;
+        this.patternArrivals = patternArrivals;
+        this.edgePositions = edgePositions;
+
+        int n = graph.stationCount();
+        footpathOffsets = new int[n + 1];
+        incomingOffsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                if (isFootpath(graph, e)) {
+                    footpathOffsets[v + 1]++;
+                    incomingOffsets[graph.edgeTarget(e) + 1]++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            footpathOffsets[v + 1] += footpathOffsets[v];
+            incomingOffsets[v + 1] += incomingOffsets[v];
+        }
+        footpathEdges = new int[footpathOffsets[n]];
+        footpathSeconds = new int[footpathOffsets[n]];
+        incomingEdges = new int[incomingOffsets[n]];
+        incomingSources = new int[incomingOffsets[n]];
+        incomingSeconds = new int[incomingOffsets[n]];
+        int[] outFill = Arrays.copyOf(footpathOffsets, n);
+        int[] inFill = Arrays.copyOf(incomingOffsets, n);
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                if (isFootpath(graph, e)) {
+                    // whole seconds of walking, rounded up so that no connection is caught by a fraction
+                    int seconds = (int) Math.ceil(graph.edgeTravelTime(e) * 60);
+                    footpathEdges[outFill[v]] = e;
+                    footpathSeconds[outFill[v]++] = seconds;
+                    int k = inFill[graph.edgeTarget(e)]++;
+                    incomingEdges[k] = e;
+                    incomingSources[k] = v;
+                    incomingSeconds[k] = seconds;
+                }
+            }
+        }
+    }
+
+    // walking transfers that are open; a closed one would take Integer.MAX_VALUE seconds
+    private static boolean isFootpath(TransitGraph graph, int edge) {
+        return graph.edgeLineType(edge) == TransitGraph.TRANSFER && Double.isFinite(graph.edgeTravelTime(edge));
+    }
+
+    /**
+     * @param busHeadway     seconds between the trips of a bus pattern
+     * @param metroHeadway   seconds between the trips of a metro pattern
+     * @param firstDeparture seconds after midnight at which the first trips may leave
+     * @param lastDeparture  seconds after midnight after which no trip leaves
+     */
+    public static Timetable build(TransitGraph graph, int busHeadway, int metroHeadway, int firstDeparture,
+                                  int lastDeparture) {
+        if (busHeadway <= 0 || metroHeadway <= 0) {
+            throw new IllegalArgumentException("headways must be positive");
+        }
+        if (lastDeparture < firstDeparture) {
+            throw new IllegalArgumentException("the last departure is before the first");
+        }
+        int n = graph.stationCount();
+        int m = graph.edgeCount();
+        int[] edgeSources = new int[m];
+        Map<Integer, IntStack> lineEdges = new LinkedHashMap<>();
+        for (int v = 0; v < n; v++) {
+            for (int e = graph.firstEdge(v), last = graph.endEdge(v); e < last; e++) {
+                edgeSources[e] = v;
+                // a closed edge has no trips, so the patterns of its line end before it and start again after it
+                if (graph.edgeLineType(e) != TransitGraph.TRANSFER && Double.isFinite(graph.edgeTravelTime(e))) {
+                    lineEdges.computeIfAbsent(graph.edgeLineId(e), k -> new IntStack()).push(e);
+                }
+            }
+        }
+
+        int[] next = new int[m];
+        int[] previous = new int[m];
+        Arrays.fill(next, -1);
+        Arrays.fill(previous, -1);
+        for (IntStack line : lineEdges.values()) {
+            linkLine(graph, edgeSources, line, next, previous);
+        }
+
+        // patterns are the maximal chains, and for circular lines the cycles left over
+        IntStack patternEdgeList = new IntStack();
+        IntStack patternStarts = new IntStack();
+        List<Integer> patternLines = new ArrayList<>();
+        boolean[] placed = new boolean[m];
+        for (int pass = 0; pass < 2; pass++) {
+            for (Map.Entry<Integer, IntStack> line : lineEdges.entrySet()) {
+                IntStack members = line.getValue();
+                for (int i = 0; i < members.size(); i++) {
+                    int start = members.get(i);
+                    if (placed[start] || (pass == 0 && previous[start] >= 0)) {
+                        continue;
+                    }
+                    patternStarts.push(patternEdgeList.size());
+                    patternLines.add(line.getKey());
+                    for (int e = start; e >= 0 && !placed[e]; e = next[e]) {
+                        placed[e] = true;
+                        patternEdgeList.push(e);
+                    }
+                }
+            }
+        }
+        int patternCount = patternStarts.size();
+        patternStarts.push(patternEdgeList.size());
+        int[] patternOffsets = patternStarts.toArray();
+        int[] patternEdges = patternEdgeList.toArray();
+
+        // departure and arrival of every pattern edge relative to the start of a trip
+        int[] patternDepartures = new int[patternEdges.length];
+        int[] patternArrivals = new int[patternEdges.length];
+        int[] edgePositions = new int[m];
+        Arrays.fill(edgePositions, -1);
+        for (int p = 0; p < patternCount; p++) {
+            double minutes = 0;
+            for (int k = patternOffsets[p]; k < patternOffsets[p + 1]; k++) {
+                patternDepartures[k] = (int) Math.round(minutes * 60);
+                minutes += graph.edgeTravelTime(patternEdges[k]);
+                patternArrivals[k] = (int) Math.round(minutes * 60);
+                edgePositions[patternEdges[k]] = k;
+            }
+        }
+
+        int[] patternHeadways = new int[patternCount];
+        int[] patternFirstTrips = new int[patternCount];
+        long connectionCount = 0;
+        int tripCount = 0;
+        for (int p = 0; p < patternCount; p++) {
+            int lineId = patternLines.get(p);
+            patternHeadways[p] = graph.edgeLineType(patternEdges[patternOffsets[p]]) == TransitGraph.METRO
+                    ? metroHeadway : busHeadway;
+            patternFirstTrips[p] = firstDeparture + new Random(lineId).nextInt(patternHeadways[p]);
+            int patternTrips = patternFirstTrips[p] > lastDeparture ? 0
+                    : (lastDeparture - patternFirstTrips[p]) / patternHeadways[p] + 1;
+            tripCount += patternTrips;
+            connectionCount += (long) patternTrips * (patternOffsets[p + 1] - patternOffsets[p]);
+        }
+        if (connectionCount > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException(connectionCount + " connections do not fit into a timetable");
+        }
+
+        int count = (int) connectionCount;
+        int[] tripStarts = new int[tripCount];
+        long[] keys = new long[count];
+        int trip = 0;
+        int c = 0;
+        for (int p = 0; p < patternCount; p++) {
+            for (int start = patternFirstTrips[p]; start <= lastDeparture; start += patternHeadways[p]) {
+                tripStarts[trip] = start;
+                for (int k = patternOffsets[p]; k < patternOffsets[p + 1]; k++) {
+                    // connections of a trip are generated in order, so equal departures keep the trip's order
+                    keys[c] = ((long) (start + patternDepartures[k]) << 32) | c;
+                    c++;
+                }
+                trip++;
+            }
+        }
+        Arrays.sort(keys);
+
+        int[] departures = new int[count];
+        int[] arrivals = new int[count];
+        int[] fromStations = new int[count];
+        int[] toStations = new int[count];
+        int[] trips = new int[count];
+        int[] edges = new int[count];
+        int[] connectionTrips = new int[count];
+        int[] connectionPositions = new int[count];
+        trip = 0;
+        c = 0;
+        for (int p = 0; p < patternCount; p++) {
+            for (int start = patternFirstTrips[p]; start <= lastDeparture; start += patternHeadways[p]) {
+                for (int k = patternOffsets[p]; k < patternOffsets[p + 1]; k++) {
+                    connectionTrips[c] = trip;
+                    connectionPositions[c++] = k;
+                }
+                trip++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int generated = (int) keys[i];
+            int k = connectionPositions[generated];
+            int edge = patternEdges[k];
+            trips[i] = connectionTrips[generated];
+            departures[i] = (int) (keys[i] >>> 32);
+            arrivals[i] = tripStarts[trips[i]] + patternArrivals[k];
+            fromStations[i] = edgeSources[edge];
+            toStations[i] = graph.edgeTarget(edge);
+            edges[i] = edge;
+        }
+        return new Timetable(graph, firstDeparture, lastDeparture, departures, arrivals, fromStations, toStations,
+                trips, edges, tripStarts, patternOffsets, patternEdges, patternDepartures,
+                patternArrivals, edgePositions);
+    }
+
+    // links each ride edge of a line to the one edge it continues with, where that is unambiguous both ways
+    private static void linkLine(TransitGraph graph, int[] edgeSources, IntStack line, int[] next, int[] previous) {
+        Map<Integer, IntStack> leaving = new HashMap<>();
+        Map<Integer, IntStack> entering = new HashMap<>();
+        for (int i = 0; i < line.size(); i++) {
+            int e = line.get(i);
+            leaving.computeIfAbsent(edgeSources[e], k -> new IntStack()).push(e);
+            entering.computeIfAbsent(graph.edgeTarget(e), k -> new IntStack()).push(e);
+        }
+        for (int i = 0; i < line.size(); i++) {
+            int e = line.get(i);
+            int from = edgeSources[e];
+            int via = graph.edgeTarget(e);
+            int successor = onlyEdge(leaving.get(via), graph, edgeSources, from, true);
+            if (successor >= 0
+                    && onlyEdge(entering.get(via), graph, edgeSources, graph.edgeTarget(successor), false) == e) {
+                next[e] = successor;
+                previous[successor] = e;
+            }
+        }
+    }
+
+    // the single edge of the list that does not lead back to (or come from) the given station, or -1
+    private static int onlyEdge(IntStack candidates, TransitGraph graph, int[] edgeSources, int station,
+                                boolean leaving) {
+        if (candidates == null) {
+            return -1;
+        }
+        int found = -1;
+        for (int i = 0; i < candidates.size(); i++) {
+            int e = candidates.get(i);
+            int other = leaving ? graph.edgeTarget(e) : edgeSources[e];
+            if (other == station) {
+                continue;
+            }
+            if (found >= 0) {
+                return -1;
+            }
+            found = e;
+        }
+        return found;
+    }
+
+    public TransitGraph getGraph() {
+        return graph;
+    }
+
+    public int firstDeparture() {
+        return firstDeparture;
+    }
+
+    public int lastDeparture() {
+        return lastDeparture;
+    }
+
+    public int connectionCount() {
+        return departures.length;
+    }
+
+    public int tripCount() {
+        return tripStarts.length;
+    }
+
+    public int patternCount() {
+        return patternOffsets.length - 1;
+    }
+
+    // index of the first connection leaving at or after the time, connectionCount() if there is none
+    public int firstDepartingAt(int time) {
+        int low = 0;
+        int high = departures.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (departures[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int departure(int connection) {
+        return departures[connection];
+    }
+
+    public int arrival(int connection) {
+        return arrivals[connection];
+    }
+
+    public int fromStation(int connection) {
+        return fromStations[connection];
+    }
+
+    public int toStation(int connection) {
+        return toStations[connection];
+    }
+
+    public int trip(int connection) {
+        return trips[connection];
+    }
+
+    public int edge(int connection) {
+        return edges[connection];
+    }
+
+    // the edges a trip rides from one of its connections up to and including another, in order
+    int[] tripEdges(int boarding, int alighting) {
+        int from = edgePositions[edges[boarding]];
+        int to = edgePositions[edges[alighting]];
+        return Arrays.copyOfRange(patternEdges, from, to + 1);
+    }
+
+    // when the trip of the connection leaves and reaches the ends of one of its edges
+    int tripDeparture(int connection, int edge) {
+        return tripStarts[trips[connection]] + patternDepartures[edgePositions[edge]];
+    }
+
+    int tripArrival(int connection, int edge) {
+        return tripStarts[trips[connection]] + patternArrivals[edgePositions[edge]];
+    }
+
+    int firstFootpath(int station) {
+        return footpathOffsets[station];
+    }
+
+    int endFootpath(int station) {
+        return footpathOffsets[station + 1];
+    }
+
+    // graph edge of the footpath
+    int footpathEdge(int footpath) {
+        return footpathEdges[footpath];
+    }
+
+    int footpathSeconds(int footpath) {
+        return footpathSeconds[footpath];
+    }
+
+    int firstIncomingFootpath(int station) {
+        return incomingOffsets[station];
+    }
+
+    int endIncomingFootpath(int station) {
+        return incomingOffsets[station + 1];
+    }
+
+    int incomingFootpathEdge(int footpath) {
+        return incomingEdges[footpath];
+    }
+
+    int incomingFootpathSource(int footpath) {
+        return incomingSources[footpath];
+    }
+
+    int incomingFootpathSeconds(int footpath) {
+        return incomingSeconds[footpath];
+    }
+}
@@ -0,0 +1,537 @@
+package CERP.graph;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.Route;
+import CERP.model.Station;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * Immutable in-memory snapshot of the transit network (stations, routes, lines and line membership).
+ * Built once from the repository so that route planning never goes back to the database per expansion.
+ * <p>
+ * Stations are addressed by a dense index; outgoing edges are stored in compressed sparse row form,
+ * the edges of station {@code i} being {@code firstEdge(i) .. endEdge(i) - 1}.
+ */
+public final class TransitGraph {
+    public static final byte BUS = 0;
+    public static final byte METRO = 1;
+    public static final byte TRANSFER = 2;
+
+    private static final double WALK_SPEED = 5.0 * 1000 / 60;
+    // travel times are stored in blocks of this many edges, which deltas copy on write
+    private static final int TIME_BLOCK_BITS = 12;
+    private static final int TIME_BLOCK_SIZE = 1 << TIME_BLOCK_BITS;
+
+    private final long version;
+    private final Station[] stations;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Integer, Integer> indexById;
+
+    // heap arrays wrapped as buffers when built from the repository, views of a mapped file when read by GraphFile
+    private final IntBuffer edgeOffsets;
+    private final IntBuffer edgeTargets;
+    private final DoubleBuffer[] edgeTravelTimes;
+    private final ByteBuffer edgeLineTypes;
+    private final IntBuffer edgeLineIds;
+    private final IntBuffer edgeRouteIds;
+    private final IntBuffer edgeDistances;
+    private final long fingerprint;
+    private final double maxSpeed;
+
+    private final Map<Integer, Line> lines;
+    private final Map<Integer, int[]> lineStations;
+    private final StationSpatialIndex spatialIndex;
+
+    private TransitGraph(long version, Station[] stations, Map<Integer, Integer> indexById, double[] latitudes,
+                         double[] longitudes, StationSpatialIndex spatialIndex, Map<Integer, Line> lines,
+                         Map<Integer, int[]> lineStations, IntBuffer edgeOffsets, IntBuffer edgeTargets,
+                         DoubleBuffer[] edgeTravelTimes, ByteBuffer edgeLineTypes, IntBuffer edgeLineIds,
+                         IntBuffer edgeRouteIds, IntBuffer edgeDistances) {
+        this.version = version;
+        this.stations = stations;
+        this.indexById = indexById;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.spatialIndex = spatialIndex;
+        this.lines = lines;
+        this.lineStations = lineStations;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeTravelTimes = edgeTravelTimes;
+        this.edgeLineTypes = edgeLineTypes;
+        this.edgeLineIds = edgeLineIds;
+        this.edgeRouteIds = edgeRouteIds;
+        this.edgeDistances = edgeDistances;
+        this.fingerprint = computeFingerprint();
+        this.maxSpeed = computeMaxSpeed();
+    }
+
+    // identifies the edge structure and weights, so derived data can be checked against the graph it was built for
+    private long computeFingerprint() {
+        long hash = 1125899906842597L;
+        for (int i = 0; i < stations.length; i++) {
+            hash = 31 * hash + stations[i].getStationId();
+            hash = 31 * hash + edgeOffsets.get(i);
+        }
+        for (int e = 0, m = edgeCount(); e < m; e++) {
+            hash = 31 * hash + edgeTargets.get(e);
+            hash = 31 * hash + Double.doubleToLongBits(edgeTravelTime(e));
+            hash = 31 * hash + edgeLineTypes.get(e);
+        }
+        return hash;
+    }
+
+    // the highest straight-line speed of any open edge, so that no path covers the chord between two stations faster
+    private double computeMaxSpeed() {
+        double speed = 0;
+        for (int i = 0; i < stations.length; i++) {
+            for (int e = firstEdge(i), last = endEdge(i); e < last; e++) {
+                // a zero travel time makes the speed infinite and the bound 0, a closed edge is never taken
+                double edgeSpeed = chordDistance(i, edgeTarget(e)) / edgeTravelTime(e);
+                if (edgeSpeed > speed) {
+                    speed = edgeSpeed;
+                }
+            }
+        }
+        // without a moving edge there is nothing to bound, and an infinite speed turns every bound into 0
+        return speed > 0 ? speed : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param maxTransferDistance walking transfers between lines are only generated up to this many meters
+     */
+    public static TransitGraph build(long version, List<Station> stationList, List<Route> routeList,
+                                     List<Line> lineList, List<LineStation> lineStationList, double maxTransferDistance) {
+        Station[] stations = stationList.toArray(new Station[0]);
+        int n = stations.length;
+        Map<Integer, Integer> indexById = indexById(stations);
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = stations[i].getLatitude();
+            longitudes[i] = stations[i].getLongitude();
+        }
+
+        Map<Integer, Line> lines = new LinkedHashMap<>();
+        for (Line line : lineList) {
+            lines.put(line.getLineId(), line);
+        }
+
+        Map<Integer, List<Integer>> membership = new LinkedHashMap<>();
+        for (LineStation lineStation : lineStationList) {
+            Integer index = indexById.get(lineStation.getStationId());
+            if (index != null) {
+                membership.computeIfAbsent(lineStation.getLineId(), k -> new ArrayList<>()).add(index);
+            }
+        }
+        Map<Integer, int[]> lineStations = new LinkedHashMap<>();
+        membership.forEach((lineId, members) -> lineStations.put(lineId,
+                members.stream().mapToInt(Integer::intValue).distinct().toArray()));
+
+        LineMembership lineMembership = new LineMembership(n, lineStations);
+        StationSpatialIndex spatialIndex = new StationSpatialIndex(latitudes, longitudes, lineMembership.offsets,
+                lineMembership.lines, lineMembership.lineCount);
+
+        List<List<Route>> outgoing = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            outgoing.add(new ArrayList<>());
+        }
+        for (Route route : routeList) {
+            Integer from = indexById.get(route.getFromStationId());
+            if (from != null && indexById.containsKey(route.getToStationId())) {
+                outgoing.get(from).add(route);
+            }
+        }
+
+        addTransferRoutes(stations, outgoing, spatialIndex, lineMembership.offsets, lineMembership.lineIds,
+                maxTransferDistance);
+
+        int edgeCount = 0;
+        for (List<Route> routes : outgoing) {
+            edgeCount += routes.size();
+        }
+        int[] edgeOffsets = new int[n + 1];
+        int[] edgeTargets = new int[edgeCount];
+        double[] edgeTravelTimes = new double[edgeCount];
+        byte[] edgeLineTypes = new byte[edgeCount];
+        int[] edgeLineIds = new int[edgeCount];
+        int[] edgeRouteIds = new int[edgeCount];
+        int[] edgeDistances = new int[edgeCount];
+
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            edgeOffsets[i] = e;
+            for (Route route : outgoing.get(i)) {
+                edgeTargets[e] = indexById.get(route.getToStationId());
+                edgeTravelTimes[e] = route.getTravelTime();
+                edgeLineTypes[e] = lineTypeOf(route.getLineType());
+                edgeLineIds[e] = route.getLineId();
+                edgeRouteIds[e] = route.getRouteId();
+                edgeDistances[e] = route.getDistance();
+                e++;
+            }
+        }
+        edgeOffsets[n] = e;
+
+        return new TransitGraph(version, stations, indexById, latitudes, longitudes, spatialIndex,
+                Collections.unmodifiableMap(lines), Collections.unmodifiableMap(lineStations),
+                IntBuffer.wrap(edgeOffsets), IntBuffer.wrap(edgeTargets), timeBlocks(DoubleBuffer.wrap(edgeTravelTimes)),
+                ByteBuffer.wrap(edgeLineTypes), IntBuffer.wrap(edgeLineIds), IntBuffer.wrap(edgeRouteIds),
+                IntBuffer.wrap(edgeDistances));
+    }
+
+    // a graph over edges that are already laid out, transfers included, as read back by GraphFile
+    static TransitGraph fromEdges(long version, Station[] stations, Map<Integer, Line> lines,
+                                  Map<Integer, int[]> lineStations, IntBuffer edgeOffsets, IntBuffer edgeTargets,
+                                  DoubleBuffer edgeTravelTimes, ByteBuffer edgeLineTypes, IntBuffer edgeLineIds,
+                                  IntBuffer edgeRouteIds, IntBuffer edgeDistances) {
+        int n = stations.length;
+        double[] latitudes = new double[n];
+        double[] longitudes = new double[n];
+        for (int i = 0; i < n; i++) {
+            latitudes[i] = stations[i].getLatitude();
+            longitudes[i] = stations[i].getLongitude();
+        }
+        LineMembership lineMembership = new LineMembership(n, lineStations);
+        StationSpatialIndex spatialIndex = new StationSpatialIndex(latitudes, longitudes, lineMembership.offsets,
+                lineMembership.lines, lineMembership.lineCount);
+        return new TransitGraph(version, stations, indexById(stations), latitudes, longitudes, spatialIndex,
+                Collections.unmodifiableMap(lines), Collections.unmodifiableMap(lineStations), edgeOffsets,
+                edgeTargets, timeBlocks(edgeTravelTimes), edgeLineTypes, edgeLineIds, edgeRouteIds, edgeDistances);
+    }
+
+    /**
+     * A new version of this graph with the delta applied. Travel time changes and closures keep every edge
+     * where it is and copy only the travel time blocks they touch, sharing everything else with this graph;
+     * a closed route keeps its edge with an infinite travel time. New transfers lay the edges out again.
+     *
+     * @throws IllegalArgumentException for routes or stations the graph does not have
+     */
+    public TransitGraph withDelta(GraphDelta delta, long version) {
+        TransitGraph base = delta.getTransfers().isEmpty() ? this : withTransfers(delta.getTransfers());
+
+        Map<Integer, Double> changes = new HashMap<>(delta.getTravelTimes());
+        for (int routeId : delta.getClosedRoutes()) {
+            changes.put(routeId, Double.POSITIVE_INFINITY);
+        }
+        DoubleBuffer[] blocks = base.edgeTravelTimes.clone();
+        boolean[] copied = new boolean[blocks.length];
+        Set<Integer> found = new HashSet<>();
+        for (int e = 0, m = base.edgeCount(); e < m; e++) {
+            // generated transfers share route id -1 and cannot be addressed
+            int routeId = base.edgeRouteIds.get(e);
+            Double travelTime = routeId < 0 ? null : changes.get(routeId);
+            if (travelTime == null) {
+                continue;
+            }
+            int block = e >>> TIME_BLOCK_BITS;
+            if (!copied[block]) {
+                DoubleBuffer copy = DoubleBuffer.allocate(blocks[block].limit());
+                copy.put(0, blocks[block], 0, blocks[block].limit());
+                blocks[block] = copy;
+                copied[block] = true;
+            }
+            blocks[block].put(e & (TIME_BLOCK_SIZE - 1), travelTime);
+            found.add(routeId);
+        }
+        if (found.size() < changes.size()) {
+            Set<Integer> missing = new HashSet<>(changes.keySet());
+            missing.removeAll(found);
+            throw new IllegalArgumentException("unknown routes " + missing);
+        }
+
+        return new TransitGraph(version, stations, indexById, latitudes, longitudes, spatialIndex, lines, lineStations,
+                base.edgeOffsets, base.edgeTargets, blocks, base.edgeLineTypes, base.edgeLineIds, base.edgeRouteIds,
+                base.edgeDistances);
+    }
+
+    // the same graph with the transfers appended to the edges of their stations
+    private TransitGraph withTransfers(List<Route> transfers) {
+        int n = stations.length;
+        int[] added = new int[n + 1];
+        for (Route transfer : transfers) {
+            int from = indexOf(transfer.getFromStationId());
+            if (from < 0 || indexOf(transfer.getToStationId()) < 0) {
+                throw new IllegalArgumentException("unknown stations in transfer " + transfer.getFromStationId()
+                        + " -> " + transfer.getToStationId());
+            }
+            added[from + 1]++;
+        }
+        int m = edgeCount() + transfers.size();
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[m];
+        double[] travelTimes = new double[m];
+        byte[] lineTypes = new byte[m];
+        int[] lineIds = new int[m];
+        int[] routeIds = new int[m];
+        int[] distances = new int[m];
+        int[] fill = new int[n];
+        int e = 0;
+        for (int i = 0; i < n; i++) {
+            offsets[i] = e;
+            for (int old = firstEdge(i), last = endEdge(i); old < last; old++, e++) {
+                targets[e] = edgeTarget(old);
+                travelTimes[e] = edgeTravelTime(old);
+                lineTypes[e] = edgeLineType(old);
+                lineIds[e] = edgeLineId(old);
+                routeIds[e] = edgeRouteId(old);
+                distances[e] = edgeDistance(old);
+            }
+            fill[i] = e;
+            e += added[i + 1];
+        }
+        offsets[n] = e;
+        for (Route transfer : transfers) {
+            int slot = fill[indexOf(transfer.getFromStationId())]++;
+            targets[slot] = indexOf(transfer.getToStationId());
+            travelTimes[slot] = transfer.getTravelTime();
+            lineTypes[slot] = TRANSFER;
+            lineIds[slot] = transfer.getLineId();
+            routeIds[slot] = transfer.getRouteId();
+            distances[slot] = transfer.getDistance();
+        }
+        return new TransitGraph(version, stations, indexById, latitudes, longitudes, spatialIndex, lines, lineStations,
+                IntBuffer.wrap(offsets), IntBuffer.wrap(targets), timeBlocks(DoubleBuffer.wrap(travelTimes)),
+                ByteBuffer.wrap(lineTypes), IntBuffer.wrap(lineIds), IntBuffer.wrap(routeIds), IntBuffer.wrap(distances));
+    }
+
+    private static DoubleBuffer[] timeBlocks(DoubleBuffer travelTimes) {
+        int m = travelTimes.limit();
+        DoubleBuffer[] blocks = new DoubleBuffer[(m + TIME_BLOCK_SIZE - 1) >>> TIME_BLOCK_BITS];
+        for (int b = 0; b < blocks.length; b++) {
+            int start = b << TIME_BLOCK_BITS;
+            blocks[b] = travelTimes.slice(start, Math.min(TIME_BLOCK_SIZE, m - start));
+        }
+        return blocks;
+    }
+
+    private static Map<Integer, Integer> indexById(Station[] stations) {
+        Map<Integer, Integer> indexById = new HashMap<>(stations.length * 2);
+        for (int i = 0; i < stations.length; i++) {
+            indexById.put(stations[i].getStationId(), i);
+        }
+        return Collections.unmodifiableMap(indexById);
+    }
+
+    // the lines of every station in CSR form, both as dense line indices and as line ids
+    private static final class LineMembership {
+        final int[] offsets;
+        final int[] lines;
+        final int[] lineIds;
+        final int lineCount;
+
+        LineMembership(int stationCount, Map<Integer, int[]> lineStations) {
+            offsets = new int[stationCount + 1];
+            for (int[] members : lineStations.values()) {
+                for (int member : members) {
+                    offsets[member + 1]++;
+                }
+            }
+            for (int i = 0; i < stationCount; i++) {
+                offsets[i + 1] += offsets[i];
+            }
+            lines = new int[offsets[stationCount]];
+            lineIds = new int[offsets[stationCount]];
+            int[] fill = Arrays.copyOf(offsets, stationCount);
+            int lineIndex = 0;
+            for (Map.Entry<Integer, int[]> entry : lineStations.entrySet()) {
+                for (int member : entry.getValue()) {
+                    lineIds[fill[member]] = entry.getKey();
+                    lines[fill[member]++] = lineIndex;
+                }
+                lineIndex++;
+            }
+            lineCount = lineIndex;
+        }
+    }
+
+    // walking transfer to the nearest station of every line that does not leave from the station directly,
+    // as long as that station is within maxTransferDistance meters
+    private static void addTransferRoutes(Station[] stations, List<List<Route>> outgoing, StationSpatialIndex spatialIndex,
+                                          int[] lineOffsets, int[] stationLineIds, double maxTransferDistance) {
+        for (int from = 0; from < stations.length; from++) {
+            Station fromStation = stations[from];
+            Set<Integer> coveredLines = new HashSet<>();
+            for (Route route : outgoing.get(from)) {
+                coveredLines.add(route.getLineId());
+            }
+
+            List<Route> transfers = new ArrayList<>();
+            // candidates come nearest first, so the first station seen for a line is that line's nearest
+            for (int candidate : spatialIndex.withinRadius(fromStation.getLatitude(), fromStation.getLongitude(),
+                    maxTransferDistance)) {
+                if (candidate == from) {
+                    continue;
+                }
+                int transferLine = -1;
+                for (int l = lineOffsets[candidate]; l < lineOffsets[candidate + 1]; l++) {
+                    if (coveredLines.add(stationLineIds[l]) && transferLine < 0) {
+                        transferLine = stationLineIds[l];
+                    }
+                }
+                if (transferLine < 0) {
+                    continue;
+                }
+
+                Station toStation = stations[candidate];
+                double distance = GeoMath.haversineMeters(fromStation.getLatitude(), fromStation.getLongitude(),
+                        toStation.getLatitude(), toStation.getLongitude());
+                transfers.add(new Route(-1, fromStation.getStationId(), toStation.getStationId(), transferLine,
+                        distance / WALK_SPEED, (int) distance, "transfer"));
+            }
+            outgoing.get(from).addAll(transfers);
+        }
+    }
+
+    private static String lineTypeName(byte lineType) {
+        if (lineType == METRO) {
+            return "metro";
+        }
+        if (lineType == TRANSFER) {
+            return "transfer";
+        }
+        return "bus";
+    }
+
+    private static byte lineTypeOf(String lineType) {
+        if ("metro".equals(lineType)) {
+            return METRO;
+        }
+        if ("transfer".equals(lineType)) {
+            return TRANSFER;
+        }
+        return BUS;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Highest straight-line speed over any edge, in meters per minute. {@code chordDistance(a, b) / maxSpeed()}
+     * never exceeds the travel time from {@code a} to {@code b}.
+     */
+    public double maxSpeed() {
+        return maxSpeed;
+    }
+
+    public int stationCount() {
+        return stations.length;
+    }
+
+    public int edgeCount() {
+        return edgeTargets.limit();
+    }
+
+    public int indexOf(int stationId) {
+        Integer index = indexById.get(stationId);
+        return index == null ? -1 : index;
+    }
+
+    public Station station(int index) {
+        return stations[index];
+    }
+
+    public Station getStation(int stationId) {
+        int index = indexOf(stationId);
+        return index < 0 ? null : stations[index];
+    }
+
+    public List<Station> getStations() {
+        return Collections.unmodifiableList(Arrays.asList(stations));
+    }
+
+    public double latitude(int index) {
+        return latitudes[index];
+    }
+
+    public double longitude(int index) {
+        return longitudes[index];
+    }
+
+    // great-circle distance between two stations in meters
+    public double distance(int from, int to) {
+        return GeoMath.haversineMeters(latitudes[from], longitudes[from], latitudes[to], longitudes[to]);
+    }
+
+    // straight-line distance through the earth in meters, never more than distance(); for search bounds
+    public double chordDistance(int from, int to) {
+        return spatialIndex.chordMeters(from, to);
+    }
+
+    public int firstEdge(int index) {
+        return edgeOffsets.get(index);
+    }
+
+    public int endEdge(int index) {
+        return edgeOffsets.get(index + 1);
+    }
+
+    public int edgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    public double edgeTravelTime(int edge) {
+        return edgeTravelTimes[edge >>> TIME_BLOCK_BITS].get(edge & (TIME_BLOCK_SIZE - 1));
+    }
+
+    public byte edgeLineType(int edge) {
+        return edgeLineTypes.get(edge);
+    }
+
+    public int edgeLineId(int edge) {
+        return edgeLineIds.get(edge);
+    }
+
+    public int edgeRouteId(int edge) {
+        return edgeRouteIds.get(edge);
+    }
+
+    public int edgeDistance(int edge) {
+        return edgeDistances.get(edge);
+    }
+
+    // the route behind an edge leaving the station, with route id -1 for a generated walking transfer
+    public Route edgeRoute(int from, int edge) {
+        byte lineType = edgeLineType(edge);
+        Line line = lines.get(edgeLineId(edge));
+        String lineTypeName = lineType != TRANSFER && line != null ? line.getLineType() : lineTypeName(lineType);
+        return new Route(edgeRouteId(edge), stations[from].getStationId(), stations[edgeTarget(edge)].getStationId(),
+                edgeLineId(edge), edgeTravelTime(edge), edgeDistance(edge), lineTypeName);
+    }
+
+    public StationSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    public Map<Integer, Line> getLines() {
+        return lines;
+    }
+
+    // station indices of every line, by line id
+    Map<Integer, int[]> lineStationIndices() {
+        return lineStations;
+    }
+
+    public List<Station> getLineStations(int lineId) {
+        int[] members = lineStations.get(lineId);
+        if (members == null) {
+            return Collections.emptyList();
+        }
+        List<Station> result = new ArrayList<>(members.length);
+        for (int member : members) {
+            result.add(stations[member]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package CERP.model;
+
+
+import lombok.Data;
+
+
+@Data
+public class Line {
+    private int lineId;
+    private String lineType;
+
+    public Line(int lineId, String lineType) {
+        this.lineId = lineId;
+        this.lineType = lineType;
+    }
+
+    public boolean isSubway() {
+        return "metro".equals(lineType);
+    }
+}
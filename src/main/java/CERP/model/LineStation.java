@@ -0,0 +1,16 @@
+package CERP.model;
+
+
+import lombok.Data;
+
+
+@Data
+public class LineStation {
+    private int lineId;
+    private int stationId;
+
+    public LineStation(int lineId, int stationId) {
+        this.lineId = lineId;
+        this.stationId = stationId;
+    }
+}
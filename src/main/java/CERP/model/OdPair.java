@@ -0,0 +1,18 @@
+package CERP.model;
+
+import lombok.Data;
+
+@Data
+public class OdPair {
+    private double startLat;
+    private double startLon;
+    private double endLat;
+    private double endLon;
+
+    public OdPair(double startLat, double startLon, double endLat, double endLon) {
+        this.startLat = startLat;
+        this.startLon = startLon;
+        this.endLat = endLat;
+        this.endLon = endLon;
+    }
+}
@@ -0,0 +1,16 @@
+package CERP.model;
+
+import lombok.Data;
+
+@Data
+public class ReachableStation {
+    private Station station;
+    private double arrivalTime;
+    private double moneyCost;
+
+    public ReachableStation(Station station, double arrivalTime, double moneyCost) {
+        this.station = station;
+        this.arrivalTime = arrivalTime;
+        this.moneyCost = moneyCost;
+    }
+}
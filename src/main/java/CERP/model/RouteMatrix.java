@@ -0,0 +1,19 @@
+package CERP.model;
+
+import lombok.Data;
+
+@Data
+public class RouteMatrix {
+    private int origins;
+    private int destinations;
+    // row-major, one row per origin; -1 where the destination cannot be reached
+    private double[] durations;
+    private double[] moneyCosts;
+
+    public RouteMatrix(int origins, int destinations, double[] durations, double[] moneyCosts) {
+        this.origins = origins;
+        this.destinations = destinations;
+        this.durations = durations;
+        this.moneyCosts = moneyCosts;
+    }
+}
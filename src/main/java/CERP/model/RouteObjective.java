@@ -0,0 +1,26 @@
+package CERP.model;
+
+public enum RouteObjective {
+    FASTEST("fastest"),
+    COST_EFFECTIVE("cost-effective");
+
+    private final String name;
+
+    RouteObjective(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // the objective named like its single-query endpoint, or null
+    public static RouteObjective fromName(String name) {
+        for (RouteObjective objective : values()) {
+            if (objective.name.equals(name)) {
+                return objective;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,19 @@
+package CERP.model;
+
+import lombok.Data;
+import java.util.List;
+
+@Data
+public class RouteOption {
+    private List<TravelSegment> path;
+    private double duration;
+    private double moneyCost;
+    private int transfers;
+
+    public RouteOption(List<TravelSegment> path, double duration, double moneyCost, int transfers) {
+        this.path = path;
+        this.duration = duration;
+        this.moneyCost = moneyCost;
+        this.transfers = transfers;
+    }
+}
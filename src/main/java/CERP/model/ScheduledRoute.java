@@ -0,0 +1,26 @@
+package CERP.model;
+
+import lombok.Data;
+
+import java.time.LocalTime;
+import java.util.List;
+
+@Data
+public class ScheduledRoute {
+    private List<TravelSegment> path;
+    private LocalTime departure;
+    private LocalTime arrival;
+    private double duration;
+    private double moneyCost;
+    private int transfers;
+
+    public ScheduledRoute(List<TravelSegment> path, LocalTime departure, LocalTime arrival, double duration,
+                          double moneyCost, int transfers) {
+        this.path = path;
+        this.departure = departure;
+        this.arrival = arrival;
+        this.duration = duration;
+        this.moneyCost = moneyCost;
+        this.transfers = transfers;
+    }
+}
@@ -0,0 +1,22 @@
+package CERP.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+
+@Data
+public class SnapshotInfo {
+    private long version;
+    private Instant builtAt;
+    private long buildMillis;
+    private int stationCount;
+    private int edgeCount;
+
+    public SnapshotInfo(long version, Instant builtAt, long buildMillis, int stationCount, int edgeCount) {
+        this.version = version;
+        this.builtAt = builtAt;
+        this.buildMillis = buildMillis;
+        this.stationCount = stationCount;
+        this.edgeCount = edgeCount;
+    }
+}
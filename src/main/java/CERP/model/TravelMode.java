@@ -2,5 +2,6 @@ package CERP.model;
 
 public enum TravelMode {
     WALK,
-    PUBLIC_TRANSPORT
+    PUBLIC_TRANSPORT,
+    WAIT
 }
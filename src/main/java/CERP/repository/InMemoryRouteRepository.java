@@ -0,0 +1,105 @@
+package CERP.repository;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.Route;
+import CERP.model.Station;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.IncorrectResultSizeDataAccessException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link RouteRepository} over a {@link SyntheticNetwork} instead of the database. Lookups behave like
+ * their queries, including failing when a single row is expected and there is none or more than one.
+ */
+public class InMemoryRouteRepository extends RouteRepository {
+    private final SyntheticNetwork network;
+    private final Map<Integer, Station> stationsById = new HashMap<>();
+    private final Map<Long, List<Route>> routesByStations = new HashMap<>();
+    private final Map<Integer, List<Route>> routesByFromStation = new HashMap<>();
+    private final Map<Integer, List<Station>> stationsByLine = new HashMap<>();
+
+    public InMemoryRouteRepository(SyntheticNetwork network) {
+        super(null);
+        this.network = network;
+        for (Station station : network.getStations()) {
+            stationsById.put(station.getStationId(), station);
+        }
+        for (Route route : network.getRoutes()) {
+            routesByStations.computeIfAbsent(pair(route.getFromStationId(), route.getToStationId()),
+                    key -> new ArrayList<>()).add(route);
+            routesByFromStation.computeIfAbsent(route.getFromStationId(), key -> new ArrayList<>()).add(route);
+        }
+        for (LineStation lineStation : network.getLineStations()) {
+            stationsByLine.computeIfAbsent(lineStation.getLineId(), key -> new ArrayList<>())
+                    .add(stationsById.get(lineStation.getStationId()));
+        }
+    }
+
+    @Override
+    public List<Route> findAllRoutes() {
+        return network.getRoutes();
+    }
+
+    @Override
+    public List<Station> findAllStations() {
+        return network.getStations();
+    }
+
+    @Override
+    public List<Line> findAllLines() {
+        return network.getLines();
+    }
+
+    @Override
+    public List<LineStation> findAllLineStations() {
+        return network.getLineStations();
+    }
+
+    // the nearest station of each line, nearest first, by the same degree distance as the query
+    @Override
+    public List<Station> findNearestStations(double lat, double lon, int limit) {
+        Comparator<Station> byDistance = Comparator.comparingDouble(
+                s -> Math.hypot(s.getLatitude() - lat, s.getLongitude() - lon));
+        List<Station> nearestPerLine = new ArrayList<>();
+        for (List<Station> members : stationsByLine.values()) {
+            members.stream().min(byDistance).ifPresent(nearestPerLine::add);
+        }
+        nearestPerLine.sort(byDistance);
+        return new ArrayList<>(nearestPerLine.subList(0, Math.min(limit, nearestPerLine.size())));
+    }
+
+    // the routes leaving the station; the walking transfers the query adds are generated by the graph instead
+    @Override
+    public List<Route> findRoutesByFromStationId(int fromStationId) {
+        return new ArrayList<>(routesByFromStation.getOrDefault(fromStationId, List.of()));
+    }
+
+    @Override
+    public Station findStationById(int stationId) {
+        Station station = stationsById.get(stationId);
+        if (station == null) {
+            throw new EmptyResultDataAccessException(1);
+        }
+        return station;
+    }
+
+    @Override
+    public Route findRouteBetweenStations(int fromStationId, int toStationId) {
+        List<Route> routes = routesByStations.getOrDefault(pair(fromStationId, toStationId), List.of());
+        if (routes.size() != 1) {
+            throw routes.isEmpty() ? new EmptyResultDataAccessException(1)
+                    : new IncorrectResultSizeDataAccessException(1, routes.size());
+        }
+        return routes.get(0);
+    }
+
+    private static long pair(int fromStationId, int toStationId) {
+        return ((long) fromStationId << 32) | (toStationId & 0xFFFFFFFFL);
+    }
+}
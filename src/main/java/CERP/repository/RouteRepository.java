@@ -1,5 +1,8 @@
 package CERP.repository;
 
+import CERP.graph.GeoMath;
+import CERP.model.Line;
+import CERP.model.LineStation;
 import CERP.model.Route;
 import CERP.model.Station;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -37,6 +40,16 @@ public class RouteRepository {
                 rs.getString("s_type"), rs.getDouble("latitude"), rs.getDouble("longitude")));
     }
 
+    public List<Line> findAllLines() {
+        String sql = "SELECT l_id, l_type FROM cer_lines";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new Line(rs.getInt("l_id"), rs.getString("l_type")));
+    }
+
+    public List<LineStation> findAllLineStations() {
+        String sql = "SELECT l_id, s_id FROM cer_line_station";
+        return jdbcTemplate.query(sql, (rs, rowNum) -> new LineStation(rs.getInt("l_id"), rs.getInt("s_id")));
+    }
+
     public List<Station> findNearestStations(double lat, double lon, int limit) {
         String sql = """
                     WITH ranked_stations AS (
@@ -122,8 +135,8 @@ public class RouteRepository {
                     );
 
                     if (nearestStation != null) {
-                        double distance = calculateDistance(fromStation.getLatitude(), fromStation.getLongitude(),
-                                nearestStation.getLatitude(), nearestStation.getLongitude());
+                        double distance = GeoMath.haversineMeters(fromStation.getLatitude(), fromStation.getLongitude(),
+                                nearestStation.getLatitude(), nearestStation.getLongitude()) / 1000;
                         double transferTime = (distance / 5.0) * 60;
 
                         Route transferRoute = new Route(
@@ -175,15 +188,4 @@ public class RouteRepository {
                 rs.getInt("distance"),
                 rs.getString("l_type")));
     }
-
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        double earthRadius = 6371;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                        Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return earthRadius * c;
-    }
 }
@@ -0,0 +1,30 @@
+package CERP.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * With the {@code synthetic} profile the planner runs on a generated {@link SyntheticNetwork} instead of
+ * the database, sized by the {@code cerp.synthetic.*} properties.
+ */
+@Configuration
+@Profile("synthetic")
+public class SyntheticDataConfig {
+
+    @Bean
+    public SyntheticNetwork syntheticNetwork(@Value("${cerp.synthetic.seed:42}") long seed,
+                                             @Value("${cerp.synthetic.side:60}") int side,
+                                             @Value("${cerp.synthetic.bus-lines:60}") int busLines,
+                                             @Value("${cerp.synthetic.metro-lines:8}") int metroLines) {
+        return new SyntheticNetwork(seed, side, busLines, metroLines);
+    }
+
+    @Bean
+    @Primary
+    public RouteRepository inMemoryRouteRepository(SyntheticNetwork syntheticNetwork) {
+        return new InMemoryRouteRepository(syntheticNetwork);
+    }
+}
@@ -0,0 +1,191 @@
+package CERP.repository;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.OdPair;
+import CERP.model.Route;
+import CERP.model.Station;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded synthetic city with the rows of {@code cer_stations}, {@code cer_lines}, {@code cer_line_station}
+ * and {@code cer_routes}, for benchmarks and load tests without the database.
+ * <p>
+ * Stations sit on a square grid about 400 m apart. Metro lines are radial, running edge to edge through
+ * the centre at evenly spread angles and stopping about every 1.2 km; bus lines wander along the grid
+ * stopping at every station. Each line has a route in both directions between consecutive stops, timed
+ * at 35 km/h for metro and 20 km/h for buses plus half a minute per stop.
+ */
+public final class SyntheticNetwork {
+    private static final double ORIGIN_LAT = 37.80;
+    private static final double ORIGIN_LON = 112.45;
+    private static final double LAT_STEP = 0.0036;
+    private static final double LON_STEP = 0.0045;
+    private static final double BUS_METERS_PER_MINUTE = 20.0 * 1000 / 60;
+    private static final double METRO_METERS_PER_MINUTE = 35.0 * 1000 / 60;
+    private static final double DWELL_MINUTES = 0.5;
+    private static final int METRO_STOP_SPACING = 3;
+
+    private final int side;
+    private final List<Station> stations = new ArrayList<>();
+    private final List<Line> lines = new ArrayList<>();
+    private final List<LineStation> lineStations = new ArrayList<>();
+    private final List<Route> routes = new ArrayList<>();
+    private final Random random;
+    private int nextRouteId = 1;
+
+    /**
+     * @param side       stations per side of the grid
+     * @param busLines   number of bus lines
+     * @param metroLines number of radial metro lines
+     */
+    public SyntheticNetwork(long seed, int side, int busLines, int metroLines) {
+        if (side < 2) {
+            throw new IllegalArgumentException("a synthetic network needs at least 2 stations per side");
+        }
+        this.side = side;
+        this.random = new Random(seed);
+        int stationId = 1;
+        for (int row = 0; row < side; row++) {
+            for (int col = 0; col < side; col++) {
+                stations.add(new Station(stationId++, "S" + row + "-" + col, "bus",
+                        ORIGIN_LAT + row * LAT_STEP + random.nextDouble() * LAT_STEP / 4,
+                        ORIGIN_LON + col * LON_STEP + random.nextDouble() * LON_STEP / 4));
+            }
+        }
+        int lineId = 1;
+        for (int i = 0; i < metroLines; i++) {
+            addLine(lineId++, "metro", metroStops(Math.PI * i / metroLines));
+        }
+        for (int i = 0; i < busLines; i++) {
+            addLine(lineId++, "bus", busStops());
+        }
+    }
+
+    public List<Station> getStations() {
+        return Collections.unmodifiableList(stations);
+    }
+
+    public List<Line> getLines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    public List<LineStation> getLineStations() {
+        return Collections.unmodifiableList(lineStations);
+    }
+
+    public List<Route> getRoutes() {
+        return Collections.unmodifiableList(routes);
+    }
+
+    // bounds of the city as {minLat, minLon, maxLat, maxLon}
+    public double[] bounds() {
+        return new double[] { ORIGIN_LAT, ORIGIN_LON, ORIGIN_LAT + side * LAT_STEP, ORIGIN_LON + side * LON_STEP };
+    }
+
+    /**
+     * Origin-destination pairs near stations, half of the trips starting or ending around the centre and
+     * the rest spread over the city, each point up to about 200 m off its station.
+     */
+    public List<OdPair> odPairs(int count, long seed) {
+        Random odRandom = new Random(seed);
+        List<OdPair> pairs = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            double[] start = tripEnd(odRandom);
+            double[] end = tripEnd(odRandom);
+            pairs.add(new OdPair(start[0], start[1], end[0], end[1]));
+        }
+        return pairs;
+    }
+
+    private double[] tripEnd(Random odRandom) {
+        int row;
+        int col;
+        if (odRandom.nextBoolean()) {
+            row = clamp((int) Math.round(side / 2.0 + odRandom.nextGaussian() * side / 6.0));
+            col = clamp((int) Math.round(side / 2.0 + odRandom.nextGaussian() * side / 6.0));
+        } else {
+            row = odRandom.nextInt(side);
+            col = odRandom.nextInt(side);
+        }
+        Station station = stations.get(row * side + col);
+        return new double[] {
+                station.getLatitude() + (odRandom.nextDouble() - 0.5) * LAT_STEP,
+                station.getLongitude() + (odRandom.nextDouble() - 0.5) * LON_STEP };
+    }
+
+    // the grid stations nearest to evenly spaced points on a diameter of the city at the given angle
+    private List<Integer> metroStops(double angle) {
+        double center = (side - 1) / 2.0;
+        double radius = (side - 1) / 2.0 / Math.max(Math.abs(Math.cos(angle)), Math.abs(Math.sin(angle)));
+        Set<Integer> stops = new LinkedHashSet<>();
+        for (double t = -radius; t <= radius; t += METRO_STOP_SPACING) {
+            int row = clamp((int) Math.round(center + t * Math.sin(angle)));
+            int col = clamp((int) Math.round(center + t * Math.cos(angle)));
+            stops.add(row * side + col);
+        }
+        for (int stop : stops) {
+            stations.get(stop).setStationType("metro");
+        }
+        return new ArrayList<>(stops);
+    }
+
+    // a walk of one to two city widths that turns now and then
+    private List<Integer> busStops() {
+        int row = random.nextInt(side);
+        int col = random.nextInt(side);
+        int dRow = 0;
+        int dCol = 1;
+        Set<Integer> stops = new LinkedHashSet<>();
+        for (int k = side + random.nextInt(side); k > 0; k--) {
+            stops.add(row * side + col);
+            if (random.nextInt(5) == 0) {
+                int turn = dRow;
+                dRow = random.nextBoolean() ? dCol : -dCol;
+                dCol = turn;
+            }
+            if (row + dRow < 0 || row + dRow >= side || col + dCol < 0 || col + dCol >= side) {
+                dRow = -dRow;
+                dCol = -dCol;
+            }
+            row += dRow;
+            col += dCol;
+        }
+        return new ArrayList<>(stops);
+    }
+
+    private void addLine(int lineId, String lineType, List<Integer> stops) {
+        lines.add(new Line(lineId, lineType));
+        double metersPerMinute = "metro".equals(lineType) ? METRO_METERS_PER_MINUTE : BUS_METERS_PER_MINUTE;
+        for (int k = 0; k < stops.size(); k++) {
+            Station station = stations.get(stops.get(k));
+            lineStations.add(new LineStation(lineId, station.getStationId()));
+            if (k == 0) {
+                continue;
+            }
+            Station previous = stations.get(stops.get(k - 1));
+            int distance = (int) metersBetween(previous, station);
+            double travelTime = distance / metersPerMinute + DWELL_MINUTES;
+            routes.add(new Route(nextRouteId++, previous.getStationId(), station.getStationId(), lineId, travelTime,
+                    distance, lineType));
+            routes.add(new Route(nextRouteId++, station.getStationId(), previous.getStationId(), lineId, travelTime,
+                    distance, lineType));
+        }
+    }
+
+    private int clamp(int index) {
+        return Math.max(0, Math.min(side - 1, index));
+    }
+
+    private static double metersBetween(Station a, Station b) {
+        double dLat = Math.toRadians(b.getLatitude() - a.getLatitude());
+        double dLon = Math.toRadians(b.getLongitude() - a.getLongitude()) * Math.cos(Math.toRadians(a.getLatitude()));
+        return 6371000 * Math.sqrt(dLat * dLat + dLon * dLon);
+    }
+}
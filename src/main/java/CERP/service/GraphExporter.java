@@ -0,0 +1,45 @@
+package CERP.service;
+
+import CERP.graph.GraphFile;
+import CERP.graph.TransitGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Export tool for the graph file read at startup: when {@code cerp.graph.export-file} is set, the graph is
+ * built from the database, written to that file and the application exits.
+ */
+@Component
+@ConditionalOnProperty("cerp.graph.export-file")
+public class GraphExporter implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(GraphExporter.class);
+
+    private final TransitGraphService transitGraphService;
+    private final ConfigurableApplicationContext context;
+    private final Path exportFile;
+
+    public GraphExporter(TransitGraphService transitGraphService, ConfigurableApplicationContext context,
+                         @Value("${cerp.graph.export-file}") String exportFile) {
+        this.transitGraphService = transitGraphService;
+        this.context = context;
+        this.exportFile = Path.of(exportFile);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        TransitGraph graph = transitGraphService.load();
+        GraphFile.write(graph, exportFile);
+        log.info("exported transit graph with {} stations and {} edges to {}", graph.stationCount(),
+                graph.edgeCount(), exportFile);
+        System.exit(SpringApplication.exit(context, () -> 0));
+    }
+}
@@ -0,0 +1,133 @@
+package CERP.service;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Threads the planner fans work out to: a fork-join pool sized to the cores for in-memory searches, kept
+ * apart from the common fork-join pool.
+ * <p>
+ * A single call runs at most {@code cerp.planner.max-fan-out} tasks at once, the calling thread being
+ * one of them, so one large request cannot take over the pool. The pool publishes the {@code executor.*}
+ * metrics, {@code executor.queued} being the queue depth, tagged {@code name=planner.search};
+ * {@code cerp.planner.fan-out} records the tasks per call.
+ */
+@Component
+public class PlannerExecutor {
+    private final ForkJoinPool searchPool;
+    private final int maxFanOut;
+    private final DistributionSummary fanOut;
+
+    public PlannerExecutor(MeterRegistry meterRegistry,
+                           @Value("${cerp.planner.search-threads:0}") int searchThreads,
+                           @Value("${cerp.planner.max-fan-out:0}") int maxFanOut) {
+        int parallelism = searchThreads > 0 ? searchThreads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger searchThreadCount = new AtomicInteger();
+        this.searchPool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("planner-search-" + searchThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        this.maxFanOut = maxFanOut > 0 ? maxFanOut : parallelism;
+
+        new ExecutorServiceMetrics(searchPool, "planner.search", Tags.empty()).bindTo(meterRegistry);
+        this.fanOut = DistributionSummary.builder("cerp.planner.fan-out")
+                .description("tasks fanned out by one planner call")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        searchPool.shutdownNow();
+    }
+
+    public ForkJoinPool searchPool() {
+        return searchPool;
+    }
+
+    public int maxFanOut() {
+        return maxFanOut;
+    }
+
+    // runs CPU-bound searches on the search pool, results in the order of the tasks
+    public <T> List<T> search(List<? extends Supplier<T>> tasks) {
+        return runAll(tasks);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> List<T> runAll(List<? extends Supplier<T>> tasks) {
+        int count = tasks.size();
+        fanOut.record(count);
+        Object[] results = new Object[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        // workers take the next task until none are left, so the fan-out is the number of workers
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                try {
+                    results[i] = tasks.get(i).get();
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                    next.set(count);
+                }
+            }
+        };
+
+        // a helper runs the worker only if it starts before the caller is done; the caller waits for those
+        List<AtomicBoolean> claims = new ArrayList<>();
+        List<Future<?>> helpers = new ArrayList<>();
+        for (int w = 1, workers = Math.min(maxFanOut, count); w < workers; w++) {
+            AtomicBoolean claimed = new AtomicBoolean();
+            claims.add(claimed);
+            helpers.add(searchPool.submit(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    worker.run();
+                }
+            }));
+        }
+        worker.run();
+        for (int h = 0; h < helpers.size(); h++) {
+            if (claims.get(h).compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                helpers.get(h).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for planner tasks", e);
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+}
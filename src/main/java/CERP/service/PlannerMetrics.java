@@ -0,0 +1,109 @@
+package CERP.service;
+
+import CERP.model.RouteObjective;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-query metrics of the route planner, tagged by objective:
+ * <ul>
+ *     <li>{@code cerp.planner.query} and {@code cerp.planner.phase} timers, the latter tagged with the
+ *     phase: {@code nearest}, {@code search} and {@code full-path}, the last including the fare</li>
+ *     <li>{@code cerp.planner.nodes.expanded}, {@code cerp.planner.heap.operations} and
+ *     {@code cerp.planner.candidate.pairs} summaries for queries that searched rather than hit the
+ *     route cache</li>
+ * </ul>
+ * These cost a few counter updates per query and are always recorded. A {@link RoutePlanningEvent} is
+ * also committed to JFR, when a recording enables it, for a sampled share of the queries
+ * ({@code cerp.planner.trace.sample-rate}) and for every query slower than
+ * {@code cerp.planner.trace.slow-query-ms}.
+ */
+@Component
+public class PlannerMetrics {
+    private final MeterRegistry meterRegistry;
+    private final double sampleRate;
+    private final long slowQueryNanos;
+    private final Map<RouteObjective, Meters> meters = new EnumMap<>(RouteObjective.class);
+
+    public PlannerMetrics(MeterRegistry meterRegistry,
+                          @Value("${cerp.planner.trace.sample-rate:0.01}") double sampleRate,
+                          @Value("${cerp.planner.trace.slow-query-ms:1000}") long slowQueryMillis) {
+        this.meterRegistry = meterRegistry;
+        this.sampleRate = sampleRate;
+        this.slowQueryNanos = TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        for (RouteObjective objective : RouteObjective.values()) {
+            meters.put(objective, new Meters(objective.getName()));
+        }
+    }
+
+    QueryTrace start(RouteObjective objective) {
+        return new QueryTrace(objective);
+    }
+
+    void finish(QueryTrace trace) {
+        long total = System.nanoTime() - trace.startNanos;
+        Meters m = meters.get(trace.objective);
+        m.query.record(total, TimeUnit.NANOSECONDS);
+        for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+            m.phases[phase.ordinal()].record(trace.phaseNanos[phase.ordinal()], TimeUnit.NANOSECONDS);
+        }
+        if (trace.searched) {
+            m.nodesExpanded.record(trace.nodesExpanded);
+            m.heapOperations.record(trace.heapOperations);
+            m.candidatePairs.record(trace.candidatePairs);
+        }
+
+        if (total >= slowQueryNanos || ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            RoutePlanningEvent event = new RoutePlanningEvent();
+            if (event.isEnabled()) {
+                event.objective = trace.objective.getName();
+                event.searched = trace.searched;
+                event.candidatePairs = trace.candidatePairs;
+                event.nodesExpanded = trace.nodesExpanded;
+                event.heapOperations = trace.heapOperations;
+                event.total = total;
+                event.nearest = trace.phaseNanos[QueryTrace.Phase.NEAREST.ordinal()];
+                event.search = trace.phaseNanos[QueryTrace.Phase.SEARCH.ordinal()];
+                event.fullPath = trace.phaseNanos[QueryTrace.Phase.FULL_PATH.ordinal()];
+                event.commit();
+            }
+        }
+    }
+
+    private final class Meters {
+        final Timer query;
+        final Timer[] phases = new Timer[QueryTrace.Phase.values().length];
+        final DistributionSummary nodesExpanded;
+        final DistributionSummary heapOperations;
+        final DistributionSummary candidatePairs;
+
+        Meters(String objective) {
+            query = Timer.builder("cerp.planner.query").tag("objective", objective)
+                    .description("route queries from snapping to fare")
+                    .register(meterRegistry);
+            for (QueryTrace.Phase phase : QueryTrace.Phase.values()) {
+                phases[phase.ordinal()] = Timer.builder("cerp.planner.phase").tag("objective", objective)
+                        .tag("phase", phase.tag)
+                        .description("time route queries spend in each phase")
+                        .register(meterRegistry);
+            }
+            nodesExpanded = DistributionSummary.builder("cerp.planner.nodes.expanded").tag("objective", objective)
+                    .description("nodes or labels expanded by a route search")
+                    .register(meterRegistry);
+            heapOperations = DistributionSummary.builder("cerp.planner.heap.operations").tag("objective", objective)
+                    .description("priority queue inserts, decreases and polls of a route search")
+                    .register(meterRegistry);
+            candidatePairs = DistributionSummary.builder("cerp.planner.candidate.pairs").tag("objective", objective)
+                    .description("start and end station pairs a route search considered")
+                    .register(meterRegistry);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package CERP.service;
+
+import CERP.graph.SearchStats;
+import CERP.model.RouteObjective;
+
+/**
+ * Work and time of one route query, filled in as it runs and handed to {@link PlannerMetrics#finish}.
+ * Phases are timed by laps: {@link #lap} adds the time since the previous mark and returns the new one.
+ */
+final class QueryTrace {
+    enum Phase {
+        NEAREST("nearest"), SEARCH("search"), FULL_PATH("full-path");
+
+        final String tag;
+
+        Phase(String tag) {
+            this.tag = tag;
+        }
+    }
+
+    final RouteObjective objective;
+    final long startNanos = System.nanoTime();
+    final long[] phaseNanos = new long[Phase.values().length];
+    boolean searched;
+    int candidatePairs;
+    long nodesExpanded;
+    long heapOperations;
+    private long expandedBefore;
+    private long heapOperationsBefore;
+
+    QueryTrace(RouteObjective objective) {
+        this.objective = objective;
+    }
+
+    long lap(Phase phase, long since) {
+        long now = System.nanoTime();
+        phaseNanos[phase.ordinal()] += now - since;
+        return now;
+    }
+
+    // marks the start of a search on the current thread
+    long beginSearch() {
+        SearchStats stats = SearchStats.current();
+        expandedBefore = stats.nodesExpanded();
+        heapOperationsBefore = stats.heapOperations();
+        return System.nanoTime();
+    }
+
+    long endSearch(long since, int startStations, int endStations) {
+        SearchStats stats = SearchStats.current();
+        searched = true;
+        candidatePairs += startStations * endStations;
+        nodesExpanded += stats.nodesExpanded() - expandedBefore;
+        heapOperations += stats.heapOperations() - heapOperationsBefore;
+        return lap(Phase.SEARCH, since);
+    }
+}
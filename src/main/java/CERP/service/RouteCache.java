@@ -0,0 +1,153 @@
+package CERP.service;
+
+import CERP.model.Station;
+import CERP.model.TravelSegment;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Data;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of the station-to-station part of planned routes, keyed on the planning mode and the
+ * stations the origin and destination snap to. Walking legs depend on the exact coordinates and are
+ * not cached. Eviction is Caffeine's W-TinyLFU; hits, misses and evictions are published as
+ * {@code cache.*} metrics tagged {@code cache=routes}.
+ * <p>
+ * Keys carry the graph snapshot version, and the whole cache is dropped once a newer version shows up.
+ * <p>
+ * Concurrent misses on the same key are coalesced: the first caller plans the route and the others wait on
+ * its {@link CompletableFuture}. {@code cerp.route.plans} counts planned and coalesced misses, and
+ * {@code cerp.route.coalescing.ratio} is the share of misses that were coalesced.
+ */
+@Component
+public class RouteCache {
+    private final Cache<Key, CachedRoute> cache;
+    private final ConcurrentMap<Key, CompletableFuture<CachedRoute>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong graphVersion = new AtomicLong();
+    private final Counter planned;
+    private final Counter coalesced;
+
+    public RouteCache(MeterRegistry meterRegistry,
+                      @Value("${cerp.route-cache.maximum-size:10000}") long maximumSize) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "routes");
+        this.planned = Counter.builder("cerp.route.plans").tag("result", "planned")
+                .description("route cache misses planned by the calling request")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("cerp.route.plans").tag("result", "coalesced")
+                .description("route cache misses that waited for an identical in-flight request")
+                .register(meterRegistry);
+        Gauge.builder("cerp.route.coalescing.ratio", this, RouteCache::coalescingRatio)
+                .description("share of route cache misses served by an identical in-flight request")
+                .register(meterRegistry);
+    }
+
+    public Key key(String mode, long version, List<Station> startStations, List<Station> endStations) {
+        long seen = graphVersion.get();
+        if (version > seen && graphVersion.compareAndSet(seen, version)) {
+            cache.invalidateAll();
+        }
+        return new Key(mode, version, sortedIds(startStations), sortedIds(endStations));
+    }
+
+    // the cached route, or the computed one which is cached unless it is null; concurrent callers with the
+    // same key share a single computation
+    public CachedRoute get(Key key, Supplier<CachedRoute> planner) {
+        CachedRoute cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        CompletableFuture<CachedRoute> flight = new CompletableFuture<>();
+        CompletableFuture<CachedRoute> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+
+        planned.increment();
+        try {
+            // a leader that finished between the lookup above and registering this flight has already cached it;
+            // read through the map view so the lookup is not counted twice
+            CachedRoute route = cache.asMap().get(key);
+            if (route == null) {
+                route = planner.get();
+                if (route != null) {
+                    cache.put(key, route);
+                }
+            }
+            flight.complete(route);
+            return route;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public double coalescingRatio() {
+        double coalescedCount = coalesced.count();
+        double total = coalescedCount + planned.count();
+        return total == 0 ? 0 : coalescedCount / total;
+    }
+
+    private static CachedRoute await(CompletableFuture<CachedRoute> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static int[] sortedIds(List<Station> stations) {
+        int[] ids = new int[stations.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = stations.get(i).getStationId();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    @Data
+    public static class Key {
+        private final String mode;
+        private final long graphVersion;
+        private final int[] startStationIds;
+        private final int[] endStationIds;
+    }
+
+    @Data
+    public static class CachedRoute {
+        private final List<Station> stations;
+        private final List<TravelSegment> segments;
+        private final double moneyCost;
+    }
+}
@@ -0,0 +1,51 @@
+package CERP.service;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a sampled or slow route query, see {@link PlannerMetrics}.
+ */
+@Name("CERP.RoutePlanning")
+@Label("Route Planning")
+@Category({ "CERP", "Route Planning" })
+@Description("Work and phase times of a route query")
+@StackTrace(false)
+final class RoutePlanningEvent extends Event {
+    @Label("Objective")
+    String objective;
+
+    @Label("Searched")
+    @Description("False when the station route came from the route cache")
+    boolean searched;
+
+    @Label("Candidate Pairs")
+    int candidatePairs;
+
+    @Label("Nodes Expanded")
+    long nodesExpanded;
+
+    @Label("Heap Operations")
+    long heapOperations;
+
+    @Label("Total")
+    @Timespan(Timespan.NANOSECONDS)
+    long total;
+
+    @Label("Nearest Stations")
+    @Timespan(Timespan.NANOSECONDS)
+    long nearest;
+
+    @Label("Search")
+    @Timespan(Timespan.NANOSECONDS)
+    long search;
+
+    @Label("Full Path")
+    @Timespan(Timespan.NANOSECONDS)
+    long fullPath;
+}
@@ -1,388 +1,610 @@
 package CERP.service;
 
+import CERP.graph.AStarRouter;
+import CERP.graph.ConnectionScanRouter;
+import CERP.graph.ContractionHierarchy;
+import CERP.graph.GeoMath;
+import CERP.graph.GraphPath;
+import CERP.graph.GraphSnapshot;
+import CERP.graph.IsochroneRouter;
+import CERP.graph.MatrixRouter;
+import CERP.graph.ParetoRouter;
+import CERP.graph.RaptorRouter;
+import CERP.graph.ShortestPathTree;
+import CERP.graph.StationSpatialIndex;
+import CERP.graph.Timetable;
+import CERP.graph.TransitGraph;
+import CERP.model.OdPair;
+import CERP.model.ReachableStation;
 import CERP.model.Station;
 import CERP.model.Route;
+import CERP.model.RouteMatrix;
+import CERP.model.RouteObjective;
+import CERP.model.RouteOption;
 import CERP.model.RouteResult;
+import CERP.model.ScheduledRoute;
 import CERP.model.TravelMode;
 import CERP.model.TravelSegment;
-import CERP.repository.RouteRepository;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalTime;
 import java.util.*;
+import java.util.function.Supplier;
 
 @Service
 public class RoutePlanningService {
-    private final RouteRepository routeRepository;
+    private final TransitGraphService transitGraphService;
+    private final RouteCache routeCache;
+    private final PlannerExecutor plannerExecutor;
+    private final PlannerMetrics plannerMetrics;
     private static final double WALK_SPEED = 5.0 * 1000 / 60;
     private static final double MAX_WALK_DISTANCE = 2000;
-    private static final double WAGE_PER_MINUTE = 0.83;
-    private static final double MAX_TRANSFER_DISTANCE = 1000;
-    private static final int MAX_NEARBY_STATIONS = 5;
-
-    public RoutePlanningService(RouteRepository routeRepository) {
-        this.routeRepository = routeRepository;
+    static final double WAGE_PER_MINUTE = 0.83;
+    static final int MAX_NEARBY_STATIONS = 5;
+    private static final int MAX_RIDES = 8;
+    private static final int MAX_LABELS_PER_STATION = 8;
+    private static final int MAX_LABELS = 20_000;
+    private static final int MAX_ROUTE_OPTIONS = 6;
+    // smaller batch groups are cheaper to plan one query at a time than with a full tree per origin station
+    private static final int MIN_ONE_TO_MANY_GROUP = 4;
+    private static final int MAX_MATRIX_CELLS = 4_000_000;
+    private final AStarRouter aStarRouter = new AStarRouter(WAGE_PER_MINUTE);
+    private final RaptorRouter raptorRouter = new RaptorRouter(WAGE_PER_MINUTE, MAX_RIDES);
+    private final ParetoRouter paretoRouter = new ParetoRouter(MAX_LABELS_PER_STATION, MAX_LABELS, MAX_ROUTE_OPTIONS);
+    private final IsochroneRouter isochroneRouter = new IsochroneRouter();
+    private final MatrixRouter matrixRouter = new MatrixRouter(WAGE_PER_MINUTE);
+    private final ConnectionScanRouter connectionScanRouter = new ConnectionScanRouter();
+
+    public RoutePlanningService(TransitGraphService transitGraphService, RouteCache routeCache,
+                                PlannerExecutor plannerExecutor, PlannerMetrics plannerMetrics) {
+        this.transitGraphService = transitGraphService;
+        this.routeCache = routeCache;
+        this.plannerExecutor = plannerExecutor;
+        this.plannerMetrics = plannerMetrics;
     }
 
 
     public RouteResult findShortestPath(double startLat, double startLon, double endLat, double endLon) {
-        double directDistance = calculateDistance(startLat, startLon, endLat, endLon);
+        QueryTrace trace = plannerMetrics.start(RouteObjective.FASTEST);
+        try {
+            return findShortestPath(trace, startLat, startLon, endLat, endLon);
+        } finally {
+            plannerMetrics.finish(trace);
+        }
+    }
+
+    private RouteResult findShortestPath(QueryTrace trace, double startLat, double startLon, double endLat, double endLon) {
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
         // find nearest stations and then process on them
-        List<Station> nearestStartStations = findNearestStations(startLat, startLon, 5);
-        List<Station> nearestEndStations = findNearestStations(endLat, endLon, 5);
-        double estimatedWalkDistance = calculateDistance(startLat, startLon, nearestStartStations.get(0).getLatitude(), nearestStartStations.get(0).getLongitude())
-                + calculateDistance(endLat, endLon, nearestEndStations.get(0).getLatitude(), nearestEndStations.get(0).getLongitude());
-
-        if (directDistance <= estimatedWalkDistance) {
-            double walkDuration = directDistance / WALK_SPEED;
-            List<TravelSegment> directWalk = Collections.singletonList(
-                    new TravelSegment(TravelMode.WALK, null, null, null, startLat, startLon, endLat, endLon, walkDuration)
-            );
-            double totalCost = calculateMoneyCost(directWalk);
-            return new RouteResult(directWalk, totalCost);
-        }
-
-        record PathResult(List<TravelSegment> path, double totalTime) {}
-
-        PathResult bestResult = nearestStartStations.parallelStream()
-            .flatMap(startStation -> nearestEndStations.stream()
-                .map(endStation -> {
-                    List<Station> path = findShortestPathBetweenStations(startStation, endStation);
-                    if (path != null) {
-                        List<TravelSegment> fullPath = createFullPath(startLat, startLon, path, endLat, endLon);
-                        double totalTime = calculateTotalTime(fullPath);
-                        return new PathResult(fullPath, totalTime);
-                    }
-                    return null;
-                }))
-            .filter(Objects::nonNull)
-            .min(Comparator.comparingDouble(PathResult::totalTime))
-            .orElse(null);
-
-        if (bestResult != null) {
-            double totalCost = calculateMoneyCost(bestResult.path);
-            return new RouteResult(bestResult.path, totalCost);
+        long mark = System.nanoTime();
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        List<Station> nearestEndStations = findNearestStations(graph, endLat, endLon, MAX_NEARBY_STATIONS);
+        mark = trace.lap(QueryTrace.Phase.NEAREST, mark);
+        RouteResult directWalk = findDirectWalk(startLat, startLon, nearestStartStations, endLat, endLon, nearestEndStations);
+        if (directWalk != null) {
+            return directWalk;
+        }
+
+        RouteCache.Key key = routeCache.key("fastest", snapshot.getVersion(), nearestStartStations, nearestEndStations);
+        RouteCache.CachedRoute route = routeCache.get(key, () -> {
+            long searchStart = trace.beginSearch();
+            GraphPath path = findShortestPathBetweenStations(snapshot, startLat, startLon, nearestStartStations,
+                    endLat, endLon, nearestEndStations);
+            long searchEnd = trace.endSearch(searchStart, nearestStartStations.size(), nearestEndStations.size());
+            if (path == null) {
+                return null;
+            }
+            RouteCache.CachedRoute planned = createStationRoute(graph, path);
+            trace.lap(QueryTrace.Phase.FULL_PATH, searchEnd);
+            return planned;
+        });
+        mark = System.nanoTime();
+        if (route != null) {
+            List<TravelSegment> fullPath = createFullPath(startLat, startLon, route, endLat, endLon);
+            trace.lap(QueryTrace.Phase.FULL_PATH, mark);
+            return new RouteResult(fullPath, route.getMoneyCost());
         }
 
         return null; // 或者返回一个表示没有找到路径的结果
     }
 
     public RouteResult findMostCostEffectivePath(double startLat, double startLon, double endLat, double endLon) {
-        double directDistance = calculateDistance(startLat, startLon, endLat, endLon);
-        List<Station> nearestStartStations = findNearestStations(startLat, startLon, 5);
-        List<Station> nearestEndStations = findNearestStations(endLat, endLon, 5);
-        double estimatedWalkDistance = calculateDistance(startLat, startLon, nearestStartStations.get(0).getLatitude(), nearestStartStations.get(0).getLongitude())
-                + calculateDistance(endLat, endLon, nearestEndStations.get(0).getLatitude(), nearestEndStations.get(0).getLongitude());
-        if (directDistance <= estimatedWalkDistance) {
-            double walkDuration = directDistance / WALK_SPEED;
-            List<TravelSegment> directWalk = Collections.singletonList(
-                    new TravelSegment(TravelMode.WALK, null, null, null, startLat, startLon, endLat, endLon, walkDuration)
-            );
-            double totalCost = calculateMoneyCost(directWalk);
-            return new RouteResult(directWalk, totalCost);
-        }
-
-        record PathResult(List<TravelSegment> path, double totalCost) {}
-
-        PathResult bestResult = nearestStartStations.parallelStream()
-            .flatMap(startStation -> nearestEndStations.stream()
-                .map(endStation -> {
-                    List<Station> path = findMostCostEffectivePathBetweenStations(startStation, endStation);
-                    if (path != null) {
-                        List<TravelSegment> fullPath = createFullPath(startLat, startLon, path, endLat, endLon);
-                        double totalCost = calculateTotalCost(fullPath);
-                        return new PathResult(fullPath, totalCost);
-                    }
-                    return null;
-                }))
-            .filter(Objects::nonNull)
-            .min(Comparator.comparingDouble(PathResult::totalCost))
-            .orElse(null);
-
-        if (bestResult != null) {
-            double totalCost = calculateMoneyCost(bestResult.path);
-            return new RouteResult(bestResult.path, totalCost);
+        QueryTrace trace = plannerMetrics.start(RouteObjective.COST_EFFECTIVE);
+        try {
+            return findMostCostEffectivePath(trace, startLat, startLon, endLat, endLon);
+        } finally {
+            plannerMetrics.finish(trace);
         }
-
-        return null; // 或者返回一个表示没有找到路径的结果
     }
 
-    private List<Station> findMostCostEffectivePathBetweenStations(Station start, Station end) {
-        PriorityQueue<Node> openList = new PriorityQueue<>();
-        Set<Integer> closedList = new HashSet<>();
-        Map<Integer, Node> allNodes = new HashMap<>();
+    private RouteResult findMostCostEffectivePath(QueryTrace trace, double startLat, double startLon, double endLat, double endLon) {
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
+        long mark = System.nanoTime();
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        List<Station> nearestEndStations = findNearestStations(graph, endLat, endLon, MAX_NEARBY_STATIONS);
+        mark = trace.lap(QueryTrace.Phase.NEAREST, mark);
+        RouteResult directWalk = findDirectWalk(startLat, startLon, nearestStartStations, endLat, endLon, nearestEndStations);
+        if (directWalk != null) {
+            return directWalk;
+        }
 
-        Node startNode = new Node(start, null, 0, estimateCost(start, end));
-        openList.add(startNode);
-        allNodes.put(start.getStationId(), startNode);
+        RouteCache.Key key = routeCache.key("cost-effective", snapshot.getVersion(), nearestStartStations, nearestEndStations);
+        RouteCache.CachedRoute route = routeCache.get(key, () -> {
+            long searchStart = trace.beginSearch();
+            GraphPath path = findMostCostEffectivePathBetweenStations(snapshot, startLat, startLon, nearestStartStations,
+                    endLat, endLon, nearestEndStations);
+            long searchEnd = trace.endSearch(searchStart, nearestStartStations.size(), nearestEndStations.size());
+            if (path == null) {
+                return null;
+            }
+            RouteCache.CachedRoute planned = createStationRoute(graph, path);
+            trace.lap(QueryTrace.Phase.FULL_PATH, searchEnd);
+            return planned;
+        });
+        mark = System.nanoTime();
+        if (route != null) {
+            List<TravelSegment> fullPath = createFullPath(startLat, startLon, route, endLat, endLon);
+            trace.lap(QueryTrace.Phase.FULL_PATH, mark);
+            return new RouteResult(fullPath, route.getMoneyCost());
+        }
 
-        while (!openList.isEmpty()) {
-            Node current = openList.poll();
+        return null; // 或者返回一个表示没有找到路径的结果
+    }
 
-            if (current.station.getStationId() == end.getStationId()) {
-                return reconstructPath(current);
-            }
+    // the trade-offs between duration, money cost and transfers, fastest first
+    public List<RouteOption> findRouteOptions(double startLat, double startLon, double endLat, double endLon) {
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        List<Station> nearestEndStations = findNearestStations(graph, endLat, endLon, MAX_NEARBY_STATIONS);
+        RouteResult directWalk = findDirectWalk(startLat, startLon, nearestStartStations, endLat, endLon, nearestEndStations);
+        if (directWalk != null) {
+            return Collections.singletonList(walkOption(directWalk));
+        }
 
-            closedList.add(current.station.getStationId());
+        List<ParetoRouter.Journey> journeys = paretoRouter.paretoPaths(graph, snapshot.getLandmarks(),
+                toIndices(graph, nearestStartStations), walkDurations(startLat, startLon, nearestStartStations, 1),
+                toIndices(graph, nearestEndStations), walkDurations(endLat, endLon, nearestEndStations, 1));
+        List<RouteOption> options = new ArrayList<>(journeys.size());
+        for (ParetoRouter.Journey journey : journeys) {
+            List<TravelSegment> fullPath = createFullPath(startLat, startLon,
+                    createStationRoute(graph, journey.getPath()), endLat, endLon);
+            options.add(new RouteOption(fullPath, journey.getDuration(), journey.getFare(), journey.getTransfers()));
+        }
+        return options;
+    }
 
-            // 预先获取所有相邻路线
-            List<Route> adjacentRoutes = getAdjacentRoutes(current.station);
-            
-            for (Route route : adjacentRoutes) {
-                int neighborId = route.getToStationId();
-                if (closedList.contains(neighborId)) {
-                    continue;
-                }
+    /**
+     * The journey on the timetable that arrives first when leaving at the given time, waits included.
+     *
+     * @throws IllegalStateException when the timetable is not available
+     */
+    public ScheduledRoute findScheduledRoute(double startLat, double startLon, double endLat, double endLon,
+                                             LocalTime departure) {
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
+        Timetable timetable = requireTimetable(snapshot);
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        List<Station> nearestEndStations = findNearestStations(graph, endLat, endLon, MAX_NEARBY_STATIONS);
+        RouteResult directWalk = findDirectWalk(startLat, startLon, nearestStartStations, endLat, endLon, nearestEndStations);
+        if (directWalk != null) {
+            return scheduledWalk(directWalk, departure.toSecondOfDay());
+        }
 
-                double tentativeCost = current.gScore + calculateSegmentCost(route);
-
-                Node neighborNode = allNodes.computeIfAbsent(neighborId, k -> {
-                    Station neighbor = routeRepository.findStationById(neighborId);
-                    return new Node(neighbor, current, Double.MAX_VALUE, estimateCost(neighbor, end));
-                });
-
-                if (tentativeCost < neighborNode.gScore) {
-                    neighborNode.parent = current;
-                    neighborNode.gScore = tentativeCost;
-                    neighborNode.fScore = neighborNode.gScore + neighborNode.hScore;
-
-                    if (!openList.contains(neighborNode)) {
-                        openList.add(neighborNode);
-                    } else {
-                        // 更新优先队列中的节点
-                        openList.remove(neighborNode);
-                        openList.add(neighborNode);
-                    }
-                }
-            }
+        ConnectionScanRouter.Journey journey = connectionScanRouter.earliestArrival(timetable,
+                toIndices(graph, nearestStartStations), walkDurations(startLat, startLon, nearestStartStations, 1),
+                toIndices(graph, nearestEndStations), walkDurations(endLat, endLon, nearestEndStations, 1),
+                departure.toSecondOfDay());
+        return journey == null ? null : createScheduledRoute(graph, journey, startLat, startLon, endLat, endLon);
+    }
+
+    /**
+     * The journeys leaving between the two times that no other beats by leaving later and arriving no later,
+     * latest departure first.
+     *
+     * @throws IllegalArgumentException when the latest departure is before the earliest
+     * @throws IllegalStateException    when the timetable is not available
+     */
+    public List<ScheduledRoute> findDepartureProfile(double startLat, double startLon, double endLat, double endLon,
+                                                     LocalTime earliest, LocalTime latest) {
+        if (latest.isBefore(earliest)) {
+            throw new IllegalArgumentException("the latest departure is before the earliest");
+        }
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
+        Timetable timetable = requireTimetable(snapshot);
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        List<Station> nearestEndStations = findNearestStations(graph, endLat, endLon, MAX_NEARBY_STATIONS);
+        RouteResult directWalk = findDirectWalk(startLat, startLon, nearestStartStations, endLat, endLon, nearestEndStations);
+        if (directWalk != null) {
+            // a walk can start at any time, so the latest one beats all the others
+            return Collections.singletonList(scheduledWalk(directWalk, latest.toSecondOfDay()));
         }
 
-        return null;
+        List<ConnectionScanRouter.Journey> journeys = connectionScanRouter.profile(timetable,
+                toIndices(graph, nearestStartStations), walkDurations(startLat, startLon, nearestStartStations, 1),
+                toIndices(graph, nearestEndStations), walkDurations(endLat, endLon, nearestEndStations, 1),
+                earliest.toSecondOfDay(), latest.toSecondOfDay());
+        List<ScheduledRoute> routes = new ArrayList<>(journeys.size());
+        for (ConnectionScanRouter.Journey journey : journeys) {
+            routes.add(createScheduledRoute(graph, journey, startLat, startLon, endLat, endLon));
+        }
+        return routes;
     }
 
-    private double calculateSegmentCost(Route route) {
-        double timeCost = route.getTravelTime() * WAGE_PER_MINUTE;
-        double transportCost = route.getLineType() == "metro" ? 0.5 : 0;
-        return timeCost + transportCost;
+    private static Timetable requireTimetable(GraphSnapshot snapshot) {
+        Timetable timetable = snapshot.getTimetable();
+        if (timetable == null) {
+            throw new IllegalStateException("no timetable for transit graph v" + snapshot.getVersion());
+        }
+        return timetable;
     }
 
-    private double estimateCost(Station current, Station end) {
-        double directDistance = calculateDistance(current.getLatitude(), current.getLongitude(),
-                                                  end.getLatitude(), end.getLongitude());
-        double estimatedSpeed = 30.0 * 1000 / 60;
-        double estimatedTime = directDistance / estimatedSpeed;
-        double estimatedCost = (directDistance / 5000) / 0.5;
-        return estimatedTime * WAGE_PER_MINUTE + estimatedCost; // only consider the time
+    private RouteOption walkOption(RouteResult directWalk) {
+        return new RouteOption(directWalk.getPath(), directWalk.getPath().get(0).getDuration(), 0, 0);
     }
 
-    private double calculateTotalCost(List<TravelSegment> path) {
-        double totalCost = 0;
-        int onBus = 0;
-        int onSubway = 0;
-        for (TravelSegment segment : path) {
-            double timeCost = segment.getDuration() * WAGE_PER_MINUTE;
-            double transportCost;
-            if(segment.getMode() == TravelMode.PUBLIC_TRANSPORT){
-                if(segment.getRoute().isSubway() && onSubway == 0){
-                    onBus = 0;
-                    onSubway = 1;
-                    transportCost = 2;
-                }else if(segment.getRoute().isSubway() && onSubway == 1){
-                    transportCost = 0.5;
-                }else if(onBus == 1){
-                    transportCost = 0;
-                }else{
-                    transportCost = 1;
-                    onBus = 1;
-                    onSubway = 0;
-                }
-            }else{
-                transportCost = 0;
-            }
-            totalCost += timeCost + transportCost;
-        }
-        return totalCost;
+    private ScheduledRoute scheduledWalk(RouteResult directWalk, int departure) {
+        double duration = directWalk.getPath().get(0).getDuration();
+        return new ScheduledRoute(directWalk.getPath(), timeOfDay(departure),
+                timeOfDay(departure + (int) Math.ceil(duration * 60)), duration, 0, 0);
     }
 
-    private double calculateMoneyCost(List<TravelSegment> path){
-        double totalCost = 0;
-        int onBus = 0;
-        int onSubway = 0;
-        for (TravelSegment segment : path) {
-            double transportCost;
-            if(segment.getMode() == TravelMode.PUBLIC_TRANSPORT){
-                if(segment.getRoute().isSubway() && onSubway == 0){
-                    onBus = 0;
-                    onSubway = 1;
-                    transportCost = 2;
-                }else if(segment.getRoute().isSubway() && onSubway == 1){
-                    transportCost = 0.5;
-                }else if(onBus == 1){
-                    transportCost = 0;
-                }else{
-                    transportCost = 1;
-                    onBus = 1;
-                    onSubway = 0;
-                }
-            }else{
-                transportCost = 0;
+    // the segments of the journey's path timed by the timetable, with a wait before every boarding that needs one
+    private ScheduledRoute createScheduledRoute(TransitGraph graph, ConnectionScanRouter.Journey journey,
+                                                double startLat, double startLon, double endLat, double endLon) {
+        RouteCache.CachedRoute stationRoute = createStationRoute(graph, journey.getPath());
+        List<Station> stations = stationRoute.getStations();
+        List<TravelSegment> segments = new ArrayList<>(stationRoute.getSegments().size() * 2);
+        Station first = stations.get(0);
+        double firstWalk = GeoMath.haversineMeters(startLat, startLon, first.getLatitude(), first.getLongitude()) / WALK_SPEED;
+        double time = journey.getDeparture() + firstWalk * 60;
+        for (int i = 0; i < stationRoute.getSegments().size(); i++) {
+            double wait = (journey.departureAt(i) - time) / 60;
+            // rounding the walks to whole seconds leaves waits of a fraction of a second
+            if (wait >= 1.0 / 60) {
+                Station station = stations.get(i);
+                segments.add(new TravelSegment(TravelMode.WAIT, null, station, station, station.getLatitude(),
+                        station.getLongitude(), station.getLatitude(), station.getLongitude(), wait));
             }
-            totalCost += transportCost;
+            TravelSegment segment = stationRoute.getSegments().get(i);
+            segment.setDuration((journey.arrivalAt(i) - journey.departureAt(i)) / 60.0);
+            segments.add(segment);
+            time = journey.arrivalAt(i);
         }
-        return totalCost;
+
+        RouteCache.CachedRoute timedRoute = new RouteCache.CachedRoute(stations, segments, stationRoute.getMoneyCost());
+        List<TravelSegment> fullPath = createFullPath(startLat, startLon, timedRoute, endLat, endLon);
+        return new ScheduledRoute(fullPath, timeOfDay(journey.getDeparture()), timeOfDay(journey.getArrival()),
+                (journey.getArrival() - journey.getDeparture()) / 60.0, stationRoute.getMoneyCost(),
+                journey.getTransfers());
     }
 
-    private List<Station> findNearestStations(double lat, double lon, int limit) {
-        return routeRepository.findNearestStations(lat, lon, limit);
+    // trips leaving late in the day arrive after midnight
+    private static LocalTime timeOfDay(int seconds) {
+        return LocalTime.ofSecondOfDay(Math.floorMod(seconds, 24 * 60 * 60));
     }
 
-    private List<Station> findShortestPathBetweenStations(Station start, Station end) {
-        PriorityQueue<Node> openList = new PriorityQueue<>();
-        Set<Integer> closedList = new HashSet<>();
-        Map<Integer, Node> allNodes = new HashMap<>();
+    // every station reachable within the time budget, in order of arrival, with the fare of its fastest path;
+    // maxCost leaves out stations whose fastest path costs more
+    public List<ReachableStation> findReachableStations(double startLat, double startLon, double maxMinutes, double maxCost) {
+        TransitGraph graph = transitGraphService.getGraph();
+        List<Station> nearestStartStations = findNearestStations(graph, startLat, startLon, MAX_NEARBY_STATIONS);
+        IsochroneRouter.Isochrone isochrone = isochroneRouter.reachable(graph, toIndices(graph, nearestStartStations),
+                walkDurations(startLat, startLon, nearestStartStations, 1), maxMinutes, maxCost);
+        List<ReachableStation> reachable = new ArrayList<>(isochrone.size());
+        for (int i = 0; i < isochrone.size(); i++) {
+            reachable.add(new ReachableStation(graph.station(isochrone.station(i)), isochrone.arrivalTime(i), isochrone.fare(i)));
+        }
+        return reachable;
+    }
 
-        Node startNode = new Node(start, null, 0, calculateHeuristic(start, end));
-        openList.add(startNode);
-        allNodes.put(start.getStationId(), startNode);
+    /**
+     * Durations and fares from every origin to every destination, each given as {lat, lon}. Pairs that the
+     * single-query planners would answer with a direct walk get its duration and no fare.
+     */
+    public RouteMatrix computeMatrix(RouteObjective objective, double[][] origins, double[][] destinations) {
+        if ((long) origins.length * destinations.length > MAX_MATRIX_CELLS) {
+            throw new IllegalArgumentException("matrix larger than " + MAX_MATRIX_CELLS + " cells");
+        }
+        TransitGraph graph = transitGraphService.getGraph();
+        int[][] sources = new int[origins.length][];
+        double[][] sourceTimes = new double[origins.length][];
+        double[] originWalks = new double[origins.length];
+        for (int i = 0; i < origins.length; i++) {
+            List<Station> stations = findNearestStations(graph, origins[i][0], origins[i][1], MAX_NEARBY_STATIONS);
+            sources[i] = toIndices(graph, stations);
+            sourceTimes[i] = walkDurations(origins[i][0], origins[i][1], stations, 1);
+            originWalks[i] = GeoMath.haversineMeters(origins[i][0], origins[i][1], stations.get(0).getLatitude(), stations.get(0).getLongitude());
+        }
+        int[][] targets = new int[destinations.length][];
+        double[][] targetTimes = new double[destinations.length][];
+        double[] destinationWalks = new double[destinations.length];
+        for (int j = 0; j < destinations.length; j++) {
+            List<Station> stations = findNearestStations(graph, destinations[j][0], destinations[j][1], MAX_NEARBY_STATIONS);
+            targets[j] = toIndices(graph, stations);
+            targetTimes[j] = walkDurations(destinations[j][0], destinations[j][1], stations, 1);
+            destinationWalks[j] = GeoMath.haversineMeters(destinations[j][0], destinations[j][1], stations.get(0).getLatitude(), stations.get(0).getLongitude());
+        }
 
-        while (!openList.isEmpty()) {
-            Node current = openList.poll();
+        double[] durations = new double[origins.length * destinations.length];
+        double[] moneyCosts = new double[durations.length];
+        matrixRouter.compute(graph, sources, sourceTimes, targets, targetTimes, objective == RouteObjective.COST_EFFECTIVE,
+                plannerExecutor.searchPool(), plannerExecutor.maxFanOut(), durations, moneyCosts);
+
+        for (int i = 0, cell = 0; i < origins.length; i++) {
+            for (int j = 0; j < destinations.length; j++, cell++) {
+                double directDistance = GeoMath.haversineMeters(origins[i][0], origins[i][1], destinations[j][0], destinations[j][1]);
+                if (directDistance <= originWalks[i] + destinationWalks[j]) {
+                    durations[cell] = directDistance / WALK_SPEED;
+                    moneyCosts[cell] = 0;
+                } else if (durations[cell] == Double.POSITIVE_INFINITY) {
+                    durations[cell] = -1;
+                    moneyCosts[cell] = -1;
+                }
+            }
+        }
+        return new RouteMatrix(origins.length, destinations.length, durations, moneyCosts);
+    }
 
-            if (current.station.getStationId() == end.getStationId()) {
-                return reconstructPath(current);
+    /**
+     * Plans a batch of OD pairs, returning the results in the same order with null where no route exists.
+     * Pairs whose origins snap to the same stations are answered from one search tree per origin station;
+     * the rest are planned like single queries. Both the trees and the pairs are planned on the search
+     * threads.
+     */
+    public List<RouteResult> planBatch(RouteObjective objective, List<OdPair> pairs) {
+        GraphSnapshot snapshot = transitGraphService.getSnapshot();
+        TransitGraph graph = snapshot.getGraph();
+        RouteResult[] results = new RouteResult[pairs.size()];
+        List<List<Station>> endStations = new ArrayList<>(Collections.nCopies(pairs.size(), null));
+        Map<List<Integer>, List<Integer>> groups = new LinkedHashMap<>();
+        Map<List<Integer>, List<Station>> groupStations = new HashMap<>();
+        for (int i = 0; i < pairs.size(); i++) {
+            OdPair pair = pairs.get(i);
+            List<Station> nearestStartStations = findNearestStations(graph, pair.getStartLat(), pair.getStartLon(), MAX_NEARBY_STATIONS);
+            List<Station> nearestEndStations = findNearestStations(graph, pair.getEndLat(), pair.getEndLon(), MAX_NEARBY_STATIONS);
+            results[i] = findDirectWalk(pair.getStartLat(), pair.getStartLon(), nearestStartStations,
+                    pair.getEndLat(), pair.getEndLon(), nearestEndStations);
+            if (results[i] == null) {
+                List<Integer> origin = new ArrayList<>(nearestStartStations.size());
+                for (Station station : nearestStartStations) {
+                    origin.add(station.getStationId());
+                }
+                Collections.sort(origin);
+                groups.computeIfAbsent(origin, k -> new ArrayList<>()).add(i);
+                groupStations.putIfAbsent(origin, nearestStartStations);
+                endStations.set(i, nearestEndStations);
             }
+        }
 
-            closedList.add(current.station.getStationId());
+        List<List<Integer>> treeGroups = new ArrayList<>();
+        List<Supplier<ShortestPathTree>> treeTasks = new ArrayList<>();
+        for (Map.Entry<List<Integer>, List<Integer>> group : groups.entrySet()) {
+            if (group.getValue().size() < MIN_ONE_TO_MANY_GROUP) {
+                continue;
+            }
+            treeGroups.add(group.getKey());
+            for (Station origin : groupStations.get(group.getKey())) {
+                int root = graph.indexOf(origin.getStationId());
+                treeTasks.add(() -> objective == RouteObjective.FASTEST
+                        ? ShortestPathTree.fastest(graph, root)
+                        : ShortestPathTree.cheapest(graph, root, WAGE_PER_MINUTE));
+            }
+        }
+        List<ShortestPathTree> builtTrees = plannerExecutor.search(treeTasks);
+        Map<List<Integer>, ShortestPathTree[]> trees = new HashMap<>();
+        int built = 0;
+        for (List<Integer> origin : treeGroups) {
+            int count = groupStations.get(origin).size();
+            trees.put(origin, builtTrees.subList(built, built + count).toArray(new ShortestPathTree[0]));
+            built += count;
+        }
 
-            for (Route route : getAdjacentRoutes(current.station)) {
-                Station neighbor = routeRepository.findStationById(route.getToStationId());
-                if (closedList.contains(neighbor.getStationId())) {
-                    continue;
+        List<Integer> planned = new ArrayList<>();
+        List<Supplier<RouteResult>> pairTasks = new ArrayList<>();
+        for (Map.Entry<List<Integer>, List<Integer>> group : groups.entrySet()) {
+            ShortestPathTree[] groupTrees = trees.get(group.getKey());
+            List<Station> origins = groupStations.get(group.getKey());
+            for (int i : group.getValue()) {
+                OdPair pair = pairs.get(i);
+                planned.add(i);
+                if (groupTrees != null) {
+                    pairTasks.add(() -> findPathInTrees(graph, groupTrees, origins, endStations.get(i), pair, objective));
+                } else {
+                    pairTasks.add(() -> objective == RouteObjective.FASTEST
+                            ? findShortestPath(pair.getStartLat(), pair.getStartLon(), pair.getEndLat(), pair.getEndLon())
+                            : findMostCostEffectivePath(pair.getStartLat(), pair.getStartLon(), pair.getEndLat(), pair.getEndLon()));
                 }
+            }
+        }
+        List<RouteResult> plannedResults = plannerExecutor.search(pairTasks);
+        for (int k = 0; k < planned.size(); k++) {
+            results[planned.get(k)] = plannedResults.get(k);
+        }
+        return Arrays.asList(results);
+    }
 
-                double tentativeGScore = current.gScore + route.getTravelTime();
+    private RouteResult findPathInTrees(TransitGraph graph, ShortestPathTree[] trees, List<Station> origins,
+                                        List<Station> destinations, OdPair pair, RouteObjective objective) {
+        double costPerMinute = objective == RouteObjective.FASTEST ? 1 : WAGE_PER_MINUTE;
+        double[] sourceCosts = walkDurations(pair.getStartLat(), pair.getStartLon(), origins, costPerMinute);
+        int[] targets = toIndices(graph, destinations);
+        double[] targetCosts = walkDurations(pair.getEndLat(), pair.getEndLon(), destinations, costPerMinute);
+
+        ShortestPathTree bestTree = null;
+        int bestTarget = -1;
+        double bestCost = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < trees.length; s++) {
+            for (int t = 0; t < targets.length; t++) {
+                double cost = sourceCosts[s] + trees[s].costTo(targets[t]) + targetCosts[t];
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestTree = trees[s];
+                    bestTarget = targets[t];
+                }
+            }
+        }
+        if (bestTree == null) {
+            return null;
+        }
+        RouteCache.CachedRoute route = createStationRoute(graph, bestTree.pathTo(bestTarget));
+        List<TravelSegment> fullPath = createFullPath(pair.getStartLat(), pair.getStartLon(), route,
+                pair.getEndLat(), pair.getEndLon());
+        return new RouteResult(fullPath, route.getMoneyCost());
+    }
 
-                Node neighborNode = allNodes.getOrDefault(neighbor.getStationId(),
-                    new Node(neighbor, current, Double.MAX_VALUE, calculateHeuristic(neighbor, end)));
-                allNodes.put(neighbor.getStationId(), neighborNode);
+    // walking straight there, when that is no longer than walking to and from the nearest stations
+    private RouteResult findDirectWalk(double startLat, double startLon, List<Station> nearestStartStations,
+                                       double endLat, double endLon, List<Station> nearestEndStations) {
+        double directDistance = GeoMath.haversineMeters(startLat, startLon, endLat, endLon);
+        double estimatedWalkDistance = GeoMath.haversineMeters(startLat, startLon, nearestStartStations.get(0).getLatitude(), nearestStartStations.get(0).getLongitude())
+                + GeoMath.haversineMeters(endLat, endLon, nearestEndStations.get(0).getLatitude(), nearestEndStations.get(0).getLongitude());
+        if (directDistance > estimatedWalkDistance) {
+            return null;
+        }
+        double walkDuration = directDistance / WALK_SPEED;
+        List<TravelSegment> directWalk = Collections.singletonList(
+                new TravelSegment(TravelMode.WALK, null, null, null, startLat, startLon, endLat, endLon, walkDuration)
+        );
+        return new RouteResult(directWalk, 0);
+    }
 
-                if (tentativeGScore < neighborNode.gScore) {
-                    neighborNode.parent = current;
-                    neighborNode.gScore = tentativeGScore;
-                    neighborNode.fScore = neighborNode.gScore + neighborNode.hScore;
+    private GraphPath findMostCostEffectivePathBetweenStations(GraphSnapshot snapshot,
+                                                                   double startLat, double startLon, List<Station> startStations,
+                                                                   double endLat, double endLon, List<Station> endStations) {
+        TransitGraph graph = snapshot.getGraph();
+        // walking time is valued at the same wage as riding time, fares follow the rules of RaptorRouter
+        return raptorRouter.cheapestPath(graph, snapshot.getLandmarks(),
+                toIndices(graph, startStations), walkDurations(startLat, startLon, startStations, WAGE_PER_MINUTE),
+                toIndices(graph, endStations), walkDurations(endLat, endLon, endStations, WAGE_PER_MINUTE));
+    }
 
-                    if (!openList.contains(neighborNode)) {
-                        openList.add(neighborNode);
-                    }
-                }
-            }
+    List<Station> findNearestStations(TransitGraph graph, double lat, double lon, int limit) {
+        StationSpatialIndex index = graph.getSpatialIndex();
+        int[] nearest = index.nearestPerLine(lat, lon, limit, MAX_WALK_DISTANCE);
+        if (nearest.length == 0) {
+            // nothing within walking distance, fall back to the nearest stations regardless of distance
+            nearest = index.nearestPerLine(lat, lon, limit);
         }
+        return toStations(graph, nearest);
+    }
 
-        return null;
+    private GraphPath findShortestPathBetweenStations(GraphSnapshot snapshot,
+                                                          double startLat, double startLon, List<Station> startStations,
+                                                          double endLat, double endLon, List<Station> endStations) {
+        TransitGraph graph = snapshot.getGraph();
+        int[] sources = toIndices(graph, startStations);
+        double[] sourceCosts = walkDurations(startLat, startLon, startStations, 1);
+        int[] targets = toIndices(graph, endStations);
+        double[] targetCosts = walkDurations(endLat, endLon, endStations, 1);
+
+        ContractionHierarchy hierarchy = snapshot.getHierarchy();
+        return hierarchy != null
+                ? hierarchy.shortestPath(sources, sourceCosts, targets, targetCosts)
+                : aStarRouter.fastestPath(graph, snapshot.getLandmarks(), sources, sourceCosts, targets, targetCosts);
     }
 
-    private double calculateHeuristic(Station current, Station end) {
-        double directDistance = calculateDistance(current.getLatitude(), current.getLongitude(),
-                                                  end.getLatitude(), end.getLongitude());
-        double estimatedSpeed = 30.0 * 1000 / 60;
-        return directDistance / estimatedSpeed;
+    private int[] toIndices(TransitGraph graph, List<Station> stations) {
+        int[] indices = new int[stations.size()];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = graph.indexOf(stations.get(i).getStationId());
+        }
+        return indices;
     }
 
-    private List<Route> getAdjacentRoutes(Station station) {
-        return routeRepository.findRoutesByFromStationId(station.getStationId());
+    private double[] walkDurations(double lat, double lon, List<Station> stations, double costPerMinute) {
+        double[] costs = new double[stations.size()];
+        for (int i = 0; i < costs.length; i++) {
+            Station station = stations.get(i);
+            double walkDistance = GeoMath.haversineMeters(lat, lon, station.getLatitude(), station.getLongitude());
+            costs[i] = walkDistance / WALK_SPEED * costPerMinute;
+        }
+        return costs;
     }
 
-    private List<Station> reconstructPath(Node endNode) {
-        List<Station> path = new ArrayList<>();
-        Node current = endNode;
-        while (current != null) {
-            path.add(current.station);
-            current = current.parent;
+    private List<Station> toStations(TransitGraph graph, int[] indexPath) {
+        if (indexPath == null) {
+            return null;
+        }
+        List<Station> path = new ArrayList<>(indexPath.length);
+        for (int index : indexPath) {
+            path.add(graph.station(index));
         }
-        Collections.reverse(path);
         return path;
     }
 
-    private List<TravelSegment> createFullPath(double startLat, double startLon, List<Station> stationPath, double endLat, double endLon) {
-        List<TravelSegment> fullPath = new ArrayList<>();
+    // walks to and from the exact coordinates around the station-to-station part of a route
+    List<TravelSegment> createFullPath(double startLat, double startLon, RouteCache.CachedRoute route, double endLat, double endLon) {
+        List<Station> stationPath = route.getStations();
+        List<TravelSegment> fullPath = new ArrayList<>(route.getSegments().size() + 2);
 
         //add the segment that from origin to first station
         Station firstStation = stationPath.get(0);
-        double walkDistance = calculateDistance(startLat, startLon, firstStation.getLatitude(), firstStation.getLongitude());
+        double walkDistance = GeoMath.haversineMeters(startLat, startLon, firstStation.getLatitude(), firstStation.getLongitude());
         double walkDuration = walkDistance / WALK_SPEED;
         fullPath.add(new TravelSegment(TravelMode.WALK, null, null, firstStation, startLat, startLon,
                                        firstStation.getLatitude(), firstStation.getLongitude(), walkDuration));
 
-        for (int i = 0; i < stationPath.size() - 1; i++) {
+        fullPath.addAll(route.getSegments());
+
+        // last walk
+        Station lastStation = stationPath.get(stationPath.size() - 1);
+        addWalkSegment(fullPath, lastStation.getLatitude(), lastStation.getLongitude(), endLat, endLon, lastStation, null);
+        return fullPath;
+    }
+
+    // the segments between the stations of a path, taken from the edges it travels and priced in the same pass
+    RouteCache.CachedRoute createStationRoute(TransitGraph graph, GraphPath path) {
+        List<Station> stationPath = new ArrayList<>(path.stationCount());
+        for (int i = 0; i < path.stationCount(); i++) {
+            stationPath.add(graph.station(path.station(i)));
+        }
+
+        List<TravelSegment> segments = new ArrayList<>(path.edgeCount());
+        double totalCost = 0;
+        int onBus = 0;
+        int onSubway = 0;
+        for (int i = 0; i < path.edgeCount(); i++) {
             Station from = stationPath.get(i);
             Station to = stationPath.get(i + 1);
-            Route route = findRouteBetweenStations(from, to);
+            int edge = path.edge(i);
 
-            if (route == null) {
-                // add walk to transfer segment
-                addWalkSegment(fullPath, from.getLatitude(), from.getLongitude(), to.getLatitude(), to.getLongitude(), from, to);
-            }else{
-               fullPath.add(new TravelSegment(TravelMode.PUBLIC_TRANSPORT, route, from, to,
+            if (graph.edgeLineType(edge) == TransitGraph.TRANSFER) {
+                // walk to transfer, which costs nothing and keeps the fare
+                segments.add(new TravelSegment(TravelMode.WALK, null, from, to, from.getLatitude(), from.getLongitude(),
+                                               to.getLatitude(), to.getLongitude(), graph.edgeTravelTime(edge)));
+                continue;
+            }
+            Route route = graph.edgeRoute(path.station(i), edge);
+            segments.add(new TravelSegment(TravelMode.PUBLIC_TRANSPORT, route, from, to,
                                            from.getLatitude(), from.getLongitude(),
                                            to.getLatitude(), to.getLongitude(), route.getTravelTime()));
+            double transportCost;
+            if(route.isSubway() && onSubway == 0){
+                onBus = 0;
+                onSubway = 1;
+                transportCost = 2;
+            }else if(route.isSubway() && onSubway == 1){
+                transportCost = 0.5;
+            }else if(onBus == 1){
+                transportCost = 0;
+            }else{
+                transportCost = 1;
+                onBus = 1;
+                onSubway = 0;
             }
-
+            totalCost += transportCost;
         }
-
-        // last walk
-        Station lastStation = stationPath.get(stationPath.size() - 1);
-        addWalkSegment(fullPath, lastStation.getLatitude(), lastStation.getLongitude(), endLat, endLon, lastStation, null);
-        return fullPath;
+        return new RouteCache.CachedRoute(stationPath, segments, totalCost);
     }
 
     private void addWalkSegment(List<TravelSegment> path, double startLat, double startLon,
                                 double endLat, double endLon, Station from, Station to) {
-        double walkDistance = calculateDistance(startLat, startLon, endLat, endLon);
+        double walkDistance = GeoMath.haversineMeters(startLat, startLon, endLat, endLon);
         double walkDuration = walkDistance / WALK_SPEED;
         path.add(new TravelSegment(TravelMode.WALK, null, from, to, startLat, startLon, endLat, endLon, walkDuration));
     }
-
-    private double calculateTotalTime(List<TravelSegment> path) {
-        return path.stream().mapToDouble(TravelSegment::getDuration).sum();
-    }
-
-    private Route findRouteBetweenStations(Station from, Station to) {
-        try {
-            return routeRepository.findRouteBetweenStations(from.getStationId(), to.getStationId());
-        } catch (Exception e) {
-            // return null if no such route
-            return null;
-        }
-    }
-
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        double R = 6371000;
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat/2) * Math.sin(dLat/2) +
-                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
-                   Math.sin(dLon/2) * Math.sin(dLon/2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
-        return R * c;
-    }
-
-    private static class Node implements Comparable<Node> {
-        Station station;
-        Node parent;
-        double gScore;
-        double hScore;
-        double fScore;
-
-        Node(Station station, Node parent, double gScore, double hScore) {
-            this.station = station;
-            this.parent = parent;
-            this.gScore = gScore;
-            this.hScore = hScore;
-            this.fScore = gScore + hScore;
-        }
-
-        @Override
-        public int compareTo(Node other) {
-            return Double.compare(this.fScore, other.fScore);
-        }
-    }
-}
\ No newline at end of file
+}
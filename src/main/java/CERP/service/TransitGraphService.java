@@ -0,0 +1,356 @@
+package CERP.service;
+
+import CERP.graph.AStarRouter;
+import CERP.graph.ContractionHierarchy;
+import CERP.graph.GraphDelta;
+import CERP.graph.GraphFile;
+import CERP.graph.GraphSnapshot;
+import CERP.graph.LandmarkReport;
+import CERP.graph.Landmarks;
+import CERP.graph.Timetable;
+import CERP.graph.TransitGraph;
+import CERP.repository.RouteRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the current {@link GraphSnapshot}. Reloads rebuild the graph from the repository on a background
+ * thread and publish the new snapshot through a single volatile write, so queries never wait for a
+ * rebuild and searches already running finish on the snapshot they started with.
+ * <p>
+ * The first snapshot comes from the exported graph file when one is configured and valid, so startup does
+ * not depend on the database; reloads always read the database.
+ * <p>
+ * Deltas change travel times, close routes or add transfers on the live graph and are published right
+ * away. The contraction hierarchy cannot be patched, so it is dropped and fastest routes use A* until it
+ * is rebuilt in the background; landmarks are kept while the delta only makes edges slower, as their
+ * bounds stay valid. A reload from the database discards all deltas applied so far. The timetable is derived
+ * from travel times too and is rebuilt along with the hierarchy.
+ */
+@Service
+public class TransitGraphService {
+    private static final Logger log = LoggerFactory.getLogger(TransitGraphService.class);
+    private static final double MAX_TRANSFER_DISTANCE = 1000;
+
+    private final RouteRepository routeRepository;
+    private final Path hierarchyFile;
+    private final Path graphFile;
+    private final int landmarkReportQueries;
+    private final long reloadIntervalMinutes;
+    private final int busHeadwaySeconds;
+    private final int metroHeadwaySeconds;
+    private final int firstDeparture;
+    private final int lastDeparture;
+    private final AtomicLong nextVersion = new AtomicLong(1);
+    private final AtomicReference<CompletableFuture<GraphSnapshot>> pendingReload = new AtomicReference<>();
+    private final AtomicBoolean repairPending = new AtomicBoolean();
+    private final ScheduledExecutorService reloader = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "graph-reload");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile GraphSnapshot snapshot;
+
+    public TransitGraphService(RouteRepository routeRepository,
+                               @Value("${cerp.graph.hierarchy-file:}") String hierarchyFile,
+                               @Value("${cerp.graph.file:}") String graphFile,
+                               @Value("${cerp.graph.landmark-report-queries:0}") int landmarkReportQueries,
+                               @Value("${cerp.graph.reload-interval-minutes:0}") long reloadIntervalMinutes,
+                               @Value("${cerp.timetable.bus-headway-minutes:10}") int busHeadwayMinutes,
+                               @Value("${cerp.timetable.metro-headway-minutes:5}") int metroHeadwayMinutes,
+                               @Value("${cerp.timetable.first-departure:05:30}") String firstDeparture,
+                               @Value("${cerp.timetable.last-departure:23:30}") String lastDeparture) {
+        this.routeRepository = routeRepository;
+        this.hierarchyFile = hierarchyFile.isBlank() ? null : Path.of(hierarchyFile);
+        this.graphFile = graphFile.isBlank() ? null : Path.of(graphFile);
+        this.landmarkReportQueries = landmarkReportQueries;
+        this.reloadIntervalMinutes = reloadIntervalMinutes;
+        this.busHeadwaySeconds = busHeadwayMinutes * 60;
+        this.metroHeadwaySeconds = metroHeadwayMinutes * 60;
+        this.firstDeparture = LocalTime.parse(firstDeparture).toSecondOfDay();
+        this.lastDeparture = LocalTime.parse(lastDeparture).toSecondOfDay();
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            getSnapshot();
+        } catch (Exception e) {
+            // keep the application up, the snapshot is loaded again on the first route request
+            log.error("failed to load transit graph at startup: {}", e.getMessage());
+        }
+        if (reloadIntervalMinutes > 0) {
+            reloader.scheduleWithFixedDelay(this::reload, reloadIntervalMinutes, reloadIntervalMinutes, TimeUnit.MINUTES);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        reloader.shutdownNow();
+    }
+
+    public GraphSnapshot getSnapshot() {
+        GraphSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = buildSnapshot(null);
+                    snapshot = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Rebuilds the graph from the repository in the background and publishes it once it is complete.
+     * A reload requested while another one runs joins that one.
+     */
+    public CompletableFuture<GraphSnapshot> reload() {
+        while (true) {
+            CompletableFuture<GraphSnapshot> pending = pendingReload.get();
+            if (pending != null) {
+                return pending;
+            }
+            CompletableFuture<GraphSnapshot> reload = new CompletableFuture<>();
+            if (pendingReload.compareAndSet(null, reload)) {
+                reloader.execute(() -> {
+                    try {
+                        GraphSnapshot next = buildSnapshot(snapshot);
+                        // publishing under the lock keeps a first load that is still running from overwriting it
+                        synchronized (this) {
+                            snapshot = next;
+                        }
+                        log.info("published transit graph v{}", next.getVersion());
+                        reload.complete(next);
+                    } catch (Throwable e) {
+                        log.error("failed to reload transit graph, keeping the current one", e);
+                        reload.completeExceptionally(e);
+                    } finally {
+                        pendingReload.set(null);
+                    }
+                });
+                return reload;
+            }
+        }
+    }
+
+    /**
+     * Applies the delta to the current graph and publishes the result as a new version.
+     *
+     * @throws IllegalArgumentException when the delta refers to routes or stations the graph does not have
+     */
+    public GraphSnapshot applyDelta(GraphDelta delta) {
+        GraphSnapshot next;
+        synchronized (this) {
+            GraphSnapshot current = getSnapshot();
+            if (delta.isEmpty()) {
+                return current;
+            }
+            long start = System.nanoTime();
+            TransitGraph graph = current.getGraph().withDelta(delta, nextVersion.getAndIncrement());
+            Landmarks landmarks = onlySlower(current.getGraph(), delta) ? current.getLandmarks() : null;
+            next = new GraphSnapshot(graph, null, landmarks, null, Instant.now(),
+                    (System.nanoTime() - start) / 1_000_000);
+            snapshot = next;
+        }
+        log.info("published transit graph v{} with {} travel time changes, {} closed routes and {} new transfers",
+                next.getVersion(), delta.getTravelTimes().size(), delta.getClosedRoutes().size(),
+                delta.getTransfers().size());
+        scheduleRepair();
+        return next;
+    }
+
+    public TransitGraph getGraph() {
+        return getSnapshot().getGraph();
+    }
+
+    // true when no edge of the delta gets faster, so lower bounds of the old graph still hold
+    private static boolean onlySlower(TransitGraph graph, GraphDelta delta) {
+        if (!delta.getTransfers().isEmpty()) {
+            return false;
+        }
+        for (int e = 0, m = graph.edgeCount(); e < m; e++) {
+            int routeId = graph.edgeRouteId(e);
+            Double travelTime = routeId < 0 ? null : delta.getTravelTimes().get(routeId);
+            if (travelTime != null && travelTime < graph.edgeTravelTime(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // rebuilds the speedup data and timetable a delta dropped; repairs requested while one is queued share it
+    private void scheduleRepair() {
+        if (repairPending.compareAndSet(false, true)) {
+            reloader.execute(this::repair);
+        }
+    }
+
+    private void repair() {
+        repairPending.set(false);
+        GraphSnapshot current = snapshot;
+        if (current == null || (current.getHierarchy() != null && current.getLandmarks() != null
+                && current.getTimetable() != null)) {
+            return;
+        }
+        try {
+            long start = System.nanoTime();
+            TransitGraph graph = current.getGraph();
+            ContractionHierarchy hierarchy = current.getHierarchy() != null ? current.getHierarchy() : buildHierarchy(graph);
+            Landmarks landmarks = current.getLandmarks() != null ? current.getLandmarks() : buildLandmarks(graph);
+            Timetable timetable = current.getTimetable() != null ? current.getTimetable() : buildTimetable(graph);
+            synchronized (this) {
+                // a newer delta or reload replaced the graph meanwhile and schedules its own repair
+                if (snapshot != current) {
+                    return;
+                }
+                snapshot = new GraphSnapshot(graph, hierarchy, landmarks, timetable, current.getBuiltAt(),
+                        current.getBuildMillis() + (System.nanoTime() - start) / 1_000_000);
+            }
+            log.info("rebuilt the speedup data of transit graph v{}", current.getVersion());
+        } catch (Throwable e) {
+            log.error("failed to rebuild the speedup data of transit graph v{}", current.getVersion(), e);
+        }
+    }
+
+    // the hierarchy and landmarks are reused from the previous snapshot when the edges and their weights are unchanged
+    private GraphSnapshot buildSnapshot(GraphSnapshot previous) {
+        long start = System.nanoTime();
+        TransitGraph graph = previous == null ? loadFile() : null;
+        if (graph == null) {
+            graph = load();
+        }
+        if (previous != null && previous.getGraph().getFingerprint() == graph.getFingerprint()) {
+            log.info("edges of transit graph v{} are unchanged, reusing the speedup data of v{}", graph.getVersion(),
+                    previous.getVersion());
+            // the timetable is always rebuilt: its trips follow line ids the fingerprint does not cover, and it
+            // refers to the graph it was built for
+            return new GraphSnapshot(graph, previous.getHierarchy(), previous.getLandmarks(), buildTimetable(graph),
+                    Instant.now(), (System.nanoTime() - start) / 1_000_000);
+        }
+        ContractionHierarchy hierarchy = loadHierarchy(graph);
+        Landmarks landmarks = buildLandmarks(graph);
+        Timetable timetable = buildTimetable(graph);
+        return new GraphSnapshot(graph, hierarchy, landmarks, timetable, Instant.now(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // the configured graph file, or null when there is none or it cannot be used
+    private TransitGraph loadFile() {
+        if (graphFile == null || !Files.isRegularFile(graphFile)) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            TransitGraph loaded = GraphFile.read(graphFile, nextVersion.getAndIncrement());
+            log.info("mapped transit graph v{} with {} stations and {} edges from {} in {} ms", loaded.getVersion(),
+                    loaded.stationCount(), loaded.edgeCount(), graphFile, (System.nanoTime() - start) / 1_000_000);
+            return loaded;
+        } catch (Exception e) {
+            log.warn("failed to read transit graph from {}, loading it from the database: {}", graphFile, e.getMessage());
+            return null;
+        }
+    }
+
+    // builds the graph from the database, transfers included
+    public TransitGraph load() {
+        long start = System.nanoTime();
+        TransitGraph loaded = TransitGraph.build(nextVersion.getAndIncrement(),
+                routeRepository.findAllStations(),
+                routeRepository.findAllRoutes(),
+                routeRepository.findAllLines(),
+                routeRepository.findAllLineStations(),
+                MAX_TRANSFER_DISTANCE);
+        log.info("loaded transit graph v{} with {} stations and {} edges in {} ms", loaded.getVersion(),
+                loaded.stationCount(), loaded.edgeCount(), (System.nanoTime() - start) / 1_000_000);
+        return loaded;
+    }
+
+    private Landmarks buildLandmarks(TransitGraph graph) {
+        try {
+            long start = System.nanoTime();
+            Landmarks landmarks = Landmarks.build(graph, RoutePlanningService.WAGE_PER_MINUTE);
+            log.info("built {} landmarks in {} ms", landmarks.count(), (System.nanoTime() - start) / 1_000_000);
+            if (landmarkReportQueries > 0) {
+                log.info("landmark heuristic over {} random queries, {}", landmarkReportQueries,
+                        LandmarkReport.compare(graph, landmarks, new AStarRouter(RoutePlanningService.WAGE_PER_MINUTE),
+                                landmarkReportQueries, 42));
+            }
+            return landmarks;
+        } catch (RuntimeException e) {
+            log.error("failed to build landmarks, A* falls back to the straight-line heuristic", e);
+            return null;
+        }
+    }
+
+    // reuses the hierarchy on disk when it was built for an identical graph, otherwise rebuilds and stores it
+    private ContractionHierarchy loadHierarchy(TransitGraph graph) {
+        if (hierarchyFile != null && Files.isRegularFile(hierarchyFile)) {
+            try {
+                ContractionHierarchy stored = ContractionHierarchy.readFrom(hierarchyFile);
+                if (stored.getGraphFingerprint() == graph.getFingerprint()) {
+                    log.info("loaded contraction hierarchy from {}", hierarchyFile);
+                    return stored;
+                }
+                log.info("contraction hierarchy in {} belongs to another graph, rebuilding", hierarchyFile);
+            } catch (Exception e) {
+                log.warn("failed to read contraction hierarchy from {}: {}", hierarchyFile, e.getMessage());
+            }
+        }
+
+        ContractionHierarchy hierarchy = buildHierarchy(graph);
+        if (hierarchy != null && hierarchyFile != null) {
+            try {
+                hierarchy.writeTo(hierarchyFile);
+            } catch (Exception e) {
+                log.warn("failed to store contraction hierarchy in {}: {}", hierarchyFile, e.getMessage());
+            }
+        }
+        return hierarchy;
+    }
+
+    private Timetable buildTimetable(TransitGraph graph) {
+        try {
+            long start = System.nanoTime();
+            Timetable timetable = Timetable.build(graph, busHeadwaySeconds, metroHeadwaySeconds, firstDeparture,
+                    lastDeparture);
+            log.info("built timetable with {} trips and {} connections in {} ms", timetable.tripCount(),
+                    timetable.connectionCount(), (System.nanoTime() - start) / 1_000_000);
+            return timetable;
+        } catch (RuntimeException e) {
+            log.error("failed to build timetable, departure-time queries are unavailable", e);
+            return null;
+        }
+    }
+
+    private ContractionHierarchy buildHierarchy(TransitGraph graph) {
+        try {
+            long start = System.nanoTime();
+            ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+            log.info("built contraction hierarchy with {} arcs in {} ms", hierarchy.arcCount(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return hierarchy;
+        } catch (RuntimeException e) {
+            log.error("failed to build contraction hierarchy, fastest routes fall back to A*", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package CERP.controller;
+
+import CERP.model.OdPair;
+import CERP.repository.InMemoryRouteRepository;
+import CERP.repository.SyntheticNetwork;
+import CERP.service.PlannerExecutor;
+import CERP.service.PlannerMetrics;
+import CERP.service.RouteCache;
+import CERP.service.RoutePlanningService;
+import CERP.service.TransitGraphService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RoutePlanningControllerTest {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private SyntheticNetwork network;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        network = new SyntheticNetwork(42, 16, 16, 2);
+        TransitGraphService transitGraphService = new TransitGraphService(new InMemoryRouteRepository(network),
+                "", "", 0, 0, 10, 5, "05:30", "23:30");
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RoutePlanningService service = new RoutePlanningService(transitGraphService, new RouteCache(registry, 0),
+                new PlannerExecutor(registry, 0, 0), new PlannerMetrics(registry, 0, Long.MAX_VALUE));
+        mockMvc = MockMvcBuilders.standaloneSetup(new RoutePlanningController(service, objectMapper)).build();
+    }
+
+    @Test
+    void batchAnswersEveryElementInOrder() throws Exception {
+        ArrayNode body = objectMapper.createArrayNode();
+        List<Integer> expectedCodes = new ArrayList<>();
+        for (OdPair pair : network.odPairs(12, 5)) {
+            ObjectNode element = body.addObject();
+            element.put("startLat", pair.getStartLat());
+            element.put("startLon", pair.getStartLon());
+            // strings as in the single-query bodies
+            element.put("endLat", Double.toString(pair.getEndLat()));
+            element.put("endLon", Double.toString(pair.getEndLon()));
+            expectedCodes.add(200);
+            // a malformed element after every few valid ones
+            if (expectedCodes.size() % 4 == 1) {
+                body.add("not a pair");
+                body.addObject().put("startLat", pair.getStartLat());
+                ObjectNode notANumber = body.addObject().setAll(element.deepCopy());
+                notANumber.put("endLon", "east");
+                expectedCodes.add(400);
+                expectedCodes.add(400);
+                expectedCodes.add(400);
+            }
+        }
+
+        List<JsonNode> lines = batch(objectMapper.writeValueAsString(body));
+        assertEquals(expectedCodes.size(), lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            assertEquals(i, lines.get(i).get("index").asInt());
+            assertEquals(expectedCodes.get(i), lines.get(i).get("code").asInt(), lines.get(i).toString());
+            assertEquals(expectedCodes.get(i) == 200, lines.get(i).get("data").isObject(), lines.get(i).toString());
+        }
+    }
+
+    @Test
+    void batchAnswersThePairsReadBeforeTheBodyBreaksOff() throws Exception {
+        OdPair pair = network.odPairs(1, 5).get(0);
+        String element = objectMapper.writeValueAsString(pair);
+        List<JsonNode> lines = batch("[" + element + ", " + element + ", {\"startLat\": ");
+
+        assertEquals(3, lines.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(i, lines.get(i).get("index").asInt());
+            assertEquals(200, lines.get(i).get("code").asInt());
+        }
+        assertFalse(lines.get(2).has("index"));
+        assertEquals(400, lines.get(2).get("code").asInt());
+    }
+
+    @Test
+    void matrixAnswersValidCoordinates() throws Exception {
+        OdPair pair = network.odPairs(1, 5).get(0);
+        Map<String, Object> request = Map.of(
+                "origins", List.of(Map.of("lat", pair.getStartLat(), "lon", pair.getStartLon())),
+                "destinations", List.of(Map.of("lat", Double.toString(pair.getEndLat()), "lon", pair.getEndLon())));
+        matrix(request).andExpect(status().isOk()).andExpect(jsonPath("$.code").value(200));
+    }
+
+    @Test
+    void matrixRejectsMalformedRequests() throws Exception {
+        Map<String, Object> point = Map.of("lat", 37.8, "lon", 112.5);
+        List<Map<String, Object>> requests = List.of(
+                Map.of("destinations", List.of(point)),
+                Map.of("origins", point, "destinations", List.of(point)),
+                Map.of("origins", List.of(37.8), "destinations", List.of(point)),
+                Map.of("origins", List.of(Map.of("lat", 37.8)), "destinations", List.of(point)),
+                Map.of("origins", List.of(Map.of("lat", "north", "lon", 112.5)), "destinations", List.of(point)),
+                Map.of("objective", "scenic", "origins", List.of(point), "destinations", List.of(point)));
+        for (Map<String, Object> request : requests) {
+            matrix(request).andExpect(status().isBadRequest()).andExpect(jsonPath("$.code").value(400));
+        }
+    }
+
+    @Test
+    void matrixRejectsTooManyCells() throws Exception {
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i < 2001; i++) {
+            points.add(Map.of("lat", 37.8, "lon", 112.5));
+        }
+        matrix(Map.of("origins", points, "destinations", points))
+                .andExpect(status().isBadRequest()).andExpect(jsonPath("$.code").value(400));
+    }
+
+    @Test
+    void profileRejectsALatestDepartureBeforeTheEarliest() throws Exception {
+        profile(mockMvc, "09:00", "08:00").andExpect(status().isBadRequest()).andExpect(jsonPath("$.code").value(400));
+    }
+
+    @Test
+    void profileIsUnavailableWhileTheTimetableIsRebuilt() throws Exception {
+        RoutePlanningService service = mock(RoutePlanningService.class);
+        when(service.findDepartureProfile(anyDouble(), anyDouble(), anyDouble(), anyDouble(), any(LocalTime.class),
+                any(LocalTime.class))).thenThrow(new IllegalStateException("no timetable for transit graph v2"));
+        MockMvc unavailable = MockMvcBuilders.standaloneSetup(new RoutePlanningController(service, objectMapper)).build();
+
+        profile(unavailable, "08:00", "09:00").andExpect(status().isServiceUnavailable())
+                .andExpect(jsonPath("$.code").value(503));
+    }
+
+    private ResultActions profile(MockMvc mvc, String earliest, String latest) throws Exception {
+        OdPair pair = network.odPairs(1, 5).get(0);
+        Map<String, String> request = Map.of("startLat", Double.toString(pair.getStartLat()),
+                "startLon", Double.toString(pair.getStartLon()), "endLat", Double.toString(pair.getEndLat()),
+                "endLon", Double.toString(pair.getEndLon()), "earliestDeparture", earliest, "latestDeparture", latest);
+        return mvc.perform(post("/api/route/profile").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+    }
+
+    private ResultActions matrix(Map<String, Object> request) throws Exception {
+        return mockMvc.perform(post("/api/route/matrix").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+    }
+
+    private List<JsonNode> batch(String body) throws Exception {
+        String response = mockMvc.perform(post("/api/route/batch").param("objective", "fastest")
+                        .contentType(MediaType.APPLICATION_JSON).content(body))
+                .andReturn().getResponse().getContentAsString(StandardCharsets.UTF_8);
+        List<JsonNode> lines = new ArrayList<>();
+        for (String line : response.split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,189 @@
+package CERP.graph;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.Route;
+import CERP.model.Station;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionScanRouterTest {
+    private static final int EIGHT = 8 * 3600;
+    // one trip per pattern: the first leaves within the headway after 08:00, and none may leave after it
+    private static final int HEADWAY = 3600;
+    private static final int BUS_ROUTE = 2;
+    private static final int METRO_ROUTE = 4;
+    private static final int WALK_ROUTE = 5;
+
+    private final ConnectionScanRouter router = new ConnectionScanRouter();
+
+    @Test
+    void buildsOneTripPerPattern() {
+        Timetable timetable = timetable(network());
+        assertEquals(2, timetable.patternCount());
+        assertEquals(2, timetable.tripCount());
+        assertEquals(4, timetable.connectionCount());
+        for (int c = 1; c < timetable.connectionCount(); c++) {
+            assertTrue(timetable.departure(c - 1) <= timetable.departure(c));
+        }
+    }
+
+    @Test
+    void earliestArrivalTakesTheTripArrivingFirst() {
+        TransitGraph graph = network();
+        Timetable timetable = timetable(graph);
+        int bus = start(timetable, edge(graph, 1));
+        int metro = start(timetable, edge(graph, METRO_ROUTE));
+
+        ConnectionScanRouter.Journey journey = earliest(timetable, 0, 2, EIGHT);
+        assertNotNull(journey);
+        assertEquals(Math.min(bus + 1200, metro + 720), journey.getArrival());
+        assertEquals(0, journey.getPath().first());
+        assertEquals(2, journey.getPath().last());
+
+        // too late for the trip that leaves first, so the other one
+        int missed = Math.min(bus, metro) + 1;
+        journey = earliest(timetable, 0, 2, missed);
+        if (bus < metro) {
+            assertEquals(metro + 720, journey.getArrival());
+        } else {
+            assertEquals(bus + 1200, journey.getArrival());
+        }
+        assertNull(earliest(timetable, 0, 2, Math.max(bus, metro) + 1));
+    }
+
+    @Test
+    void earliestArrivalWalksOnAfterARide() {
+        TransitGraph graph = network();
+        Timetable timetable = timetable(graph);
+        int bus = start(timetable, edge(graph, 1));
+
+        ConnectionScanRouter.Journey journey = earliest(timetable, 0, 4, EIGHT);
+        assertNotNull(journey);
+        assertEquals(bus + 600 + 300, journey.getArrival());
+        assertEquals(2, journey.getPath().edgeCount());
+        assertEquals(edge(graph, WALK_ROUTE), journey.getPath().edge(1));
+    }
+
+    @Test
+    void profileKeepsTheJourneysNoOtherBeats() {
+        TransitGraph graph = network();
+        Timetable timetable = timetable(graph);
+        int bus = start(timetable, edge(graph, 1));
+        int metro = start(timetable, edge(graph, METRO_ROUTE));
+
+        List<int[]> expected = new ArrayList<>();
+        int[][] trips = {{bus, bus + 1200}, {metro, metro + 720}};
+        for (int[] trip : trips) {
+            int[] other = trip == trips[0] ? trips[1] : trips[0];
+            if (!(other[0] >= trip[0] && other[1] <= trip[1])) {
+                expected.add(trip);
+            }
+        }
+        expected.sort((a, b) -> Integer.compare(b[0], a[0]));
+
+        List<ConnectionScanRouter.Journey> journeys = router.profile(timetable, new int[]{0}, new double[]{0},
+                new int[]{2}, new double[]{0}, EIGHT, EIGHT + HEADWAY);
+        assertEquals(expected.size(), journeys.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i)[0], journeys.get(i).getDeparture());
+            assertEquals(expected.get(i)[1], journeys.get(i).getArrival());
+        }
+    }
+
+    @Test
+    void closedRoutesAreNotRidden() {
+        TransitGraph graph = network();
+        int metroEdge = edge(graph, METRO_ROUTE);
+        TransitGraph closed = graph.withDelta(new GraphDelta().closeRoute(METRO_ROUTE), 2);
+        Timetable timetable = timetable(closed);
+        int bus = start(timetable, edge(closed, 1));
+
+        assertEquals(1, timetable.patternCount());
+        for (int c = 0; c < timetable.connectionCount(); c++) {
+            assertNotEquals(metroEdge, timetable.edge(c));
+        }
+        ConnectionScanRouter.Journey journey = earliest(timetable, 0, 2, EIGHT);
+        assertNotNull(journey);
+        assertEquals(bus + 1200, journey.getArrival());
+        List<ConnectionScanRouter.Journey> journeys = router.profile(timetable, new int[]{0}, new double[]{0},
+                new int[]{2}, new double[]{0}, EIGHT, EIGHT + HEADWAY);
+        assertEquals(1, journeys.size());
+        assertEquals(bus + 1200, journeys.get(0).getArrival());
+    }
+
+    @Test
+    void aClosedEdgeSplitsItsPattern() {
+        TransitGraph closed = network().withDelta(new GraphDelta().closeRoute(BUS_ROUTE), 2);
+        Timetable timetable = timetable(closed);
+
+        // the bus runs 1 -> 2 and 3 -> 4 on its own now, the metro still 1 -> 3
+        assertEquals(3, timetable.patternCount());
+        assertEquals(3, timetable.tripCount());
+        for (int c = 0; c < timetable.connectionCount(); c++) {
+            assertNotEquals(edge(closed, BUS_ROUTE), timetable.edge(c));
+            assertTrue(timetable.arrival(c) > timetable.departure(c));
+        }
+        ConnectionScanRouter.Journey journey = earliest(timetable, 0, 2, EIGHT);
+        assertNotNull(journey);
+        assertEquals(start(timetable, edge(closed, METRO_ROUTE)) + 720, journey.getArrival());
+    }
+
+    @Test
+    void closedFootpathsAreNotWalked() {
+        TransitGraph closed = network().withDelta(new GraphDelta().closeRoute(WALK_ROUTE), 2);
+        Timetable timetable = timetable(closed);
+
+        assertEquals(0, timetable.endFootpath(1) - timetable.firstFootpath(1));
+        assertNull(earliest(timetable, 0, 4, EIGHT));
+    }
+
+    private ConnectionScanRouter.Journey earliest(Timetable timetable, int from, int to, int departure) {
+        return router.earliestArrival(timetable, new int[]{from}, new double[]{0}, new int[]{to}, new double[]{0},
+                departure);
+    }
+
+    // a bus 1 -> 2 -> 3 -> 4 taking 10 minutes a stop, a metro 1 -> 3 taking 12, and a 5 minute walk 2 -> 5
+    private static TransitGraph network() {
+        List<Station> stations = List.of(station(1, 0), station(2, 5_000), station(3, 10_000), station(4, 15_000),
+                station(5, 5_400));
+        List<Route> routes = List.of(
+                new Route(1, 1, 2, 1, 10, 5_000, "bus"),
+                new Route(BUS_ROUTE, 2, 3, 1, 10, 5_000, "bus"),
+                new Route(3, 3, 4, 1, 10, 5_000, "bus"),
+                new Route(METRO_ROUTE, 1, 3, 2, 12, 10_000, "metro"),
+                new Route(WALK_ROUTE, 2, 5, 1, 5, 400, "transfer"));
+        List<Line> lines = List.of(new Line(1, "bus"), new Line(2, "metro"));
+        List<LineStation> lineStations = List.of(new LineStation(1, 1), new LineStation(1, 2),
+                new LineStation(1, 3), new LineStation(1, 4), new LineStation(2, 1), new LineStation(2, 3));
+        return TransitGraph.build(1, stations, routes, lines, lineStations, 0);
+    }
+
+    private static Timetable timetable(TransitGraph graph) {
+        return Timetable.build(graph, HEADWAY, HEADWAY, EIGHT, EIGHT + HEADWAY - 1);
+    }
+
+    private static int edge(TransitGraph graph, int routeId) {
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            if (graph.edgeRouteId(e) == routeId) {
+                return e;
+            }
+        }
+        throw new AssertionError("no edge for route " + routeId);
+    }
+
+    // when the single trip over the edge leaves from its first station
+    private static int start(Timetable timetable, int edge) {
+        for (int c = 0; c < timetable.connectionCount(); c++) {
+            if (timetable.edge(c) == edge) {
+                return timetable.departure(c);
+            }
+        }
+        throw new AssertionError("no connection over edge " + edge);
+    }
+}
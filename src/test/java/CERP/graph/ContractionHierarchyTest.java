@@ -0,0 +1,75 @@
+package CERP.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContractionHierarchyTest {
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    void shortestPathMatchesDijkstra() {
+        TransitGraph graph = synthetic(3, 14, 2);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+
+        Random random = new Random(11);
+        for (int query = 0; query < 300; query++) {
+            int from = random.nextInt(graph.stationCount());
+            int to = random.nextInt(graph.stationCount());
+            ShortestPathTree tree = ShortestPathTree.fastest(graph, from);
+            GraphPath path = hierarchy.shortestPath(new int[]{from}, new double[]{0}, new int[]{to}, new double[]{0});
+
+            if (Double.isInfinite(tree.costTo(to))) {
+                assertNull(path, from + " -> " + to);
+                continue;
+            }
+            assertNotNull(path, from + " -> " + to);
+            assertEquals(from, path.first());
+            assertEquals(to, path.last());
+            assertEquals(tree.costTo(to), travelTime(graph, path), EPSILON, from + " -> " + to);
+        }
+    }
+
+    @Test
+    void shortestPathPicksTheCheapestSourceAndTarget() {
+        TransitGraph graph = synthetic(5, 10, 1);
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+
+        Random random = new Random(13);
+        for (int query = 0; query < 100; query++) {
+            int[] sources = {random.nextInt(graph.stationCount()), random.nextInt(graph.stationCount())};
+            int[] targets = {random.nextInt(graph.stationCount()), random.nextInt(graph.stationCount())};
+            double[] sourceCosts = {random.nextDouble() * 10, random.nextDouble() * 10};
+            double[] targetCosts = {random.nextDouble() * 10, random.nextDouble() * 10};
+
+            double expected = Double.POSITIVE_INFINITY;
+            for (int s = 0; s < sources.length; s++) {
+                ShortestPathTree tree = ShortestPathTree.fastest(graph, sources[s]);
+                for (int t = 0; t < targets.length; t++) {
+                    expected = Math.min(expected, sourceCosts[s] + tree.costTo(targets[t]) + targetCosts[t]);
+                }
+            }
+            GraphPath path = hierarchy.shortestPath(sources, sourceCosts, targets, targetCosts);
+            if (Double.isInfinite(expected)) {
+                assertNull(path);
+                continue;
+            }
+            assertNotNull(path);
+            double actual = costOf(sources, sourceCosts, path.first()) + travelTime(graph, path)
+                    + costOf(targets, targetCosts, path.last());
+            assertEquals(expected, actual, EPSILON);
+        }
+    }
+
+    private static double travelTime(TransitGraph graph, GraphPath path) {
+        double time = 0;
+        for (int i = 0; i < path.edgeCount(); i++) {
+            assertEquals(path.station(i + 1), graph.edgeTarget(path.edge(i)));
+            time += graph.edgeTravelTime(path.edge(i));
+        }
+        return time;
+    }
+}
@@ -0,0 +1,112 @@
+package CERP.graph;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class GeoMathTest {
+    // rounding puts the chord of points metres apart a few parts per billion above the haversine
+    private static final double ROUNDING = 1e-8;
+
+    private final Random random = new Random(31);
+
+    @Test
+    void chordFallsShortOfTheHaversineByAtMostTheDocumentedError() {
+        for (double maxMeters : new double[]{2_000, 10_000, 50_000, 200_000}) {
+            for (int pair = 0; pair < 10_000; pair++) {
+                double lat = (random.nextDouble() * 2 - 1) * 85;
+                double lon = (random.nextDouble() * 2 - 1) * 180;
+                double bearing = random.nextDouble() * 2 * Math.PI;
+                double meters = random.nextDouble() * maxMeters;
+                double otherLat = Math.max(-85, Math.min(85, lat + Math.toDegrees(meters * Math.cos(bearing)
+                        / GeoMath.EARTH_RADIUS_METERS)));
+                double otherLon = lon + Math.toDegrees(meters * Math.sin(bearing)
+                        / (GeoMath.EARTH_RADIUS_METERS * Math.cos(Math.toRadians(lat))));
+
+                double haversine = GeoMath.haversineMeters(lat, lon, otherLat, otherLon);
+                double chord = chord(lat, lon, otherLat, otherLon);
+                double theta = haversine / GeoMath.EARTH_RADIUS_METERS;
+                String where = lat + ", " + lon + " -> " + otherLat + ", " + otherLon;
+                assertTrue(chord <= haversine * (1 + ROUNDING) + 1e-9, where);
+                assertTrue(haversine - chord <= haversine * (theta * theta / 24 + ROUNDING) + 1e-9, where);
+            }
+        }
+    }
+
+    @Test
+    void chordStaysWithinTheDocumentedTable() {
+        double[][] table = {{2_000, 4e-9}, {10_000, 1e-7}, {50_000, 2.7e-6}, {200_000, 4.6e-5}};
+        for (double[] row : table) {
+            for (int pair = 0; pair < 1000; pair++) {
+                double lat = (random.nextDouble() * 2 - 1) * 80;
+                double lon = (random.nextDouble() * 2 - 1) * 180;
+                // due north, where the offset in degrees is exact
+                double otherLat = lat + Math.toDegrees(row[0] / GeoMath.EARTH_RADIUS_METERS);
+                double haversine = GeoMath.haversineMeters(lat, lon, otherLat, lon);
+                assertEquals(row[0], haversine, row[0] * 1e-9);
+                assertTrue((haversine - chord(lat, lon, otherLat, lon)) / haversine <= row[1] + ROUNDING,
+                        row[0] + " m from " + lat + ", " + lon);
+            }
+        }
+    }
+
+    @Test
+    void batchDistancesEqualTheScalarOnes() {
+        for (int round = 0; round < 200; round++) {
+            int n = 1 + random.nextInt(100);
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            double[] zs = new double[n];
+            double[] lats = new double[n];
+            double[] lons = new double[n];
+            for (int i = 0; i < n; i++) {
+                lats[i] = 37.8 + random.nextDouble() * 0.5;
+                lons[i] = 112.5 + random.nextDouble() * 0.5;
+            }
+            GeoMath.unitVectors(lats, lons, xs, ys, zs);
+            double[] query = GeoMath.unitVector(37.8 + random.nextDouble() * 0.5, 112.5 + random.nextDouble() * 0.5);
+            // ranges that start and end off the vector boundaries too
+            int from = random.nextInt(n);
+            int to = from + random.nextInt(n - from + 1);
+            double[] out = new double[n];
+
+            GeoMath.chordMeters(query[0], query[1], query[2], xs, ys, zs, from, to, out);
+            for (int i = from; i < to; i++) {
+                assertEquals(GeoMath.chordMeters(query[0], query[1], query[2], xs[i], ys[i], zs[i]), out[i - from]);
+            }
+        }
+    }
+
+    @Test
+    void vectorKernelEqualsTheScalarLoop() {
+        assumeTrue(GeoMath.isVectorized(), "the Vector API is not available");
+        int n = 1000;
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        for (int i = 0; i < n; i++) {
+            lats[i] = (random.nextDouble() * 2 - 1) * 85;
+            lons[i] = (random.nextDouble() * 2 - 1) * 180;
+        }
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        double[] zs = new double[n];
+        GeoMath.unitVectors(lats, lons, xs, ys, zs);
+        double[] query = GeoMath.unitVector(37.8, 112.5);
+        double[] out = new double[n];
+
+        int tail = GeoVectorKernel.chordMeters(query[0], query[1], query[2], xs, ys, zs, 3, n, out);
+        assertTrue(tail > 3);
+        for (int i = 3; i < tail; i++) {
+            assertEquals(GeoMath.chordMeters(query[0], query[1], query[2], xs[i], ys[i], zs[i]), out[i - 3]);
+        }
+    }
+
+    private static double chord(double lat1, double lon1, double lat2, double lon2) {
+        double[] a = GeoMath.unitVector(lat1, lon1);
+        double[] b = GeoMath.unitVector(lat2, lon2);
+        return GeoMath.chordMeters(a[0], a[1], a[2], b[0], b[1], b[2]);
+    }
+}
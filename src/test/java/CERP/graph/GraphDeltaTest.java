@@ -0,0 +1,84 @@
+package CERP.graph;
+
+import org.junit.jupiter.api.Test;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphDeltaTest {
+    @Test
+    void leavesTheOldVersionUntouched() {
+        TransitGraph graph = synthetic(17, 10, 2);
+        double[] travelTimes = travelTimes(graph);
+        long fingerprint = graph.getFingerprint();
+        double maxSpeed = graph.maxSpeed();
+        int slower = ride(graph, 0);
+        int closed = ride(graph, graph.edgeCount() / 2);
+        assertNotEquals(graph.edgeRouteId(slower), graph.edgeRouteId(closed));
+
+        TransitGraph next = graph.withDelta(new GraphDelta()
+                .setTravelTime(graph.edgeRouteId(slower), graph.edgeTravelTime(slower) + 10)
+                .closeRoute(graph.edgeRouteId(closed)), 2);
+
+        assertArrayEquals(travelTimes, travelTimes(graph));
+        assertEquals(fingerprint, graph.getFingerprint());
+        assertEquals(maxSpeed, graph.maxSpeed());
+        assertEquals(1, graph.getVersion());
+
+        assertEquals(2, next.getVersion());
+        assertNotEquals(fingerprint, next.getFingerprint());
+        assertEquals(graph.edgeCount(), next.edgeCount());
+        int slowerRoute = graph.edgeRouteId(slower);
+        int closedRoute = graph.edgeRouteId(closed);
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            // every edge of a route changes, which may be more than one
+            double expected = graph.edgeRouteId(e) == slowerRoute ? travelTimes[slower] + 10
+                    : graph.edgeRouteId(e) == closedRoute ? Double.POSITIVE_INFINITY : travelTimes[e];
+            assertEquals(expected, next.edgeTravelTime(e), "edge " + e);
+            assertEquals(graph.edgeTarget(e), next.edgeTarget(e));
+        }
+    }
+
+    @Test
+    void addsTransfersToTheNewVersionOnly() {
+        TransitGraph graph = synthetic(17, 10, 2);
+        double[] travelTimes = travelTimes(graph);
+        int from = 0;
+        int to = graph.stationCount() - 1;
+        int lineId = graph.getLines().keySet().iterator().next();
+
+        TransitGraph next = graph.withDelta(new GraphDelta().addTransfer(graph.station(from).getStationId(),
+                graph.station(to).getStationId(), lineId, 3, 250), 2);
+
+        assertEquals(travelTimes.length, graph.edgeCount());
+        assertArrayEquals(travelTimes, travelTimes(graph));
+        assertEquals(graph.edgeCount() + 1, next.edgeCount());
+        assertEquals(graph.endEdge(from) - graph.firstEdge(from) + 1, next.endEdge(from) - next.firstEdge(from));
+        int added = next.endEdge(from) - 1;
+        assertEquals(to, next.edgeTarget(added));
+        assertEquals(TransitGraph.TRANSFER, next.edgeLineType(added));
+        assertEquals(3, next.edgeTravelTime(added));
+        // the transfer covers the whole grid in 3 minutes, which the speed bound has to allow for
+        assertTrue(next.maxSpeed() >= next.chordDistance(from, to) / 3);
+    }
+
+    @Test
+    void rejectsUnknownRoutesAndStations() {
+        TransitGraph graph = synthetic(17, 10, 2);
+        double[] travelTimes = travelTimes(graph);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> graph.withDelta(new GraphDelta().closeRoute(Integer.MAX_VALUE), 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> graph.withDelta(new GraphDelta().addTransfer(-5, graph.station(0).getStationId(), 1, 1, 1), 2));
+        assertArrayEquals(travelTimes, travelTimes(graph));
+    }
+
+    private static double[] travelTimes(TransitGraph graph) {
+        double[] travelTimes = new double[graph.edgeCount()];
+        for (int e = 0; e < travelTimes.length; e++) {
+            travelTimes[e] = graph.edgeTravelTime(e);
+        }
+        return travelTimes;
+    }
+}
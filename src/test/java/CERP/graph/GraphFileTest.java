@@ -0,0 +1,89 @@
+package CERP.graph;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphFileTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackTheGraphItWrote() throws IOException {
+        TransitGraph graph = synthetic(9, 10, 2);
+        Path file = directory.resolve("graph.bin");
+        GraphFile.write(graph, file);
+        TransitGraph read = GraphFile.read(file, 7);
+
+        assertEquals(7, read.getVersion());
+        assertEquals(graph.getFingerprint(), read.getFingerprint());
+        assertEquals(graph.maxSpeed(), read.maxSpeed());
+        assertSameGraph(graph, read);
+    }
+
+    @Test
+    void keepsClosedEdgesClosed() throws IOException {
+        TransitGraph graph = synthetic(9, 10, 2);
+        int closed = ride(graph, 0);
+        TransitGraph delta = graph.withDelta(new GraphDelta().closeRoute(graph.edgeRouteId(closed)), 2);
+        Path file = directory.resolve("graph.bin");
+        GraphFile.write(delta, file);
+        TransitGraph read = GraphFile.read(file, 2);
+
+        assertEquals(Double.POSITIVE_INFINITY, read.edgeTravelTime(closed));
+        assertEquals(delta.getFingerprint(), read.getFingerprint());
+        assertSameGraph(delta, read);
+    }
+
+    @Test
+    void rejectsACorruptedFile() throws IOException {
+        Path file = directory.resolve("graph.bin");
+        GraphFile.write(synthetic(9, 10, 2), file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(file, bytes);
+
+        IOException e = assertThrows(IOException.class, () -> GraphFile.read(file, 1));
+        assertTrue(e.getMessage().contains("checksum"), e.getMessage());
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        Path file = directory.resolve("graph.bin");
+        GraphFile.write(synthetic(9, 10, 2), file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 8));
+
+        assertThrows(IOException.class, () -> GraphFile.read(file, 1));
+    }
+
+    private static void assertSameGraph(TransitGraph expected, TransitGraph actual) {
+        assertEquals(expected.stationCount(), actual.stationCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (int i = 0; i < expected.stationCount(); i++) {
+            assertEquals(expected.station(i), actual.station(i));
+            assertEquals(i, actual.indexOf(expected.station(i).getStationId()));
+            assertEquals(expected.firstEdge(i), actual.firstEdge(i));
+            assertEquals(expected.endEdge(i), actual.endEdge(i));
+        }
+        for (int e = 0; e < expected.edgeCount(); e++) {
+            assertEquals(expected.edgeTarget(e), actual.edgeTarget(e));
+            assertEquals(expected.edgeTravelTime(e), actual.edgeTravelTime(e));
+            assertEquals(expected.edgeLineType(e), actual.edgeLineType(e));
+            assertEquals(expected.edgeLineId(e), actual.edgeLineId(e));
+            assertEquals(expected.edgeRouteId(e), actual.edgeRouteId(e));
+            assertEquals(expected.edgeDistance(e), actual.edgeDistance(e));
+        }
+        assertEquals(expected.getLines(), actual.getLines());
+        for (int lineId : expected.getLines().keySet()) {
+            assertEquals(expected.getLineStations(lineId), actual.getLineStations(lineId));
+        }
+    }
+}
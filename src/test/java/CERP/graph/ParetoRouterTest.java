@@ -0,0 +1,59 @@
+package CERP.graph;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.Route;
+import CERP.model.Station;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParetoRouterTest {
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void keepsTheJourneysThatTradeTimeForFare() {
+        List<Station> stations = List.of(station(1, 0), station(2, 10_000));
+        List<Route> routes = List.of(
+                new Route(1, 1, 2, 1, 12, 10_000, "metro"),
+                new Route(2, 1, 2, 2, 25, 10_000, "bus"));
+        TransitGraph graph = TransitGraph.build(1, stations, routes,
+                List.of(new Line(1, "metro"), new Line(2, "bus")),
+                List.of(new LineStation(1, 1), new LineStation(1, 2), new LineStation(2, 1), new LineStation(2, 2)), 0);
+
+        List<ParetoRouter.Journey> journeys = new ParetoRouter(8, 1000, 6).paretoPaths(graph, null,
+                new int[]{0}, new double[]{0}, new int[]{1}, new double[]{0});
+        assertEquals(2, journeys.size());
+        assertEquals(12, journeys.get(0).getDuration(), EPSILON);
+        assertEquals(2, journeys.get(0).getFare(), EPSILON);
+        assertEquals(25, journeys.get(1).getDuration(), EPSILON);
+        assertEquals(1, journeys.get(1).getFare(), EPSILON);
+    }
+
+    @Test
+    void doesNotPruneJourneysOnLinesFasterThanTheyLook() {
+        // a bus to a target next to the origin, then a long walk; and a 120 km/h bus through a station 15 km
+        // out to a target at the destination, which arrives earlier for the same fare
+        List<Station> stations = List.of(station(1, 0), station(2, 1_000), station(3, 15_000), station(4, 30_000));
+        List<Route> routes = List.of(
+                new Route(1, 1, 2, 1, 5, 1_000, "bus"),
+                new Route(2, 1, 3, 2, 7.5, 15_000, "bus"),
+                new Route(3, 3, 4, 2, 7.5, 15_000, "bus"));
+        TransitGraph graph = TransitGraph.build(1, stations, routes,
+                List.of(new Line(1, "bus"), new Line(2, "bus")),
+                List.of(new LineStation(1, 1), new LineStation(1, 2),
+                        new LineStation(2, 1), new LineStation(2, 3), new LineStation(2, 4)), 0);
+
+        for (Landmarks landmarks : new Landmarks[]{null, Landmarks.build(graph, 0.83)}) {
+            List<ParetoRouter.Journey> journeys = new ParetoRouter(8, 1000, 6).paretoPaths(graph, landmarks,
+                    new int[]{0}, new double[]{0}, new int[]{1, 3}, new double[]{15, 0});
+            assertEquals(1, journeys.size());
+            assertEquals(15, journeys.get(0).getDuration(), EPSILON);
+            assertEquals(1, journeys.get(0).getFare(), EPSILON);
+            assertEquals(3, journeys.get(0).getPath().last());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package CERP.graph;
+
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.Route;
+import CERP.model.Station;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RaptorRouterTest {
+    private static final double WAGE = 0.83;
+    private static final double EPSILON = 1e-6;
+
+    @Test
+    void findsTheCheaperBusWhenTheFaresReverseTheApproximation() {
+        // 30 km both ways, far faster than 30 km/h: the metro looks cheaper by its per-segment fare,
+        // the bus is cheaper once the metro's boarding fare is paid
+        List<Station> stations = List.of(station(1, 0), station(2, 30_000));
+        List<Route> routes = List.of(
+                new Route(1, 1, 2, 1, 20, 30_000, "metro"),
+                new Route(2, 1, 2, 2, 21, 30_000, "bus"));
+        List<Line> lines = List.of(new Line(1, "metro"), new Line(2, "bus"));
+        List<LineStation> lineStations = List.of(new LineStation(1, 1), new LineStation(1, 2),
+                new LineStation(2, 1), new LineStation(2, 2));
+        TransitGraph graph = TransitGraph.build(1, stations, routes, lines, lineStations, 0);
+
+        RaptorRouter router = new RaptorRouter(WAGE, 8);
+        for (Landmarks landmarks : Arrays.asList(null, Landmarks.build(graph, WAGE))) {
+            GraphPath path = router.cheapestPath(graph, landmarks, new int[]{0}, new double[]{0},
+                    new int[]{1}, new double[]{0});
+            assertNotNull(path);
+            assertEquals(1, path.edgeCount());
+            assertEquals(TransitGraph.BUS, graph.edgeLineType(path.edge(0)));
+            assertEquals(21 * WAGE + 1, journeyCost(graph, path), EPSILON);
+        }
+    }
+
+    @Test
+    void cheapestPathMatchesFareStateDijkstra() {
+        for (long seed = 1; seed <= 20; seed++) {
+            TransitGraph graph = randomGraph(seed);
+            Landmarks landmarks = Landmarks.build(graph, WAGE);
+            RaptorRouter router = new RaptorRouter(WAGE, 64);
+            Random random = new Random(seed);
+            for (int query = 0; query < 40; query++) {
+                int[] sources = {random.nextInt(graph.stationCount()), random.nextInt(graph.stationCount())};
+                int[] targets = {random.nextInt(graph.stationCount()), random.nextInt(graph.stationCount())};
+                double[] sourceCosts = {random.nextDouble() * 5, random.nextDouble() * 5};
+                double[] targetCosts = {random.nextDouble() * 5, random.nextDouble() * 5};
+
+                double expected = cheapestCost(graph, sources, sourceCosts, targets, targetCosts);
+                GraphPath path = router.cheapestPath(graph, random.nextBoolean() ? landmarks : null,
+                        sources, sourceCosts, targets, targetCosts);
+                if (Double.isInfinite(expected)) {
+                    assertNull(path, "seed " + seed);
+                    continue;
+                }
+                assertNotNull(path, "seed " + seed);
+                double actual = costOf(sources, sourceCosts, path.first()) + journeyCost(graph, path)
+                        + costOf(targets, targetCosts, path.last());
+                assertEquals(expected, actual, EPSILON, "seed " + seed + " query " + query);
+            }
+        }
+    }
+
+    // stations scattered over 15 km and lines between 15 and 120 km/h, with walking transfers between them
+    private static TransitGraph randomGraph(long seed) {
+        Random random = new Random(seed);
+        List<Station> stations = new ArrayList<>();
+        for (int id = 1; id <= 40; id++) {
+            stations.add(station(id, random.nextDouble() * 15_000, random.nextDouble() * 15_000));
+        }
+        List<Route> routes = new ArrayList<>();
+        List<Line> lines = new ArrayList<>();
+        List<LineStation> lineStations = new ArrayList<>();
+        int routeId = 1;
+        for (int lineId = 1; lineId <= 10; lineId++) {
+            String lineType = random.nextBoolean() ? "metro" : "bus";
+            double metersPerMinute = (15 + random.nextDouble() * 105) * 1000 / 60;
+            lines.add(new Line(lineId, lineType));
+            List<Station> stops = new ArrayList<>(stations);
+            Collections.shuffle(stops, random);
+            stops = stops.subList(0, 6);
+            for (int i = 0; i < stops.size(); i++) {
+                lineStations.add(new LineStation(lineId, stops.get(i).getStationId()));
+                if (i == 0) {
+                    continue;
+                }
+                Station from = stops.get(i - 1);
+                Station to = stops.get(i);
+                double meters = GeoMath.haversineMeters(from.getLatitude(), from.getLongitude(),
+                        to.getLatitude(), to.getLongitude());
+                routes.add(new Route(routeId++, from.getStationId(), to.getStationId(), lineId,
+                        meters / metersPerMinute, (int) meters, lineType));
+                routes.add(new Route(routeId++, to.getStationId(), from.getStationId(), lineId,
+                        meters / metersPerMinute, (int) meters, lineType));
+            }
+        }
+        return TransitGraph.build(seed, stations, routes, lines, lineStations, 1500);
+    }
+
+    // Dijkstra over station and fare state, with no limit on the number of rides
+    private static double cheapestCost(TransitGraph graph, int[] sources, double[] sourceCosts,
+                                       int[] targets, double[] targetCosts) {
+        int n = graph.stationCount();
+        double[] cost = new double[RaptorRouter.STATES * n];
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        PriorityQueue<double[]> queue = new PriorityQueue<>(Comparator.comparingDouble(entry -> entry[0]));
+        for (int i = 0; i < sources.length; i++) {
+            int label = RaptorRouter.NO_FARE * n + sources[i];
+            if (sourceCosts[i] < cost[label]) {
+                cost[label] = sourceCosts[i];
+                queue.add(new double[]{sourceCosts[i], label});
+            }
+        }
+        while (!queue.isEmpty()) {
+            double[] entry = queue.poll();
+            int label = (int) entry[1];
+            if (entry[0] > cost[label]) {
+                continue;
+            }
+            int station = label % n;
+            int state = label / n;
+            for (int e = graph.firstEdge(station), last = graph.endEdge(station); e < last; e++) {
+                byte lineType = graph.edgeLineType(e);
+                int nextState = lineType == TransitGraph.TRANSFER ? state : lineType;
+                double next = entry[0] + graph.edgeTravelTime(e) * WAGE + fare(state, lineType);
+                int nextLabel = nextState * n + graph.edgeTarget(e);
+                if (next < cost[nextLabel]) {
+                    cost[nextLabel] = next;
+                    queue.add(new double[]{next, nextLabel});
+                }
+            }
+        }
+        double best = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < targets.length; i++) {
+            for (int state = 0; state < RaptorRouter.STATES; state++) {
+                best = Math.min(best, cost[state * n + targets[i]] + targetCosts[i]);
+            }
+        }
+        return best;
+    }
+
+    // wage for the time travelled and the fares paid along the path, from the fare rules themselves
+    private static double journeyCost(TransitGraph graph, GraphPath path) {
+        double cost = 0;
+        int state = RaptorRouter.NO_FARE;
+        for (int i = 0; i < path.edgeCount(); i++) {
+            int e = path.edge(i);
+            assertEquals(path.station(i + 1), graph.edgeTarget(e));
+            byte lineType = graph.edgeLineType(e);
+            cost += graph.edgeTravelTime(e) * WAGE + fare(state, lineType);
+            if (lineType != TransitGraph.TRANSFER) {
+                state = lineType;
+            }
+        }
+        return cost;
+    }
+
+    // a bus costs 1 unless coming off a bus, the metro 2 for its first segment and 0.5 for every further one
+    private static double fare(int state, byte lineType) {
+        if (lineType == TransitGraph.METRO) {
+            return state == TransitGraph.METRO ? 0.5 : 2;
+        }
+        if (lineType == TransitGraph.BUS) {
+            return state == TransitGraph.BUS ? 0 : 1;
+        }
+        return 0;
+    }
+}
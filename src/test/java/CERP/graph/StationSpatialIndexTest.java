@@ -0,0 +1,125 @@
+package CERP.graph;
+
+import CERP.model.Station;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static CERP.graph.TestGraphs.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StationSpatialIndexTest {
+    private static final int STATIONS = 400;
+    private static final int LINES = 30;
+    // stations fill a 10 km square, queries a 20 km one around it, so a quarter of them fall off the grid
+    private static final double SIDE = 10_000;
+
+    private final Random random = new Random(29);
+    private final double[] latitudes = new double[STATIONS];
+    private final double[] longitudes = new double[STATIONS];
+    private final int[] lineOffsets = new int[STATIONS + 1];
+    private final int[] stationLines;
+    private final StationSpatialIndex index;
+
+    StationSpatialIndexTest() {
+        List<List<Integer>> lines = new ArrayList<>();
+        for (int i = 0; i < STATIONS; i++) {
+            Station station = station(i, random.nextDouble() * SIDE, random.nextDouble() * SIDE);
+            latitudes[i] = station.getLatitude();
+            longitudes[i] = station.getLongitude();
+            // some stations are on no line at all
+            List<Integer> memberships = new ArrayList<>();
+            for (int line = 0; line < LINES; line++) {
+                if (random.nextInt(15) == 0) {
+                    memberships.add(line);
+                }
+            }
+            lines.add(memberships);
+            lineOffsets[i + 1] = lineOffsets[i] + memberships.size();
+        }
+        stationLines = lines.stream().flatMap(List::stream).mapToInt(Integer::intValue).toArray();
+        index = new StationSpatialIndex(latitudes, longitudes, lineOffsets, stationLines, LINES);
+    }
+
+    @Test
+    void nearestPerLineMatchesAScanOfEveryStation() {
+        for (int query = 0; query < 2000; query++) {
+            double[] point = randomPoint();
+            int limit = 1 + random.nextInt(10);
+            assertArrayEquals(nearestPerLine(point, limit, Double.MAX_VALUE),
+                    index.nearestPerLine(point[0], point[1], limit), "query " + query);
+
+            double maxDistance = random.nextDouble() * 3000;
+            assertArrayEquals(nearestPerLine(point, limit, maxDistance),
+                    index.nearestPerLine(point[0], point[1], limit, maxDistance), "query " + query);
+        }
+    }
+
+    @Test
+    void nearestPerLineFromFarOffTheGrid() {
+        // the ring walk starts at the first ring that reaches the grid
+        double[][] points = {{-40_000, 5_000}, {5_000, 60_000}, {-30_000, -30_000}, {50_000, 50_000}};
+        for (double[] offset : points) {
+            Station far = station(-1, offset[0], offset[1]);
+            double[] point = {far.getLatitude(), far.getLongitude()};
+            assertArrayEquals(nearestPerLine(point, 5, Double.MAX_VALUE), index.nearestPerLine(point[0], point[1], 5));
+            assertEquals(0, index.nearestPerLine(point[0], point[1], 5, 1000).length);
+        }
+    }
+
+    @Test
+    void withinRadiusMatchesAScanOfEveryStation() {
+        for (int query = 0; query < 2000; query++) {
+            double[] point = randomPoint();
+            double radius = random.nextDouble() * 2000;
+            assertArrayEquals(withinRadius(point, radius), index.withinRadius(point[0], point[1], radius),
+                    "query " + query);
+        }
+    }
+
+    private double[] randomPoint() {
+        Station station = station(-1, random.nextDouble() * 2 * SIDE - SIDE / 2, random.nextDouble() * 2 * SIDE - SIDE / 2);
+        return new double[]{station.getLatitude(), station.getLongitude()};
+    }
+
+    private double distance(double[] point, int station) {
+        double[] from = GeoMath.unitVector(point[0], point[1]);
+        double[] to = GeoMath.unitVector(latitudes[station], longitudes[station]);
+        return GeoMath.chordMeters(from[0], from[1], from[2], to[0], to[1], to[2]);
+    }
+
+    // the nearest station of each line, lines ordered by that distance, first limit distinct stations
+    private int[] nearestPerLine(double[] point, int limit, double maxDistance) {
+        int[] best = new int[LINES];
+        double[] bestDistance = new double[LINES];
+        Arrays.fill(best, -1);
+        for (int i = 0; i < STATIONS; i++) {
+            double distance = distance(point, i);
+            for (int l = lineOffsets[i]; l < lineOffsets[i + 1]; l++) {
+                int line = stationLines[l];
+                if (distance <= maxDistance && (best[line] < 0 || distance < bestDistance[line])) {
+                    best[line] = i;
+                    bestDistance[line] = distance;
+                }
+            }
+        }
+        return Arrays.stream(best).filter(station -> station >= 0).distinct().boxed()
+                .sorted(Comparator.comparingDouble(station -> distance(point, station)))
+                .limit(limit).mapToInt(Integer::intValue).toArray();
+    }
+
+    private int[] withinRadius(double[] point, double radius) {
+        List<Integer> found = new ArrayList<>();
+        for (int i = 0; i < STATIONS; i++) {
+            if (distance(point, i) <= radius) {
+                found.add(i);
+            }
+        }
+        found.sort(Comparator.comparingDouble(station -> distance(point, station)));
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
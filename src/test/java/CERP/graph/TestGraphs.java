@@ -0,0 +1,57 @@
+package CERP.graph;
+
+import CERP.model.Station;
+import CERP.repository.SyntheticNetwork;
+
+/**
+ * Graphs and stations shared by the graph tests, none of which needs a database.
+ */
+final class TestGraphs {
+    static final double METERS_PER_DEGREE = 111_195;
+    static final double ORIGIN_LAT = 37.8;
+    static final double ORIGIN_LON = 112.5;
+    // walking transfers are generated up to this far, as the service does
+    static final double MAX_TRANSFER_DISTANCE = 1000;
+
+    private TestGraphs() {
+    }
+
+    // a seeded synthetic city of side x side stations, with as many bus lines as stations per side
+    static TransitGraph synthetic(long seed, int side, int metroLines) {
+        SyntheticNetwork network = new SyntheticNetwork(seed, side, side, metroLines);
+        return TransitGraph.build(1, network.getStations(), network.getRoutes(), network.getLines(),
+                network.getLineStations(), MAX_TRANSFER_DISTANCE);
+    }
+
+    // a station the given distance north of the origin
+    static Station station(int id, double metersNorth) {
+        return station(id, metersNorth, 0);
+    }
+
+    static Station station(int id, double metersNorth, double metersEast) {
+        return new Station(id, "S" + id, "bus", ORIGIN_LAT + metersNorth / METERS_PER_DEGREE,
+                ORIGIN_LON + metersEast / (METERS_PER_DEGREE * Math.cos(Math.toRadians(ORIGIN_LAT))));
+    }
+
+    // the first ride edge from the given edge on, wrapping around
+    static int ride(TransitGraph graph, int start) {
+        for (int k = 0; k < graph.edgeCount(); k++) {
+            int e = (start + k) % graph.edgeCount();
+            if (graph.edgeLineType(e) != TransitGraph.TRANSFER) {
+                return e;
+            }
+        }
+        throw new AssertionError("no ride in the graph");
+    }
+
+    // the cheapest of the costs given for the station, which may be listed more than once
+    static double costOf(int[] stations, double[] costs, int station) {
+        double cost = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < stations.length; i++) {
+            if (stations[i] == station) {
+                cost = Math.min(cost, costs[i]);
+            }
+        }
+        return cost;
+    }
+}
@@ -0,0 +1,217 @@
+package CERP.service;
+
+import CERP.graph.GraphPath;
+import CERP.graph.ShortestPathTree;
+import CERP.graph.TransitGraph;
+import CERP.model.Line;
+import CERP.model.LineStation;
+import CERP.model.OdPair;
+import CERP.model.Route;
+import CERP.model.RouteMatrix;
+import CERP.model.RouteObjective;
+import CERP.model.RouteResult;
+import CERP.model.Station;
+import CERP.model.TravelSegment;
+import CERP.repository.InMemoryRouteRepository;
+import CERP.repository.RouteRepository;
+import CERP.repository.SyntheticNetwork;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePlanningServiceTest {
+    private static final double EPSILON = 1e-6;
+
+    private SyntheticNetwork network;
+    private TransitGraphService transitGraphService;
+    private RoutePlanningService service;
+
+    @BeforeEach
+    void setUp() {
+        network = new SyntheticNetwork(42, 16, 16, 2);
+        transitGraphService = new TransitGraphService(new InMemoryRouteRepository(network), "", "", 0, 0, 10, 5,
+                "05:30", "23:30");
+        service = service(transitGraphService);
+    }
+
+    private static RoutePlanningService service(TransitGraphService transitGraphService) {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        return new RoutePlanningService(transitGraphService, new RouteCache(registry, 0),
+                new PlannerExecutor(registry, 0, 0), new PlannerMetrics(registry, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    void cheapestTreeCostIsTheRealFareOfItsPath() {
+        TransitGraph graph = transitGraphService.getGraph();
+        Random random = new Random(3);
+        for (int query = 0; query < 200; query++) {
+            int root = random.nextInt(graph.stationCount());
+            int target = random.nextInt(graph.stationCount());
+            ShortestPathTree tree = ShortestPathTree.cheapest(graph, root, RoutePlanningService.WAGE_PER_MINUTE);
+            GraphPath path = tree.pathTo(target);
+            if (path == null) {
+                continue;
+            }
+            RouteCache.CachedRoute route = service.createStationRoute(graph, path);
+            double minutes = 0;
+            for (TravelSegment segment : route.getSegments()) {
+                minutes += segment.getDuration();
+            }
+            assertEquals(route.getMoneyCost() + minutes * RoutePlanningService.WAGE_PER_MINUTE, tree.costTo(target),
+                    EPSILON, root + " -> " + target);
+        }
+    }
+
+    @Test
+    void batchTreesAnswerLikeSingleFastestQueries() {
+        List<OdPair> pairs = batch();
+        List<RouteResult> results = service.planBatch(RouteObjective.FASTEST, pairs);
+        assertEquals(pairs.size(), results.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            OdPair pair = pairs.get(i);
+            RouteResult expected = service.findShortestPath(pair.getStartLat(), pair.getStartLon(),
+                    pair.getEndLat(), pair.getEndLon());
+            assertEquals(expected == null, results.get(i) == null, "pair " + i);
+            if (expected != null) {
+                assertEquals(minutes(expected), minutes(results.get(i)), EPSILON, "pair " + i);
+            }
+        }
+    }
+
+    @Test
+    void batchTreesAnswerLikeSingleCostEffectiveQueries() {
+        List<OdPair> pairs = batch();
+        List<RouteResult> results = service.planBatch(RouteObjective.COST_EFFECTIVE, pairs);
+        assertEquals(pairs.size(), results.size());
+        for (int i = 0; i < pairs.size(); i++) {
+            OdPair pair = pairs.get(i);
+            RouteResult expected = service.findMostCostEffectivePath(pair.getStartLat(), pair.getStartLon(),
+                    pair.getEndLat(), pair.getEndLon());
+            assertEquals(expected == null, results.get(i) == null, "pair " + i);
+            if (expected != null) {
+                assertEquals(generalizedCost(expected), generalizedCost(results.get(i)), EPSILON, "pair " + i);
+            }
+        }
+    }
+
+    @Test
+    void matrixCellsMatchSingleQueries() {
+        List<OdPair> trips = network.odPairs(12, 11);
+        double[][] origins = new double[5][];
+        double[][] destinations = new double[7][];
+        for (int i = 0; i < origins.length; i++) {
+            origins[i] = new double[]{trips.get(i).getStartLat(), trips.get(i).getStartLon()};
+        }
+        for (int j = 0; j < destinations.length; j++) {
+            destinations[j] = new double[]{trips.get(5 + j).getEndLat(), trips.get(5 + j).getEndLon()};
+        }
+
+        RouteMatrix fastest = service.computeMatrix(RouteObjective.FASTEST, origins, destinations);
+        RouteMatrix cheapest = service.computeMatrix(RouteObjective.COST_EFFECTIVE, origins, destinations);
+        assertEquals(origins.length, fastest.getOrigins());
+        assertEquals(destinations.length, fastest.getDestinations());
+        for (int i = 0, cell = 0; i < origins.length; i++) {
+            for (int j = 0; j < destinations.length; j++, cell++) {
+                RouteResult route = service.findShortestPath(origins[i][0], origins[i][1],
+                        destinations[j][0], destinations[j][1]);
+                assertEquals(minutes(route), fastest.getDurations()[cell], EPSILON, "cell " + i + ", " + j);
+                assertEquals(route.getTotalCost(), fastest.getMoneyCosts()[cell], EPSILON, "cell " + i + ", " + j);
+
+                route = service.findMostCostEffectivePath(origins[i][0], origins[i][1],
+                        destinations[j][0], destinations[j][1]);
+                assertEquals(generalizedCost(route), cheapest.getMoneyCosts()[cell]
+                        + cheapest.getDurations()[cell] * RoutePlanningService.WAGE_PER_MINUTE, EPSILON,
+                        "cell " + i + ", " + j);
+            }
+        }
+    }
+
+    @Test
+    void unreachableMatrixCellsAreMinusOne() {
+        // two bus lines 30 km apart, with nothing between them
+        RoutePlanningService islands = service(new TransitGraphService(new IslandRepository(), "", "", 0, 0, 10, 5,
+                "05:30", "23:30"));
+        double[][] origins = {point(0), point(30_000)};
+        double[][] destinations = {point(3_000), point(33_000)};
+        for (RouteObjective objective : RouteObjective.values()) {
+            RouteMatrix matrix = islands.computeMatrix(objective, origins, destinations);
+            for (int cell : new int[]{0, 3}) {
+                assertTrue(matrix.getDurations()[cell] > 0, objective + " cell " + cell);
+                assertEquals(1, matrix.getMoneyCosts()[cell], EPSILON, objective + " cell " + cell);
+            }
+            for (int cell : new int[]{1, 2}) {
+                assertEquals(-1, matrix.getDurations()[cell], objective + " cell " + cell);
+                assertEquals(-1, matrix.getMoneyCosts()[cell], objective + " cell " + cell);
+            }
+        }
+    }
+
+    // groups of pairs from one origin, large enough to be answered from trees, between pairs of their own
+    private List<OdPair> batch() {
+        List<OdPair> trips = network.odPairs(120, 7);
+        List<OdPair> pairs = new ArrayList<>();
+        for (int group = 0; group < 10; group++) {
+            OdPair origin = trips.get(group * 12);
+            for (int k = 1; k <= 8; k++) {
+                OdPair destination = trips.get(group * 12 + k);
+                pairs.add(new OdPair(origin.getStartLat(), origin.getStartLon(),
+                        destination.getEndLat(), destination.getEndLon()));
+            }
+            pairs.add(trips.get(group * 12 + 9));
+        }
+        return pairs;
+    }
+
+    private static double minutes(RouteResult result) {
+        double minutes = 0;
+        for (TravelSegment segment : result.getPath()) {
+            minutes += segment.getDuration();
+        }
+        return minutes;
+    }
+
+    private static double generalizedCost(RouteResult result) {
+        return result.getTotalCost() + minutes(result) * RoutePlanningService.WAGE_PER_MINUTE;
+    }
+
+    // a point the given distance north of the islands' southern end
+    private static double[] point(double metersNorth) {
+        return new double[]{37.8 + metersNorth / 111_195, 112.5};
+    }
+
+    private static final class IslandRepository extends RouteRepository {
+        IslandRepository() {
+            super(null);
+        }
+
+        @Override
+        public List<Station> findAllStations() {
+            return List.of(new Station(1, "S1", "bus", point(0)[0], point(0)[1]),
+                    new Station(2, "S2", "bus", point(3_000)[0], point(3_000)[1]),
+                    new Station(3, "S3", "bus", point(30_000)[0], point(30_000)[1]),
+                    new Station(4, "S4", "bus", point(33_000)[0], point(33_000)[1]));
+        }
+
+        @Override
+        public List<Route> findAllRoutes() {
+            return List.of(new Route(1, 1, 2, 1, 6, 3_000, "bus"), new Route(2, 2, 1, 1, 6, 3_000, "bus"),
+                    new Route(3, 3, 4, 2, 6, 3_000, "bus"), new Route(4, 4, 3, 2, 6, 3_000, "bus"));
+        }
+
+        @Override
+        public List<Line> findAllLines() {
+            return List.of(new Line(1, "bus"), new Line(2, "bus"));
+        }
+
+        @Override
+        public List<LineStation> findAllLineStations() {
+            return List.of(new LineStation(1, 1), new LineStation(1, 2), new LineStation(2, 3), new LineStation(2, 4));
+        }
+    }
+}